@@ -0,0 +1,326 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.io;
+
+import static com.invirgance.divirgance.io.BinaryDecoder.*;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Set;
+
+/**
+ * Pull-style reader over a record stream. Each record is walked field by 
+ * field, and numbers are returned as primitives straight from the stream, so
+ * numeric values can be consumed without allocating. Fields that are not read
+ * are skipped when the cursor moves on.
+ * 
+ * <pre>
+ * BinaryCursor cursor = new BinaryInput(in).cursor();
+ * 
+ * while(cursor.nextRecord())
+ * {
+ *     while(cursor.nextField())
+ *     {
+ *         if(cursor.getFieldName().equals("price")) total += cursor.readDouble();
+ *     }
+ * }
+ * </pre>
+ * 
+ * Cursors read BinaryInput streams such as files or cached result data. The 
+ * driver's result sets decode records instead, as a response on a shared 
+ * connection may have to be buffered before the application reads it. A 
+ * cursor is not thread safe.
+ * 
+ * @author jbanes
+ */
+public class BinaryCursor
+{
+    private final DataInput in;
+    private final BinaryDecoder decoder;
+    private final Set<String> projection;
+    
+    private int[] ids = new int[16];
+    private int size;
+    private int index;
+    private int type = -1;
+    private boolean unread;
+    private boolean done;
+
+    BinaryCursor(DataInput in, BinaryDecoder decoder, Set<String> projection)
+    {
+        this.in = in;
+        this.decoder = decoder;
+        this.projection = projection;
+    }
+    
+    /**
+     * Moves to the next record, skipping any unread fields of the current one.
+     * 
+     * @return false once the end of the stream has been reached
+     * @throws IOException if the stream can't be read or is not a record stream
+     * @throws SQLException if a key table reset fails
+     */
+    public boolean nextRecord() throws IOException, SQLException
+    {
+        int type;
+        
+        if(done) return false;
+        
+        while(nextField())
+        {
+            // Skips the remaining fields
+        }
+        
+        type = decoder.readType(in);
+        
+        if(type == TYPE_EOF)
+        {
+            done = true;
+            size = 0;
+            return false;
+        }
+        
+        if(type != TYPE_OBJECT) throw new IOException("Expected a record but found value type 0x" + Integer.toHexString(type).toUpperCase());
+        
+        size = in.readUnsignedShort();
+        index = -1;
+        this.type = -1;
+        
+        if(ids.length < size) ids = new int[Math.max(size, ids.length * 2)];
+        
+        for(int i=0; i<size; i++)
+        {
+            ids[i] = in.readUnsignedShort();
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Moves to the next field of the current record, skipping the value of the
+     * current field if it was not read. Fields outside of the projection are
+     * skipped without being visited.
+     * 
+     * @return false once every field of the record has been visited
+     * @throws IOException if the stream can't be read
+     * @throws SQLException if a key table reset fails
+     */
+    public boolean nextField() throws IOException, SQLException
+    {
+        do
+        {
+            if(unread) decoder.skip(type, in);
+            
+            unread = false;
+            
+            if(index + 1 >= size)
+            {
+                index = size;
+                type = -1;
+                return false;
+            }
+            
+            index++;
+            type = decoder.readType(in);
+            unread = true;
+        }
+        while(projection != null && !projection.contains(decoder.getKey(ids[index])));
+        
+        return true;
+    }
+    
+    public String getFieldName()
+    {
+        if(type < 0) throw new IllegalStateException("Cursor is not positioned on a field");
+        
+        return decoder.getKey(ids[index]);
+    }
+    
+    /**
+     * @return the BinaryDecoder TYPE_ constant of the current field
+     */
+    public int getFieldType()
+    {
+        if(type < 0) throw new IllegalStateException("Cursor is not positioned on a field");
+        
+        return type;
+    }
+    
+    public boolean isNull()
+    {
+        return (getFieldType() == TYPE_NULL);
+    }
+    
+    private void consume() throws SQLException
+    {
+        if(!unread) throw getException(null);
+        
+        unread = false;
+    }
+    
+    private SQLException getException(String target)
+    {
+        if(type < 0) return new SQLException("Cursor is not positioned on a field");
+        if(!unread) return new SQLException("Value of " + getFieldName() + " has already been read");
+        if(type == TYPE_NULL) return new SQLException(getFieldName() + " is null and therefore can't be converted to " + target);
+        
+        return new SQLException("Value type 0x" + Integer.toHexString(type).toUpperCase() + " for " + getFieldName() + " cannot be converted to " + target);
+    }
+    
+    private static boolean isInteger(int type)
+    {
+        switch(type)
+        {
+            case TYPE_INTEGER_U8:
+            case TYPE_INTEGER_U16:
+            case TYPE_INTEGER:
+            case TYPE_SHORT:
+            case TYPE_BYTE:
+                return true;
+        }
+        
+        return false;
+    }
+    
+    private int readInteger() throws IOException
+    {
+        switch(type)
+        {
+            case TYPE_INTEGER_U8:
+                return in.readUnsignedByte();
+                
+            case TYPE_INTEGER_U16:
+                return in.readUnsignedShort();
+                
+            case TYPE_INTEGER:
+                return in.readInt();
+                
+            case TYPE_SHORT:
+                return in.readShort();
+        }
+        
+        return in.readByte();
+    }
+    
+    public int readInt() throws IOException, SQLException
+    {
+        if(!unread || !isInteger(type)) throw getException("an int");
+        
+        consume();
+        
+        return readInteger();
+    }
+    
+    public long readLong() throws IOException, SQLException
+    {
+        if(!unread || !(type == TYPE_LONG || isInteger(type))) throw getException("a long");
+        
+        consume();
+        
+        if(type == TYPE_LONG) return in.readLong();
+        
+        return readInteger();
+    }
+    
+    public double readDouble() throws IOException, SQLException
+    {
+        if(!unread || !(type == TYPE_DOUBLE || type == TYPE_FLOAT || type == TYPE_LONG || isInteger(type))) throw getException("a double");
+        
+        consume();
+        
+        switch(type)
+        {
+            case TYPE_DOUBLE:
+                return in.readDouble();
+                
+            case TYPE_FLOAT:
+                return in.readFloat();
+                
+            case TYPE_LONG:
+                return in.readLong();
+        }
+        
+        return readInteger();
+    }
+    
+    public boolean readBoolean() throws SQLException
+    {
+        if(!unread || !(type == TYPE_BOOLEAN_TRUE || type == TYPE_BOOLEAN_FALSE)) throw getException("a boolean");
+        
+        consume();
+        
+        return (type == TYPE_BOOLEAN_TRUE);
+    }
+    
+    /**
+     * Strings are returned from the stream's string table where possible, so
+     * repeated values are not allocated again.
+     * 
+     * @return the string value, or null for a null field
+     * @throws IOException if the stream can't be read
+     * @throws SQLException if the field is not a string
+     */
+    public String readString() throws IOException, SQLException
+    {
+        byte[] data;
+        
+        if(!unread) throw getException("a String");
+        
+        switch(type)
+        {
+            case TYPE_NULL:
+                consume();
+                return null;
+                
+            case TYPE_STRING:
+                consume();
+                return decoder.getStringEncoder().get(in.readByte() & 0xFF);
+                
+            case TYPE_CLOB:
+                consume();
+                
+                data = new byte[in.readInt()];
+                
+                in.readFully(data);
+                
+                return new String(data, StandardCharsets.UTF_8);
+        }
+        
+        throw getException("a String");
+    }
+    
+    /**
+     * Reads the current field as an object, exactly as BinaryDecoder would.
+     * 
+     * @return the decoded value
+     * @throws IOException if the stream can't be read
+     * @throws SQLException if a key table reset fails
+     */
+    public Object readValue() throws IOException, SQLException
+    {
+        consume();
+        
+        return decoder.read(type, in);
+    }
+}
@@ -28,10 +28,13 @@ import static com.invirgance.divirgance.io.KeyStreamEncoder.*;
 import static com.invirgance.divirgance.io.StringEncoder.*;
 
 import java.io.DataInput;
+import java.io.EOFException;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Set;
 
 /**
  *
@@ -61,6 +64,18 @@ public class BinaryDecoder
     
     private KeyStreamEncoder keys;
     private StringEncoder strings;
+    
+    private boolean lazy;
+    private byte[] scratch = new byte[1024];
+    private int top;
+    
+    private Set<String> projection;
+    private int depth;
+    
+    private boolean reuse;
+    private DivirganceRecord record;
+    private String[] names = new String[16];
+    private int size = -1;
 
     public BinaryDecoder()
     {
@@ -82,6 +97,57 @@ public class BinaryDecoder
         return keys.size();
     }
 
+    public boolean isLazy()
+    {
+        return lazy;
+    }
+
+    /**
+     * Decodes the numbers, dates and CLOBs of objects only when they are first
+     * read from the record. Wide records then only pay for the fields used.
+     * 
+     * @param lazy true to defer decoding of record values
+     */
+    public void setLazy(boolean lazy)
+    {
+        this.lazy = lazy;
+    }
+
+    public Set<String> getProjection()
+    {
+        return projection;
+    }
+
+    /**
+     * Limits the records read to the given keys. The values of other keys are
+     * skipped without being decoded. Only applies to the outermost records;
+     * the values of wanted keys are decoded in full.
+     * 
+     * @param projection keys to keep, or null to keep every key
+     */
+    public void setProjection(Set<String> projection)
+    {
+        this.projection = projection;
+    }
+
+    public boolean isReuse()
+    {
+        return reuse;
+    }
+
+    /**
+     * Decodes every outermost record into the same DivirganceRecord instance.
+     * When a record has the same keys as the one before it, only the values 
+     * are replaced. The contents of a record are only valid until the next
+     * record is read. Has no effect on lazily decoded records.
+     * 
+     * @param reuse true to reuse a single record instance
+     */
+    public void setReuse(boolean reuse)
+    {
+        this.reuse = reuse;
+    }
+
     public KeyStreamEncoder getKeyStreamEncoder()
     {
         return keys;
@@ -94,23 +160,176 @@ public class BinaryDecoder
     
     private DivirganceRecord readObject(DataInput in) throws IOException, SQLException
     {
-        DivirganceRecord record = new DivirganceRecord(true);
+        boolean reused = (reuse && depth == 0);
+        Set<String> projection = (depth == 0) ? this.projection : null;
         int size = in.readUnsignedShort();
-        int[] ids = new int[size];
+        String[] names = reused ? this.names : new String[size];
+        boolean same = (reused && size == this.size);
+        DivirganceRecord record;
+        String key;
+        
+        if(names.length < size) names = this.names = new String[size];
         
         for(int i=0; i<size; i++)
         {
-            ids[i] = in.readUnsignedShort();
+            key = getKey(in.readUnsignedShort());
+            
+            if(names[i] != key) same = false;
+            
+            names[i] = key;
         }
         
-        for(int i=0; i<size; i++)
+        if(reused)
+        {
+            if(this.record == null) this.record = new DivirganceRecord(true);
+            else if(!same) this.record.clear();
+            
+            this.size = size;
+            record = this.record;
+        }
+        else
+        {
+            record = new DivirganceRecord(true);
+        }
+        
+        depth++;
+        
+        try
+        {
+            for(int i=0; i<size; i++)
+            {
+                key = names[i];
+
+                if(projection == null || projection.contains(key)) record.put(key, read(in));
+                else skip(in);
+            }
+        }
+        finally
         {
-            record.put(getKey(ids[i]), read(in));
+            depth--;
         }
         
         return record;
     }
     
+    private static int getWidth(int type)
+    {
+        switch(type)
+        {
+            case TYPE_INTEGER_U8:
+            case TYPE_BYTE:
+                return 1;
+                
+            case TYPE_INTEGER_U16:
+            case TYPE_SHORT:
+                return 2;
+                
+            case TYPE_INTEGER:
+            case TYPE_FLOAT:
+                return 4;
+                
+            case TYPE_LONG:
+            case TYPE_DOUBLE:
+            case TYPE_DATE:
+                return 8;
+        }
+        
+        return -1;
+    }
+    
+    private void ensure(int length)
+    {
+        if(top + length > scratch.length) scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, top + length));
+    }
+    
+    private DivirganceRecord readLazyObject(DataInput in) throws IOException, SQLException
+    {
+        Set<String> projection = (depth == 0) ? this.projection : null;
+        int size = in.readUnsignedShort();
+        String[] names = new String[size];
+        Object[] values = new Object[size];
+        int[] offsets = new int[size];
+        int start = top;
+        int count = 0;
+        int type;
+        int width;
+        int length;
+        
+        for(int i=0; i<size; i++)
+        {
+            names[i] = getKey(in.readUnsignedShort());
+        }
+        
+        depth++;
+        
+        try
+        {
+            for(int i=0; i<size; i++)
+            {
+                if(projection != null && !projection.contains(names[i]))
+                {
+                    skip(in);
+                    continue;
+                }
+                
+                names[count] = names[i];
+                type = readType(in);
+                width = getWidth(type);
+                
+                if(type == TYPE_CLOB)
+                {
+                    length = in.readInt();
+                    
+                    ensure(5 + length);
+                    
+                    scratch[top] = (byte)type;
+                    scratch[top+1] = (byte)(length >>> 24);
+                    scratch[top+2] = (byte)(length >>> 16);
+                    scratch[top+3] = (byte)(length >>> 8);
+                    scratch[top+4] = (byte)length;
+                    
+                    in.readFully(scratch, top + 5, length);
+                    
+                    offsets[count] = top - start;
+                    top += 5 + length;
+                }
+                else if(width > 0)
+                {
+                    ensure(1 + width);
+                    
+                    scratch[top] = (byte)type;
+                    
+                    in.readFully(scratch, top + 1, width);
+                    
+                    offsets[count] = top - start;
+                    top += 1 + width;
+                }
+                else
+                {
+                    // Nested objects use the scratch space above this record's bytes
+                    values[count] = read(type, in);
+                    offsets[count] = -1;
+                }
+                
+                count++;
+            }
+            
+            if(count < size)
+            {
+                names = Arrays.copyOf(names, count);
+                values = Arrays.copyOf(values, count);
+                offsets = Arrays.copyOf(offsets, count);
+            }
+            
+            return new DivirganceRecord(new LazyFields(names, values, offsets, Arrays.copyOfRange(scratch, start, top)));
+        }
+        finally
+        {
+            top = start;
+            depth--;
+        }
+    }
+    
     private ArrayList readArray(DataInput in) throws IOException, SQLException
     {
         ArrayList array = new ArrayList();
@@ -133,10 +352,129 @@ public class BinaryDecoder
         return new String(buffer, "UTF-8");
     }
     
-    public Object read(DataInput in) throws IOException, SQLException
+    private static void skipFully(DataInput in, int length) throws IOException
+    {
+        int skipped;
+        
+        while(length > 0)
+        {
+            skipped = in.skipBytes(length);
+            
+            if(skipped < 1) throw new EOFException();
+            
+            length -= skipped;
+        }
+    }
+    
+    /**
+     * Moves past the next value without decoding it, including the contents of
+     * objects, arrays and CLOBs. Key and string registrations encountered are
+     * still applied so that later values decode correctly.
+     * 
+     * @param in stream to read from
+     * @return the type of the value skipped
+     * @throws IOException if the stream can't be read
+     * @throws SQLException if a key table reset fails
+     */
+    public int skip(DataInput in) throws IOException, SQLException
+    {
+        return skip(readType(in), in);
+    }
+    
+    int skip(int type, DataInput in) throws IOException, SQLException
+    {
+        int width = getWidth(type);
+        int size;
+        
+        if(width > 0)
+        {
+            skipFully(in, width);
+            
+            return type;
+        }
+        
+        switch(type)
+        {
+            case TYPE_NULL:
+            case TYPE_BOOLEAN_TRUE:
+            case TYPE_BOOLEAN_FALSE:
+                return type;
+                
+            case TYPE_STRING:
+                skipFully(in, 1);
+                return type;
+                
+            case TYPE_CLOB:
+                skipFully(in, in.readInt());
+                return type;
+                
+            case TYPE_OBJECT:
+                size = in.readUnsignedShort();
+                
+                skipFully(in, size * 2);
+                
+                for(int i=0; i<size; i++) skip(in);
+                
+                return type;
+                
+            case TYPE_ARRAY:
+                size = in.readInt();
+                
+                for(int i=0; i<size; i++) skip(in);
+                
+                return type;
+                
+            case TYPE_EOF:
+                throw new EOFException("End of record stream where a value was expected");
+        }
+        
+        throw new IOException("Unknown value type 0x" + Integer.toHexString(type).toUpperCase());
+    }
+    
+    /**
+     * Reads the type of the next value, applying any key and string 
+     * registrations that precede it.
+     * 
+     * @param in stream to read from
+     * @return the type of the value that follows
+     * @throws IOException if the stream can't be read
+     * @throws SQLException if a key table reset fails
+     */
+    int readType(DataInput in) throws IOException, SQLException
     {
-        int type = in.readByte() & 0xFF;
+        int type;
         
+        while(true)
+        {
+            type = in.readByte() & 0xFF;
+            
+            switch(type)
+            {
+                case KEY_REGISTER_OPERATION:
+                    keys.read(in);
+                    break;
+
+                case KEY_RESET_OPERATION:
+                    keys.reset(null);
+                    break;
+
+                case STRING_REGISTER_OPERATION:
+                    strings.read(in);
+                    break;
+                    
+                default:
+                    return type;
+            }
+        }
+    }
+    
+    public Object read(DataInput in) throws IOException, SQLException
+    {
+        return read(readType(in), in);
+    }
+    
+    Object read(int type, DataInput in) throws IOException, SQLException
+    {
         switch(type)
         {
             case TYPE_NULL:
@@ -146,7 +484,7 @@ public class BinaryDecoder
                 return strings.get(in.readByte() & 0xFF);
                 
             case TYPE_OBJECT:
-                return readObject(in);
+                return lazy ? readLazyObject(in) : readObject(in);
                 
             case TYPE_ARRAY:
                 return readArray(in);
@@ -186,18 +524,6 @@ public class BinaryDecoder
                 
             case TYPE_DATE:
                 return new Date(in.readLong());
-                
-            case KEY_REGISTER_OPERATION:
-                keys.read(in);
-                return read(in);
-                
-            case KEY_RESET_OPERATION:
-                keys.reset(null);
-                return read(in);
-                
-            case STRING_REGISTER_OPERATION:
-                strings.read(in);
-                return read(in);
             
             // EOF
             case TYPE_EOF:
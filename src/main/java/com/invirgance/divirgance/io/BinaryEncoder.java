@@ -0,0 +1,226 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.io;
+
+import static com.invirgance.divirgance.io.BinaryDecoder.*;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Writes values in the format read by BinaryDecoder. Keys and short strings 
+ * are registered with the shared dictionaries the first time they are seen 
+ * and referenced by id afterwards.
+ * 
+ * @author jbanes
+ */
+public class BinaryEncoder
+{
+    // Longer strings are unlikely to repeat and would churn the string table
+    private static final int MAX_STRING_LENGTH = 256;
+    
+    private KeyStreamEncoder keys;
+    private StringEncoder strings;
+
+    public BinaryEncoder()
+    {
+        try
+        {
+            this.keys = new KeyStreamEncoder();
+            this.strings = new StringEncoder();
+        }
+        catch(SQLException e) { throw new IllegalStateException(e); }
+    }
+
+    public KeyStreamEncoder getKeyStreamEncoder()
+    {
+        return keys;
+    }
+
+    public StringEncoder getStringEncoder()
+    {
+        return strings;
+    }
+    
+    private void writeObject(Map<?,?> map, DataOutput out) throws IOException
+    {
+        // The key count is written as an unsigned short
+        if(map.size() > 0xFFFF) throw new IOException("Objects are limited to " + 0xFFFF + " keys but found " + map.size());
+        
+        // Registrations must precede the object so the decoder can resolve the ids
+        for(Object key : map.keySet())
+        {
+            if(!(key instanceof String)) throw new IOException("Object keys must be strings but found " + ((key == null) ? "null" : key.getClass().getName()));
+            
+            keys.write((String)key, out);
+        }
+        
+        out.write(TYPE_OBJECT);
+        out.writeShort(map.size());
+        
+        // Keys are never evicted, so the ids registered above are still valid
+        for(Object key : map.keySet())
+        {
+            out.writeShort(keys.get((String)key));
+        }
+        
+        // Values are looked up by key as values() need not follow key order
+        for(Object key : map.keySet())
+        {
+            write(map.get(key), out);
+        }
+    }
+    
+    private void writeArray(Collection<?> collection, DataOutput out) throws IOException
+    {
+        out.write(TYPE_ARRAY);
+        out.writeInt(collection.size());
+        
+        for(Object value : collection)
+        {
+            write(value, out);
+        }
+    }
+    
+    private void writeString(String value, DataOutput out) throws IOException
+    {
+        byte[] data;
+        
+        if(value.length() <= MAX_STRING_LENGTH)
+        {
+            int id = strings.write(value, out);
+            
+            out.write(TYPE_STRING);
+            out.write(id);
+            
+            return;
+        }
+        
+        data = value.getBytes(StandardCharsets.UTF_8);
+        
+        out.write(TYPE_CLOB);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+    
+    private void writeInteger(int value, DataOutput out) throws IOException
+    {
+        if(value >= 0 && value <= 0xFF)
+        {
+            out.write(TYPE_INTEGER_U8);
+            out.write(value);
+        }
+        else if(value >= 0 && value <= 0xFFFF)
+        {
+            out.write(TYPE_INTEGER_U16);
+            out.writeShort(value);
+        }
+        else
+        {
+            out.write(TYPE_INTEGER);
+            out.writeInt(value);
+        }
+    }
+    
+    public void write(Object value, DataOutput out) throws IOException
+    {
+        if(value == null)
+        {
+            out.write(TYPE_NULL);
+        }
+        else if(value instanceof String)
+        {
+            writeString((String)value, out);
+        }
+        else if(value instanceof Map)
+        {
+            writeObject((Map<?,?>)value, out);
+        }
+        else if(value instanceof Collection)
+        {
+            writeArray((Collection<?>)value, out);
+        }
+        else if(value instanceof Object[])
+        {
+            writeArray(Arrays.asList((Object[])value), out);
+        }
+        else if(value instanceof Integer)
+        {
+            writeInteger((Integer)value, out);
+        }
+        else if(value instanceof Long)
+        {
+            out.write(TYPE_LONG);
+            out.writeLong((Long)value);
+        }
+        else if(value instanceof Double)
+        {
+            out.write(TYPE_DOUBLE);
+            out.writeDouble((Double)value);
+        }
+        else if(value instanceof Float)
+        {
+            out.write(TYPE_FLOAT);
+            out.writeFloat((Float)value);
+        }
+        else if(value instanceof Short)
+        {
+            out.write(TYPE_SHORT);
+            out.writeShort((Short)value);
+        }
+        else if(value instanceof Byte)
+        {
+            out.write(TYPE_BYTE);
+            out.write((Byte)value);
+        }
+        else if(value instanceof Boolean)
+        {
+            out.write((Boolean)value ? TYPE_BOOLEAN_TRUE : TYPE_BOOLEAN_FALSE);
+        }
+        else if(value instanceof Date)
+        {
+            out.write(TYPE_DATE);
+            out.writeLong(((Date)value).getTime());
+        }
+        else
+        {
+            throw new IOException("Unsupported value type " + value.getClass().getName());
+        }
+    }
+    
+    /**
+     * Marks the end of the record stream.
+     * 
+     * @param out stream to write to
+     * @throws IOException if the write fails
+     */
+    public void writeEOF(DataOutput out) throws IOException
+    {
+        out.write(TYPE_EOF);
+    }
+}
@@ -23,10 +23,13 @@ package com.invirgance.divirgance.io;
 
 import com.invirgance.divirgance.jdbc.DivirganceRecord;
 import java.io.BufferedInputStream;
+import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
+import java.util.Set;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -40,18 +43,82 @@ public class BinaryInput implements Iterable<DivirganceRecord>
     };
 
     private InputStream in;
+    private boolean lazy;
+    private Set<String> projection;
+    private boolean reuse;
 
     public BinaryInput(InputStream in)
     {
         this.in = in;
     }
+    
+    /**
+     * Decodes records held in memory directly from the buffer, without going
+     * through a stream.
+     * 
+     * @param buffer the record stream from its position to its limit
+     */
+    public BinaryInput(ByteBuffer buffer)
+    {
+        this.in = new ByteBufferInput(buffer);
+    }
 
-    @Override
-    public CloseableIterator<DivirganceRecord> iterator()
+    public boolean isLazy()
     {
-        final BufferedInputStream buffer = new BufferedInputStream(in, 16 * 1024);
-        final DataInputStream in;
-        final BinaryDecoder decoder = new BinaryDecoder();
+        return lazy;
+    }
+
+    /**
+     * Defers decoding of record values until they are accessed.
+     * 
+     * @param lazy true to decode values on first access
+     * @see BinaryDecoder#setLazy(boolean)
+     */
+    public void setLazy(boolean lazy)
+    {
+        this.lazy = lazy;
+    }
+
+    public Set<String> getProjection()
+    {
+        return projection;
+    }
+
+    /**
+     * Only decodes the given keys of each record. Other values are skipped.
+     * 
+     * @param projection keys to keep, or null to keep every key
+     * @see BinaryDecoder#setProjection(java.util.Set)
+     */
+    public void setProjection(Set<String> projection)
+    {
+        this.projection = projection;
+    }
+
+    public boolean isReuse()
+    {
+        return reuse;
+    }
+
+    /**
+     * Returns the same record instance from every call to the iterator's
+     * next(). Its contents are replaced by the following call to hasNext() or
+     * next(), so consumers must copy any values they keep. Intended for 
+     * forward-only scans of large streams.
+     * 
+     * @param reuse true to reuse a single record instance
+     * @see BinaryDecoder#setReuse(boolean)
+     */
+    public void setReuse(boolean reuse)
+    {
+        this.reuse = reuse;
+    }
+
+    private DataInput open()
+    {
+        // Connection streams are already buffered DataInputs and may be shared.
+        // Wrapping them again would read ahead into the next response.
+        final InputStream buffer = (this.in instanceof BufferedInputStream || this.in instanceof DataInput) ? this.in : new BufferedInputStream(this.in, 16 * 1024);
 
         int version;
         int flags;
@@ -71,11 +138,34 @@ public class BinaryInput implements Iterable<DivirganceRecord>
 
             if(version > 0x01) throw new IllegalStateException("Version " + version + " of the Convirgance BSON format is not supported");
 
-            if((flags & 0x01) > 0) in = new DataInputStream(new GZIPInputStream(buffer));
-            else in = new DataInputStream(buffer);
+            if((flags & 0x01) > 0) return new DataInputStream(new GZIPInputStream(buffer));
+            else if(buffer instanceof DataInput) return (DataInput)buffer;
+            else return new DataInputStream(buffer);
         }
         catch(IOException e) { throw new IllegalStateException(e); }
+    }
+    
+    /**
+     * Reads the stream field by field without creating records or boxing
+     * numbers. The stream can only be read once, either through the cursor
+     * or an iterator. The projection applies to the cursor as well.
+     * 
+     * @return a cursor positioned before the first record
+     */
+    public BinaryCursor cursor()
+    {
+        return new BinaryCursor(open(), new BinaryDecoder(), projection);
+    }
 
+    @Override
+    public CloseableIterator<DivirganceRecord> iterator()
+    {
+        final DataInput in = open();
+        final BinaryDecoder decoder = new BinaryDecoder();
+        
+        decoder.setLazy(lazy);
+        decoder.setProjection(projection);
+        decoder.setReuse(reuse);
 
         return new CloseableIterator<DivirganceRecord>() {
 
@@ -123,9 +213,9 @@ public class BinaryInput implements Iterable<DivirganceRecord>
             @Override
             public void close() throws Exception
             {
-                // Drain the iterator
-                while(hasNext()) next();
-
+                // Nothing to resync. Connection responses are cancelled by
+                // DivirganceResponse rather than drained.
+                record = null;
                 closed = true;
             }
         };
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes records in the Convirgance BSON format read by {@link BinaryInput}.
+ * The header is written with the first record, and every record shares the
+ * key and string dictionaries of a single encoder. {@link #finish()} must be
+ * called to terminate the stream.
+ * 
+ * @author jbanes
+ */
+public class BinaryOutput implements AutoCloseable
+{
+    private static final int VERSION = 0x01;
+    private static final int FLAG_GZIP = 0x01;
+    
+    private static final byte[] header = new byte[] {
+        (byte)0xFF, (byte)0xFF, 'B', 'S', 'O', 'N'
+    };
+    
+    private final BinaryEncoder encoder = new BinaryEncoder();
+    private final OutputStream stream;
+    private final boolean compressed;
+    
+    private OutputStream buffer;
+    private GZIPOutputStream gzip;
+    private DataOutput out;
+    private boolean finished;
+
+    public BinaryOutput(OutputStream out)
+    {
+        this(out, false);
+    }
+    
+    public BinaryOutput(OutputStream out, boolean compressed)
+    {
+        this.stream = out;
+        this.compressed = compressed;
+    }
+
+    public boolean isCompressed()
+    {
+        return compressed;
+    }
+    
+    private DataOutput open() throws IOException
+    {
+        if(out != null) return out;
+        if(finished) throw new IOException("Stream has already been finished");
+        
+        // Streams that buffer in memory gain nothing from another copy
+        if(stream instanceof BufferedOutputStream || stream instanceof ByteArrayOutputStream || stream instanceof DataOutput) buffer = stream;
+        else buffer = new BufferedOutputStream(stream, 16 * 1024);
+        
+        buffer.write(header);
+        buffer.write(VERSION);
+        buffer.write(compressed ? FLAG_GZIP : 0);
+        
+        if(compressed) out = new DataOutputStream(gzip = new GZIPOutputStream(buffer, 16 * 1024));
+        else if(buffer instanceof DataOutput) out = (DataOutput)buffer;
+        else out = new DataOutputStream(buffer);
+        
+        return out;
+    }
+    
+    public void write(Map<String,Object> record) throws IOException
+    {
+        encoder.write(record, open());
+    }
+    
+    public void write(Iterable<? extends Map<String,Object>> records) throws IOException
+    {
+        DataOutput out = open();
+        
+        for(Map<String,Object> record : records) encoder.write(record, out);
+    }
+    
+    /**
+     * Pushes buffered records to the underlying stream. Compressed records
+     * may remain in the deflater until the stream is finished.
+     * 
+     * @throws IOException if the write fails
+     */
+    public void flush() throws IOException
+    {
+        if(out != null) ((OutputStream)out).flush();
+    }
+    
+    /**
+     * Writes the end of stream marker and flushes, leaving the underlying 
+     * stream open. An empty record stream is written if no records were.
+     * 
+     * @throws IOException if the write fails
+     */
+    public void finish() throws IOException
+    {
+        if(finished) return;
+        
+        encoder.writeEOF(open());
+        
+        if(gzip != null) gzip.finish();
+        
+        flush();
+        
+        finished = true;
+    }
+    
+    /**
+     * Finishes the record stream and closes the underlying stream.
+     * 
+     * @throws IOException if the write fails
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            finish();
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+}
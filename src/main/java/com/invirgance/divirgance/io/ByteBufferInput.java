@@ -0,0 +1,229 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.io;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * DataInput reading directly from the bytes of a ByteBuffer, such as a cached
+ * response or a memory mapped file. Multi-byte values are read in a single 
+ * big-endian access rather than a virtual call per byte. Reads start at the
+ * buffer's position and stop at its limit. The buffer's own position is not
+ * changed.
+ * 
+ * @author jbanes
+ */
+public final class ByteBufferInput extends InputStream implements DataInput
+{
+    private static final VarHandle SHORT = MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    
+    private final ByteBuffer buffer;
+    private final int limit;
+    
+    private int position;
+
+    public ByteBufferInput(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+        this.position = buffer.position();
+        this.limit = buffer.limit();
+    }
+    
+    public ByteBufferInput(byte[] data)
+    {
+        this(ByteBuffer.wrap(data));
+    }
+    
+    private int require(int length) throws IOException
+    {
+        int offset = position;
+        
+        // A corrupt length would otherwise move the position backwards
+        if(length < 0) throw new IOException("Invalid length " + length);
+        if(length > limit - offset) throw new EOFException();
+        
+        position = offset + length;
+        
+        return offset;
+    }
+    
+    public int getPosition()
+    {
+        return position;
+    }
+
+    @Override
+    public int read()
+    {
+        if(position >= limit) return -1;
+        
+        return buffer.get(position++) & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+    {
+        if(len == 0) return 0;
+        if(position >= limit) return -1;
+        
+        len = Math.min(len, limit - position);
+        
+        buffer.get(position, b, off, len);
+        
+        position += len;
+        
+        return len;
+    }
+
+    @Override
+    public long skip(long n)
+    {
+        int count = (int)Math.max(0, Math.min(n, limit - position));
+        
+        position += count;
+        
+        return count;
+    }
+
+    @Override
+    public int available()
+    {
+        return limit - position;
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException
+    {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException
+    {
+        buffer.get(require(len), b, off, len);
+    }
+
+    @Override
+    public int skipBytes(int n)
+    {
+        return (int)skip(n);
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException
+    {
+        return readByte() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException
+    {
+        return buffer.get(require(1));
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException
+    {
+        return readByte() & 0xFF;
+    }
+
+    @Override
+    public short readShort() throws IOException
+    {
+        return (short)SHORT.get(buffer, require(2));
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException
+    {
+        return readShort() & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() throws IOException
+    {
+        return (char)readShort();
+    }
+
+    @Override
+    public int readInt() throws IOException
+    {
+        return (int)INT.get(buffer, require(4));
+    }
+
+    @Override
+    public long readLong() throws IOException
+    {
+        return (long)LONG.get(buffer, require(8));
+    }
+
+    @Override
+    public float readFloat() throws IOException
+    {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    @Override
+    public double readDouble() throws IOException
+    {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    @Override
+    public String readLine() throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        int c;
+        
+        if(position >= limit) return null;
+        
+        while((c = read()) >= 0 && c != '\n')
+        {
+            if(c == '\r')
+            {
+                if(position < limit && buffer.get(position) == '\n') position++;
+                
+                break;
+            }
+            
+            line.append((char)c);
+        }
+        
+        return line.toString();
+    }
+
+    @Override
+    public String readUTF() throws IOException
+    {
+        return DataInputStream.readUTF(this);
+    }
+}
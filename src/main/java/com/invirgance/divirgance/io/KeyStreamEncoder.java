@@ -25,6 +25,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
@@ -36,6 +37,9 @@ public class KeyStreamEncoder
     public static final int KEY_REGISTER_OPERATION = 0xF1;
     public static final int KEY_RESET_OPERATION = 0xF2;
     
+    // Key indexes are stored as a 16 bit value
+    private static final int MAX_KEYS = 0xFFFF;
+    
     private HashMap<String,Integer> lookup;
     private String[] keys; 
     private int index;
@@ -47,9 +51,9 @@ public class KeyStreamEncoder
 
     public void reset(DataOutput out) throws SQLException
     {
-        // Key indexes are stored as a 16 bit value
+        // Grown on demand, as there is an encoder or decoder per response in flight
         this.lookup = new HashMap<>();
-        this.keys = new String[0xFFFF];
+        this.keys = new String[16];
         this.index = 0;
         
         try
@@ -59,6 +63,13 @@ public class KeyStreamEncoder
         catch(IOException e) { throw new SQLException(e); }
     }
 
+    private int allocate()
+    {
+        if(index >= keys.length) keys = Arrays.copyOf(keys, Math.min(keys.length * 2, MAX_KEYS));
+        
+        return index++;
+    }
+
     public Integer get(String key)
     {
         return lookup.get(key);
@@ -82,9 +93,9 @@ public class KeyStreamEncoder
         int id;
         
         // TODO: We should probably allow this to wrap
-        if(index >= keys.length) throw new IllegalStateException("Maximum number of keys (" + 0xFFFF + ") has been exceeded during read!");
+        if(index >= MAX_KEYS) throw new IllegalStateException("Maximum number of keys (" + MAX_KEYS + ") has been exceeded during read!");
 
-        id = index++;
+        id = allocate();
         keys[id] = in.readUTF();
         
         lookup.put(keys[id], id);
@@ -97,9 +108,9 @@ public class KeyStreamEncoder
         if(id != null) return id;
         
         // TODO: We should probably allow this to wrap
-        if(index >= keys.length) throw new IllegalStateException("Maximum number of keys (" + 0xFFFF + ") has been exceeded by key [" + key + "]");
+        if(index >= MAX_KEYS) throw new IllegalStateException("Maximum number of keys (" + MAX_KEYS + ") has been exceeded by key [" + key + "]");
 
-        id = index++;
+        id = allocate();
         keys[id] = key;
 
         lookup.put(key, id);
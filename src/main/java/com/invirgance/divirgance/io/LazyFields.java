@@ -0,0 +1,138 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.io;
+
+import static com.invirgance.divirgance.io.BinaryDecoder.*;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Fields of a record whose values are decoded the first time they are read. 
+ * Strings, booleans, nulls and nested values are resolved while the record is
+ * scanned, as they depend on the state of the stream at that point. Numbers,
+ * dates and CLOBs are kept as their encoded bytes until accessed.
+ * <p>
+ * Not thread safe. A decoded value is written back in place of its bytes
+ * without synchronization, so the fields must only be read by one thread at
+ * a time.
+ * 
+ * @author jbanes
+ */
+public final class LazyFields
+{
+    private static final VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    
+    private final String[] keys;
+    private final Object[] values;
+    private final int[] offsets;
+    private final byte[] data;
+
+    LazyFields(String[] keys, Object[] values, int[] offsets, byte[] data)
+    {
+        this.keys = keys;
+        this.values = values;
+        this.offsets = offsets;
+        this.data = data;
+    }
+    
+    public int size()
+    {
+        return keys.length;
+    }
+    
+    public String[] getKeys()
+    {
+        return keys;
+    }
+    
+    public int indexOf(Object key)
+    {
+        // Keys come from the decoder's key table, so identity usually matches
+        for(int i=0; i<keys.length; i++)
+        {
+            if(keys[i] == key) return i;
+        }
+        
+        for(int i=0; i<keys.length; i++)
+        {
+            if(keys[i].equals(key)) return i;
+        }
+        
+        return -1;
+    }
+    
+    public Object get(int index)
+    {
+        int offset = offsets[index];
+        
+        if(offset < 0) return values[index];
+        
+        values[index] = decode(data[offset] & 0xFF, offset + 1);
+        offsets[index] = -1;
+        
+        return values[index];
+    }
+    
+    private Object decode(int type, int offset)
+    {
+        switch(type)
+        {
+            case TYPE_INTEGER_U8:
+                return data[offset] & 0xFF;
+                
+            case TYPE_INTEGER_U16:
+                return (short)SHORT.get(data, offset) & 0xFFFF;
+                
+            case TYPE_INTEGER:
+                return (int)INT.get(data, offset);
+                
+            case TYPE_LONG:
+                return (long)LONG.get(data, offset);
+                
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble((long)LONG.get(data, offset));
+                
+            case TYPE_FLOAT:
+                return Float.intBitsToFloat((int)INT.get(data, offset));
+                
+            case TYPE_SHORT:
+                return (short)SHORT.get(data, offset);
+                
+            case TYPE_BYTE:
+                return data[offset];
+                
+            case TYPE_DATE:
+                return new Date((long)LONG.get(data, offset));
+                
+            case TYPE_CLOB:
+                return new String(data, offset + 4, (int)INT.get(data, offset), StandardCharsets.UTF_8);
+        }
+        
+        throw new IllegalStateException("Unknown value type 0x" + Integer.toHexString(type).toUpperCase());
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.io;
+
+import java.lang.ref.Cleaner;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reads ahead of the consumer on a background virtual thread so that network
+ * waits and decoding overlap with processing of the previous records. At most
+ * <code>capacity</code> records are held in memory.
+ * <p>
+ * The background thread only references the buffer, never the iterator, so
+ * an iterator that is abandoned without being closed can still be collected.
+ * Its buffer is then closed by a Cleaner, which releases the background 
+ * thread and closes the underlying iterator.
+ * 
+ * @author jbanes
+ */
+public final class PrefetchIterator<T> implements CloseableIterator<T>
+{
+    private static final Cleaner cleaner = Cleaner.create();
+    
+    private final Buffer<T> buffer;
+    private final Cleaner.Cleanable cleanable;
+    
+    private T next;
+
+    public PrefetchIterator(Iterator<T> iterator, int capacity)
+    {
+        this.buffer = new Buffer<>(iterator, capacity);
+        this.cleanable = cleaner.register(this, buffer::abandon);
+        
+        Thread.ofVirtual().name("Divirgance Prefetch").start(buffer::run);
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if(next == null) next = buffer.take();
+        
+        return (next != null);
+    }
+
+    @Override
+    public T next()
+    {
+        T value;
+        
+        if(!hasNext()) throw new NoSuchElementException();
+        
+        value = next;
+        next = null;
+        
+        return value;
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        if(!buffer.close()) return;
+        
+        // The buffer is already closed, so this only deregisters the cleanup
+        cleanable.clean();
+        
+        if(buffer.iterator instanceof CloseableIterator) ((CloseableIterator<T>)buffer.iterator).close();
+    }
+    
+    private static class Buffer<T>
+    {
+        private final Iterator<T> iterator;
+        private final int capacity;
+        private final ArrayDeque<T> records;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition ready = lock.newCondition();
+        private final Condition space = lock.newCondition();
+        
+        private boolean done;
+        private boolean closed;
+        private Throwable failure;
+
+        public Buffer(Iterator<T> iterator, int capacity)
+        {
+            this.iterator = iterator;
+            this.capacity = capacity;
+            this.records = new ArrayDeque<>(capacity);
+        }
+        
+        private boolean put(T record) throws InterruptedException
+        {
+            lock.lock();
+            
+            try
+            {
+                while(!closed && records.size() >= capacity) space.await();
+                
+                if(closed) return false;
+                
+                records.add(record);
+                ready.signal();
+                
+                return true;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        
+        private void finish(Throwable failure)
+        {
+            lock.lock();
+            
+            try
+            {
+                // Delivered behind the records already read so that none are lost
+                this.done = true;
+                this.failure = failure;
+                
+                ready.signal();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        
+        public void run()
+        {
+            Throwable failure = null;
+            
+            try
+            {
+                while(iterator.hasNext() && put(iterator.next()))
+                {
+                    // Reads until the end or until closed
+                }
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                
+                return;
+            }
+            catch(Throwable e)
+            {
+                // Errors too, or the consumer would wait for the end forever
+                failure = e;
+            }
+            
+            finish(failure);
+        }
+        
+        /**
+         * @return the next record or null at the end of the records
+         */
+        public T take()
+        {
+            lock.lock();
+            
+            try
+            {
+                while(!closed && !done && records.isEmpty()) ready.await();
+                
+                if(closed) return null;
+                
+                if(!records.isEmpty())
+                {
+                    space.signal();
+                    
+                    return records.poll();
+                }
+                
+                if(failure instanceof RuntimeException) throw (RuntimeException)failure;
+                if(failure instanceof Error) throw (Error)failure;
+                if(failure != null) throw new IllegalStateException(failure);
+                
+                return null;
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                
+                throw new IllegalStateException(e);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Releases the background thread. It is not interrupted, as 
+         * interrupting a thread blocked on a channel closes the channel.
+         * 
+         * @return false if the buffer had already been closed
+         */
+        public boolean close()
+        {
+            lock.lock();
+            
+            try
+            {
+                if(closed) return false;
+                
+                closed = true;
+                
+                records.clear();
+                space.signalAll();
+                ready.signalAll();
+                
+                return true;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Run by the Cleaner once the iterator is unreachable without having
+         * been closed.
+         */
+        public void abandon()
+        {
+            if(!close()) return;
+            
+            try
+            {
+                if(iterator instanceof CloseableIterator) ((CloseableIterator<T>)iterator).close();
+            }
+            catch(Exception e) { }
+        }
+    }
+}
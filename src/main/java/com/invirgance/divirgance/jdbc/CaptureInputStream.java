@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Keeps a copy of every byte read from the underlying stream, up to a limit.
+ * Once the limit is exceeded the copy is discarded and reads pass straight
+ * through.
+ * 
+ * @author jbanes
+ */
+class CaptureInputStream extends InputStream
+{
+    private final InputStream in;
+    private final int limit;
+    
+    private byte[] buffer = new byte[1024];
+    private int size;
+
+    public CaptureInputStream(InputStream in, int limit)
+    {
+        this.in = in;
+        this.limit = limit;
+    }
+    
+    private void capture(byte[] data, int offset, int length)
+    {
+        if(buffer == null) return;
+        
+        if(size + length > limit)
+        {
+            buffer = null;
+            return;
+        }
+        
+        if(size + length > buffer.length)
+        {
+            buffer = Arrays.copyOf(buffer, Math.min(limit, Math.max(buffer.length * 2, size + length)));
+        }
+        
+        System.arraycopy(data, offset, buffer, size, length);
+        
+        size += length;
+    }
+    
+    public boolean isExceeded()
+    {
+        return (buffer == null);
+    }
+    
+    /**
+     * @return the bytes read so far, or null if the limit was exceeded
+     */
+    public byte[] getCapture()
+    {
+        if(buffer == null) return null;
+        
+        return Arrays.copyOf(buffer, size);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        int value = in.read();
+        
+        if(value >= 0 && buffer != null)
+        {
+            if(size >= limit) buffer = null;
+            else if(size >= buffer.length) capture(new byte[] { (byte)value }, 0, 1);
+            else buffer[size++] = (byte)value;
+        }
+        
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        int count = in.read(b, off, len);
+        
+        if(count > 0) capture(b, off, count);
+        
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return in.available();
+    }
+}
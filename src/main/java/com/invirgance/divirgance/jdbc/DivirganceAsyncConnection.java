@@ -0,0 +1,192 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Non-blocking API over a DivirganceConnection. Obtain an instance with
+ * <code>connection.unwrap(DivirganceAsyncConnection.class)</code>.
+ * <p>
+ * Futures complete once the full response has been received, so the results 
+ * can be iterated without blocking. On a multiplexed connection no thread is 
+ * parked while waiting for the server. On a serial connection the response is
+ * read on a virtual thread.
+ * 
+ * @author jbanes
+ */
+public class DivirganceAsyncConnection
+{
+    static final Executor VIRTUAL = task -> Thread.ofVirtual().name("Divirgance Async").start(task);
+    
+    private final DivirganceConnection connection;
+    private final DivirganceDatabaseMetadata metadata;
+    
+    private Executor executor = VIRTUAL;
+
+    DivirganceAsyncConnection(DivirganceConnection connection)
+    {
+        this.connection = connection;
+        this.metadata = new DivirganceDatabaseMetadata(connection);
+    }
+
+    public DivirganceConnection getConnection()
+    {
+        return connection;
+    }
+
+    public Executor getExecutor()
+    {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to read responses on serial connections. Defaults
+     * to starting a virtual thread per response.
+     * 
+     * @param executor executor to read responses on
+     */
+    public void setExecutor(Executor executor)
+    {
+        this.executor = executor;
+    }
+    
+    public CompletableFuture<DivirganceResponse> execute(DivirganceCommand command)
+    {
+        try
+        {
+            return connection.execute(command).receive(executor);
+        }
+        catch(SQLException e)
+        {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    public CompletableFuture<Iterable<DivirganceRecord>> getRecords(DivirganceCommand command)
+    {
+        return execute(command).thenApply(response -> {
+            
+            try
+            {
+                if(response.getStatus() != DivirganceDatabaseMetadata.RESPONSE_BSON)
+                {
+                    response.close();
+                    
+                    throw new SQLException("Unknown error while executing command 0x" + Integer.toHexString(command.getCommand()).toUpperCase());
+                }
+            }
+            catch(SQLException e) { throw new CompletionException(e); }
+            
+            return response;
+        });
+    }
+    
+    public CompletableFuture<ResultSet> getCatalogs()
+    {
+        return execute(metadata.getCatalogsCommand()).thenApply(response -> {
+            
+            try
+            {
+                return new DivirganceResultSet(metadata.getCatalogs(response), response);
+            }
+            catch(SQLException e) { throw new CompletionException(e); }
+        });
+    }
+    
+    public CompletableFuture<ResultSet> getTables(String catalog)
+    {
+        DivirganceCommand command;
+        
+        try
+        {
+            command = metadata.getTablesCommand(catalog);
+        }
+        catch(SQLException e)
+        {
+            return CompletableFuture.failedFuture(e);
+        }
+        
+        return execute(command).thenApply(response -> {
+            
+            try
+            {
+                return new DivirganceResultSet(metadata.getTables(catalog, response), response);
+            }
+            catch(SQLException e) { throw new CompletionException(e); }
+        });
+    }
+    
+    /**
+     * Pipelines the table listings of several catalogs. Each future completes
+     * independently as its response arrives.
+     * 
+     * @param catalogs the catalogs to list the tables of
+     * @return one future per catalog, in the order given
+     */
+    public List<CompletableFuture<ResultSet>> getCatalogTables(String... catalogs)
+    {
+        List<CompletableFuture<ResultSet>> futures = new ArrayList<>(catalogs.length);
+        DivirganceCommand[] commands = new DivirganceCommand[catalogs.length];
+        DivirganceResponse[] responses;
+        
+        try
+        {
+            for(int i=0; i<catalogs.length; i++) commands[i] = metadata.getTablesCommand(catalogs[i]);
+            
+            responses = connection.execute(commands);
+        }
+        catch(SQLException e)
+        {
+            for(int i=0; i<catalogs.length; i++) futures.add(CompletableFuture.failedFuture(e));
+            
+            return futures;
+        }
+        
+        for(int i=0; i<catalogs.length; i++)
+        {
+            final String catalog = catalogs[i];
+            
+            futures.add(responses[i].receive(executor).thenApply(response -> {
+                
+                Iterator<DivirganceRecord> iterator;
+                
+                try
+                {
+                    iterator = metadata.getTables(catalog, response);
+                }
+                catch(SQLException e) { throw new CompletionException(e); }
+                
+                return new DivirganceResultSet(iterator, response);
+            }));
+        }
+        
+        return futures;
+    }
+}
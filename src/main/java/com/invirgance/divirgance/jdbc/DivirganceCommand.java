@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import com.invirgance.divirgance.io.BinaryOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * A single command to be sent to the server. Commands are fully encoded in 
+ * memory before being sent so that they can be written atomically, framed, or
+ * pipelined together with other commands.
+ * 
+ * @author jbanes
+ */
+public class DivirganceCommand
+{
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(32);
+    private final DataOutputStream out = new DataOutputStream(buffer);
+    private final int command;
+
+    public DivirganceCommand(int command)
+    {
+        this.command = command;
+        
+        write(command);
+    }
+    
+    public DivirganceCommand write(int value)
+    {
+        buffer.write(value);
+        
+        return this;
+    }
+    
+    public DivirganceCommand writeInt(int value)
+    {
+        try { out.writeInt(value); }
+        catch(IOException e) { throw new IllegalStateException(e); }
+        
+        return this;
+    }
+    
+    /**
+     * Appends a string in the modified UTF-8 encoding of DataOutput, which is
+     * limited to 65535 bytes.
+     * 
+     * @param value string to write
+     * @return this command
+     * @throws SQLException if the encoded string is longer than 65535 bytes
+     */
+    public DivirganceCommand writeUTF(String value) throws SQLException
+    {
+        try { out.writeUTF(value); }
+        catch(UTFDataFormatException e) { throw new SQLException("String of " + value.length() + " characters exceeds the 65535 byte limit of the protocol", e); }
+        catch(IOException e) { throw new IllegalStateException(e); }
+        
+        return this;
+    }
+    
+    /**
+     * Appends a complete BSON record stream. All records share the key and
+     * string dictionaries of a single encoder.
+     * 
+     * @param records records to encode
+     * @return this command
+     */
+    public DivirganceCommand writeRecords(Iterable<? extends Map<String,Object>> records)
+    {
+        BinaryOutput output = new BinaryOutput(out);
+        
+        try
+        {
+            output.write(records);
+            output.finish();
+        }
+        catch(IOException e) { throw new IllegalStateException(e); }
+        
+        return this;
+    }
+    
+    public int getCommand()
+    {
+        return command;
+    }
+    
+    public byte[] toByteArray()
+    {
+        return buffer.toByteArray();
+    }
+}
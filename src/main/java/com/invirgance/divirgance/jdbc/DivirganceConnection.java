@@ -21,22 +21,66 @@ SOFTWARE.
  */
 package com.invirgance.divirgance.jdbc;
 
+import com.invirgance.divirgance.net.ChannelTransport;
+import com.invirgance.divirgance.net.SocketTransport;
+import com.invirgance.divirgance.net.Transport;
+import com.invirgance.divirgance.net.TransportOutputStream;
+import java.io.DataInput;
 import java.io.IOException;
-import java.net.Socket;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
 import java.sql.*;
+import java.util.ArrayDeque;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * Connection to a Divirgance server. A connection may be shared between threads,
+ * including virtual threads. Blocking reads and writes are only ever performed
+ * while holding a ReentrantLock or waiting on its Condition, never inside a
+ * synchronized block, so a virtual thread blocked on the server unmounts from
+ * its carrier thread rather than pinning it. This includes the streams 
+ * themselves: commands are written through a TransportOutputStream rather than
+ * a DataOutputStream, whose writes are synchronized. Any new locking or stream
+ * wrapping must follow the same rule.
  *
  * @author jbanes
  */
 public class DivirganceConnection implements Connection
 {
-    private Socket socket;
+    static final int COMMAND_MULTIPLEX = 0x10;
+    static final int COMMAND_CANCEL = 0x11;
+    static final int COMMAND_FETCH = 0x12;
+    static final int COMMAND_PING = 0x13;
+    
+    static final int RESPONSE_OK = 0x00;
+    
+    private Transport transport;
+    private InputStream in;
+    private DataInput input;
+    private TransportOutputStream out;
     private int major;
     private int minor;
+    
+    private String server;
+    private Properties properties;
+    private int fetchSize;
+    private int prefetch;
+    private DivirganceStatementCache statements;
+    private long metadataCacheTimeout;
+    private long resultCacheTimeout;
+    private boolean lazyDecoding;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<DivirganceResponse> pending = new ArrayDeque<>();
+    private DivirganceMultiplexer multiplexer;
+    private DivirganceAsyncConnection async;
 
     public DivirganceConnection() throws SQLException
     {
@@ -50,38 +94,483 @@ public class DivirganceConnection implements Connection
 
     public DivirganceConnection(String host, int port) throws SQLException
     {
+        this(host, port, new Properties());
+    }
+
+    public DivirganceConnection(String host, int port, Properties properties) throws SQLException
+    {
+        this(connect(host, port, properties), host + ":" + port, properties);
+    }
+    
+    /**
+     * Performs the handshake over an already established transport. The 
+     * connection takes ownership of the transport and closes it if the 
+     * handshake fails.
+     * 
+     * @param transport connected transport to the server
+     * @param server description of the server used in error messages
+     * @param properties connection properties
+     * @throws SQLException if the handshake fails
+     */
+    public DivirganceConnection(Transport transport, String server, Properties properties) throws SQLException
+    {
+        CompletableFuture<Boolean> expired = new CompletableFuture<>();
         byte[] data = new byte[10];
+        int statementCacheSize;
+        int timeout;
+        
+        this.transport = transport;
+        this.server = server;
+        this.properties = properties;
         
         try
         {
-            this.socket = new Socket(host, port);
+            timeout = getInt(properties, "connectTimeout", 10000);
+            statementCacheSize = getInt(properties, "statementCacheSize", 0);
             
-            this.socket.getInputStream().read(data);
+            this.fetchSize = getInt(properties, "fetchSize", 0);
+            this.prefetch = getInt(properties, "prefetch", 0);
+            this.metadataCacheTimeout = getLong(properties, "metadataCacheTimeout", 0);
+            this.resultCacheTimeout = getLong(properties, "resultCacheTimeout", 0);
+            this.lazyDecoding = Boolean.parseBoolean(properties.getProperty("lazyDecoding"));
+        }
+        catch(SQLException e)
+        {
+            try
+            {
+                transport.close();
+            }
+            catch(IOException x) { e.addSuppressed(x); }
+            
+            throw e;
+        }
+        
+        if(statementCacheSize > 0) this.statements = new DivirganceStatementCache(this, statementCacheSize);
+        
+        // Reads don't honor the connect timeout, so a server that accepts the
+        // connection but never answers is cut off by closing the transport
+        if(timeout > 0)
+        {
+            expired.completeOnTimeout(true, timeout, TimeUnit.MILLISECONDS).thenAccept(timedOut -> {
+                
+                try
+                {
+                    if(timedOut) transport.close();
+                }
+                catch(IOException e) { }
+            });
+        }
+        
+        try
+        {
+            this.in = transport.getInputStream();
+            this.input = (DataInput)in;
+            this.out = (transport.getOutputStream() instanceof TransportOutputStream) ? (TransportOutputStream)transport.getOutputStream() : new TransportOutputStream(transport.getOutputStream());
+            
+            this.input.readFully(data);
             
             if(!new String(data).equals("DIVIRGANCE"))
             {
-                throw new SQLException("Server at " + host + ":" + port+ " is not a Divirgance server!");
+                throw new SQLException("Server at " + server + " is not a Divirgance server!");
+            }
+            
+            this.major = this.in.read();
+            this.minor = this.in.read();
+            
+            if(Boolean.parseBoolean(properties.getProperty("multiplex")))
+            {
+                this.out.write(COMMAND_MULTIPLEX);
+                this.out.flush();
+                
+                if(this.in.read() != RESPONSE_OK)
+                {
+                    throw new SQLException("Server at " + server + " does not support multiplexed connections");
+                }
+                
+                this.multiplexer = new DivirganceMultiplexer(input, out);
             }
             
-            this.major = this.socket.getInputStream().read();
-            this.minor = this.socket.getInputStream().read();
+            if(!expired.complete(false)) throw new IOException("Handshake timed out");
+        }
+        catch(IOException | SQLException e)
+        {
+            SQLException failure;
+            
+            if(!expired.complete(false) && expired.join()) failure = new SQLTimeoutException("Server at " + server + " did not complete the handshake within " + timeout + "ms", e);
+            else if(e instanceof SQLException) failure = (SQLException)e;
+            else failure = new SQLException(e);
+            
+            try
+            {
+                transport.close();
+            }
+            catch(IOException x) { failure.addSuppressed(x); }
+            
+            throw failure;
+        }
+    }
+    
+    private static long getLong(Properties properties, String name, long defaultValue) throws SQLException
+    {
+        String value = properties.getProperty(name);
+        long result;
+        
+        if(value == null) return defaultValue;
+        
+        try
+        {
+            result = Long.parseLong(value.trim());
+        }
+        catch(NumberFormatException e)
+        {
+            throw new SQLException("Invalid value " + value + " for connection property " + name, e);
+        }
+        
+        if(result < 0) throw new SQLException("Connection property " + name + " must not be negative but was " + value);
+        
+        return result;
+    }
+    
+    private static int getInt(Properties properties, String name, int defaultValue) throws SQLException
+    {
+        long value = getLong(properties, name, defaultValue);
+        
+        if(value > Integer.MAX_VALUE) throw new SQLException("Connection property " + name + " must not be larger than " + Integer.MAX_VALUE + " but was " + value);
+        
+        return (int)value;
+    }
+    
+    private static Transport connect(String host, int port, Properties properties) throws SQLException
+    {
+        String transport = properties.getProperty("transport", "nio");
+        int timeout = getInt(properties, "connectTimeout", 10000);
+        
+        try
+        {
+            switch(transport)
+            {
+                case "nio":
+                    return new ChannelTransport(new InetSocketAddress(host, port), timeout);
+
+                case "socket":
+                    return new SocketTransport(new InetSocketAddress(host, port), timeout);
+            }
         }
         catch(IOException e)
         {
             throw new SQLException(e);
         }
+        
+        throw new SQLException("Unknown transport " + transport + ". Supported transports are nio and socket.");
+    }
+    
+    public boolean isMultiplexed()
+    {
+        return (multiplexer != null);
+    }
+    
+    /**
+     * Sends a command to the server. The response may be read at any time and
+     * from any thread. Responses do not need to be read in the order their
+     * commands were sent.
+     * 
+     * @param command the command to send
+     * @return the response to the command
+     * @throws SQLException if the command could not be sent
+     */
+    public DivirganceResponse execute(DivirganceCommand command) throws SQLException
+    {
+        return execute(new DivirganceCommand[]{ command })[0];
+    }
+    
+    /**
+     * Pipelines several commands to the server. All commands are written 
+     * before any response is read, so the full set costs roughly one round 
+     * trip. Responses are returned in the same order as the commands.
+     * 
+     * @param commands the commands to send
+     * @return the responses to the commands
+     * @throws SQLException if the commands could not be sent
+     */
+    public DivirganceResponse[] execute(DivirganceCommand... commands) throws SQLException
+    {
+        return execute(fetchSize, commands);
+    }
+    
+    /**
+     * Pipelines several commands to the server, streaming the responses in 
+     * chunks of the given number of records. Chunking is only supported on
+     * multiplexed connections and is ignored otherwise.
+     * 
+     * @param fetchSize number of records to request at a time or zero to 
+     *        stream the entire response
+     * @param commands the commands to send
+     * @return the responses to the commands
+     * @throws SQLException if the commands could not be sent
+     */
+    public DivirganceResponse[] execute(int fetchSize, DivirganceCommand... commands) throws SQLException
+    {
+        DivirganceResponse[] responses = new DivirganceResponse[commands.length];
+        FrameInputStream stream;
+        int frames = (fetchSize > 0) ? 2 : 1;
+        int[] ids;
+        byte[][] data;
+        
+        try
+        {
+            if(multiplexer != null)
+            {
+                ids = new int[commands.length * frames];
+                data = new byte[commands.length * frames][];
+                
+                for(int i=0; i<commands.length; i++)
+                {
+                    stream = new FrameInputStream();
+                    responses[i] = new DivirganceResponse(this, stream, multiplexer.open(stream), fetchSize);
+                    
+                    ids[i * frames] = responses[i].getId();
+                    data[i * frames] = commands[i].toByteArray();
+                    
+                    if(fetchSize < 1) continue;
+                    
+                    ids[i * frames + 1] = responses[i].getId();
+                    data[i * frames + 1] = new DivirganceCommand(COMMAND_FETCH).writeInt(fetchSize).toByteArray();
+                }
+                
+                multiplexer.send(ids, data);
+                
+                return responses;
+            }
+            
+            lock.lock();
+
+            try
+            {
+                for(int i=0; i<commands.length; i++)
+                {
+                    out.write(commands[i].toByteArray());
+                    
+                    responses[i] = new DivirganceResponse(this, in, -1, 0);
+                }
+                
+                out.flush();
+                
+                for(DivirganceResponse response : responses) pending.add(response);
+                
+                return responses;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        catch(IOException e)
+        {
+            throw new SQLException(e);
+        }
+    }
+    
+    /**
+     * Asks the server for more records of a chunked response.
+     */
+    void fetch(DivirganceResponse response, int count) throws IOException
+    {
+        multiplexer.send(response.getId(), new DivirganceCommand(COMMAND_FETCH).writeInt(count).toByteArray());
+    }
+    
+    /**
+     * Acquires the shared stream for the response, buffering any earlier 
+     * responses that have not yet been fully read. Must be paired with end().
+     */
+    void begin(DivirganceResponse response) throws IOException
+    {
+        DivirganceResponse head;
+        
+        if(multiplexer != null) return;
+        
+        lock.lock();
+        
+        if(response.isComplete()) return;
+        
+        while((head = pending.peekFirst()) != response && head != null)
+        {
+            head.buffer();
+            pending.pollFirst();
+        }
+    }
+    
+    void end(DivirganceResponse response)
+    {
+        if(multiplexer != null) return;
+        
+        if(response.isComplete()) pending.remove(response);
+        
+        lock.unlock();
+    }
+    
+    /**
+     * Called when a response is closed. If the response has not been fully
+     * read, the server is asked to stop sending it.
+     */
+    void release(DivirganceResponse response)
+    {
+        try
+        {
+            if(multiplexer != null)
+            {
+                if(response.isComplete()) multiplexer.release(response.getId());
+                else multiplexer.cancel(response.getId());
+
+                return;
+            }
+
+            lock.lock();
+
+            try
+            {
+                if(response.isComplete())
+                {
+                    pending.remove(response);
+                }
+                else if(pending.peekFirst() == response && pending.size() == 1)
+                {
+                    // The server ends the response currently being streamed with
+                    // an EOF. Only safe when no later response could be hit.
+                    out.write(COMMAND_CANCEL);
+                    out.flush();
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        catch(IOException e)
+        {
+            // Connection failure will be reported on the next request
+        }
+    }
+    
+    public Properties getProperties()
+    {
+        return properties;
+    }
+    
+    /**
+     * Number of records result sets read ahead on a background thread. Set
+     * with the prefetch connection property. Defaults to zero (disabled).
+     * 
+     * @return the number of records to read ahead
+     */
+    public int getPrefetch()
+    {
+        return prefetch;
+    }
+    
+    /**
+     * Number of records requested at a time by multiplexed responses. Set with
+     * the fetchSize connection property. Defaults to zero (all records).
+     * 
+     * @return the default fetch size of statements
+     */
+    public int getFetchSize()
+    {
+        return fetchSize;
+    }
+
+    /**
+     * @return the server this connection was made to, as given in the URL
+     */
+    public String getServer()
+    {
+        return server;
+    }
+    
+    /**
+     * Milliseconds that catalog and table listings are served from the shared
+     * {@link DivirganceMetadataCache}. Set with the metadataCacheTimeout 
+     * connection property. Defaults to zero (disabled).
+     * 
+     * @return the lifetime of cached metadata in milliseconds
+     */
+    public long getMetadataCacheTimeout()
+    {
+        return metadataCacheTimeout;
+    }
+    
+    /**
+     * Whether the values of result records are decoded only when they are 
+     * read. Set with the lazyDecoding connection property. Defaults to false.
+     * 
+     * @return true if records are decoded on first access
+     */
+    public boolean isLazyDecoding()
+    {
+        return lazyDecoding;
+    }
+    
+    /**
+     * Milliseconds that complete query results are served from the shared
+     * {@link DivirganceResultCache}. Set with the resultCacheTimeout 
+     * connection property. Defaults to zero (disabled).
+     * 
+     * @return the lifetime of cached results in milliseconds
+     */
+    public long getResultCacheTimeout()
+    {
+        return resultCacheTimeout;
+    }
+    
+    /**
+     * Number of prepared statement handles kept open on the server for reuse.
+     * Set with the statementCacheSize connection property. Defaults to zero
+     * (disabled).
+     * 
+     * @return the maximum number of cached statements
+     */
+    public int getStatementCacheSize()
+    {
+        return (statements == null) ? 0 : statements.getSize();
+    }
+    
+    public long getStatementCacheHitCount()
+    {
+        return (statements == null) ? 0 : statements.getHitCount();
+    }
+    
+    public long getStatementCacheMissCount()
+    {
+        return (statements == null) ? 0 : statements.getMissCount();
+    }
+    
+    public long getStatementCacheEvictionCount()
+    {
+        return (statements == null) ? 0 : statements.getEvictionCount();
+    }
+    
+    int prepare(String sql) throws SQLException
+    {
+        if(statements != null) return statements.acquire(sql);
+        
+        return DivirganceStatementCache.prepare(this, sql);
+    }
+    
+    void release(int handle) throws SQLException
+    {
+        if(statements != null) statements.release(handle);
+        else DivirganceStatementCache.close(this, handle);
     }
 
     @Override
     public Statement createStatement() throws SQLException
     {
-        throw new UnsupportedOperationException("Not supported yet."); // Generated from nbfs://nbhost/SystemFileSystem/Templates/Classes/Code/GeneratedMethodBody
+        return new DivirganceStatement(this);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql) throws SQLException
     {
-        throw new UnsupportedOperationException("Not supported yet."); // Generated from nbfs://nbhost/SystemFileSystem/Templates/Classes/Code/GeneratedMethodBody
+        return new DivirgancePreparedStatement(this, sql);
     }
 
     @Override
@@ -125,7 +614,9 @@ public class DivirganceConnection implements Connection
     {
         try
         {
-            this.socket.close();
+            if(multiplexer != null) multiplexer.close();
+            
+            this.transport.close();
         }
         catch(IOException e)
         {
@@ -136,13 +627,13 @@ public class DivirganceConnection implements Connection
     @Override
     public boolean isClosed() throws SQLException
     {
-        return this.socket.isClosed();
+        return this.transport.isClosed();
     }
 
     @Override
     public DatabaseMetaData getMetaData() throws SQLException
     {
-        return new DivirganceDatabaseMetadata(socket);
+        return new DivirganceDatabaseMetadata(this);
     }
 
     @Override
@@ -196,13 +687,23 @@ public class DivirganceConnection implements Connection
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException
     {
-        throw new UnsupportedOperationException("Not supported yet."); // Generated from nbfs://nbhost/SystemFileSystem/Templates/Classes/Code/GeneratedMethodBody
+        if(resultSetType != ResultSet.TYPE_FORWARD_ONLY || resultSetConcurrency != ResultSet.CONCUR_READ_ONLY)
+        {
+            throw new SQLFeatureNotSupportedException("Only forward only, read only result sets are supported");
+        }
+        
+        return createStatement();
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException
     {
-        throw new UnsupportedOperationException("Not supported yet."); // Generated from nbfs://nbhost/SystemFileSystem/Templates/Classes/Code/GeneratedMethodBody
+        if(resultSetType != ResultSet.TYPE_FORWARD_ONLY || resultSetConcurrency != ResultSet.CONCUR_READ_ONLY)
+        {
+            throw new SQLFeatureNotSupportedException("Only forward only, read only result sets are supported");
+        }
+        
+        return prepareStatement(sql);
     }
 
     @Override
@@ -322,7 +823,30 @@ public class DivirganceConnection implements Connection
     @Override
     public boolean isValid(int timeout) throws SQLException
     {
-        throw new UnsupportedOperationException("Not supported yet."); // Generated from nbfs://nbhost/SystemFileSystem/Templates/Classes/Code/GeneratedMethodBody
+        CompletableFuture<DivirganceResponse> future;
+        
+        if(timeout < 0) throw new SQLException("Timeout must not be negative");
+        if(isClosed()) return false;
+        
+        // The server answers a ping with a single RESPONSE_OK
+        future = execute(0, new DivirganceCommand(COMMAND_PING))[0].receive(DivirganceAsyncConnection.VIRTUAL);
+        
+        try
+        {
+            if(timeout > 0) return (future.get(timeout, TimeUnit.SECONDS).getStatus() == RESPONSE_OK);
+            
+            return (future.get().getStatus() == RESPONSE_OK);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            
+            return false;
+        }
+        catch(ExecutionException | TimeoutException e)
+        {
+            return false;
+        }
     }
 
     @Override
@@ -394,13 +918,31 @@ public class DivirganceConnection implements Connection
     @Override
     public <T> T unwrap(Class<T> iface) throws SQLException
     {
-        throw new UnsupportedOperationException("Not supported yet."); // Generated from nbfs://nbhost/SystemFileSystem/Templates/Classes/Code/GeneratedMethodBody
+        if(iface.isInstance(this)) return iface.cast(this);
+        
+        if(iface == DivirganceAsyncConnection.class)
+        {
+            lock.lock();
+            
+            try
+            {
+                if(async == null) async = new DivirganceAsyncConnection(this);
+                
+                return iface.cast(async);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        
+        throw new SQLException(getClass().getName() + " is not a wrapper for " + iface.getName());
     }
 
     @Override
     public boolean isWrapperFor(Class<?> iface) throws SQLException
     {
-        throw new UnsupportedOperationException("Not supported yet."); // Generated from nbfs://nbhost/SystemFileSystem/Templates/Classes/Code/GeneratedMethodBody
+        return iface.isInstance(this) || iface == DivirganceAsyncConnection.class;
     }
     
 }
@@ -0,0 +1,512 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+
+/**
+ * Keeps a set of warm DivirganceConnections ready to be borrowed. The pool is
+ * bounded by a minimum and maximum size, evicts connections that sit idle longer
+ * than the idle timeout, and fails a borrow that can't be satisfied within the
+ * borrow timeout. Wait times are recorded so that pool pressure can be observed.
+ * 
+ * @author jbanes
+ */
+public class DivirganceConnectionPool implements ConnectionEventListener, AutoCloseable
+{
+    private final DivirganceDataSource source;
+    private final ArrayDeque<DivirgancePooledConnection> idle = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    
+    private ScheduledExecutorService evictor;
+    private boolean closed;
+    
+    private int total;
+    private int waiting;
+    
+    private long borrowed;
+    private long created;
+    private long destroyed;
+    private long timeouts;
+    private long totalWait;
+    private long maxWait;
+
+    DivirganceConnectionPool(DivirganceDataSource source)
+    {
+        this.source = source;
+    }
+    
+    /**
+     * Opens the minimum number of connections and starts evicting idle ones.
+     * Kept out of the constructor so that the pool is not handed to listeners
+     * and the evictor before it is fully built.
+     */
+    void start()
+    {
+        fill();
+        
+        if(source.getIdleTimeout() > 0)
+        {
+            lock.lock();
+            
+            try
+            {
+                if(closed) return;
+                
+                this.evictor = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("Divirgance Pool Evictor").factory());
+                
+                this.evictor.scheduleWithFixedDelay(this::evict, source.getIdleTimeout(), Math.max(source.getIdleTimeout() / 2, 1), TimeUnit.MILLISECONDS);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+    
+    public Connection borrow() throws SQLException
+    {
+        DivirgancePooledConnection connection;
+        long start = System.nanoTime();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(source.getBorrowTimeout());
+        long remaining;
+        
+        while(true)
+        {
+            connection = null;
+            remaining = timeout - (System.nanoTime() - start);
+            
+            lock.lock();
+            
+            try
+            {
+                while(idle.isEmpty() && total >= source.getMaxPoolSize())
+                {
+                    if(closed) throw new SQLException("Connection pool has been closed");
+                    
+                    if(remaining <= 0)
+                    {
+                        timeouts++;
+                        
+                        throw new SQLException("Timed out after " + source.getBorrowTimeout() + "ms waiting for a connection");
+                    }
+                    
+                    waiting++;
+                    
+                    try
+                    {
+                        remaining = available.awaitNanos(remaining);
+                    }
+                    catch(InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        
+                        throw new SQLException(e);
+                    }
+                    finally
+                    {
+                        waiting--;
+                    }
+                }
+                
+                if(closed) throw new SQLException("Connection pool has been closed");
+                
+                // Most recently returned connections are the warmest
+                if(!idle.isEmpty()) connection = idle.pollFirst();
+                else total++;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            
+            if(connection == null) connection = create();
+            else if(!validate(connection)) continue;
+            
+            record(System.nanoTime() - start);
+            
+            return connection.getConnection();
+        }
+    }
+    
+    private DivirgancePooledConnection create() throws SQLException
+    {
+        DivirgancePooledConnection connection;
+        
+        try
+        {
+            connection = source.getPooledConnection();
+        }
+        catch(SQLException e)
+        {
+            release();
+            
+            throw e;
+        }
+        
+        connection.addConnectionEventListener(this);
+        
+        lock.lock();
+        
+        try
+        {
+            created++;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        return connection;
+    }
+    
+    private boolean validate(DivirgancePooledConnection connection)
+    {
+        try
+        {
+            if(connection.getPhysicalConnection().isValid(source.getValidationTimeout())) return true;
+        }
+        catch(SQLException e)
+        {
+            // Fall through to destroy
+        }
+        
+        destroy(connection);
+        
+        return false;
+    }
+    
+    private void destroy(DivirgancePooledConnection connection)
+    {
+        connection.removeConnectionEventListener(this);
+        
+        try
+        {
+            connection.close();
+        }
+        catch(SQLException e)
+        {
+            // Nothing to do. The connection is being discarded.
+        }
+        
+        lock.lock();
+        
+        try
+        {
+            destroyed++;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        release();
+    }
+    
+    private void release()
+    {
+        lock.lock();
+        
+        try
+        {
+            total--;
+            
+            available.signal();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    private void record(long wait)
+    {
+        lock.lock();
+        
+        try
+        {
+            borrowed++;
+            totalWait += wait;
+            
+            if(wait > maxWait) maxWait = wait;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    private void fill()
+    {
+        DivirgancePooledConnection connection;
+        
+        while(true)
+        {
+            lock.lock();
+            
+            try
+            {
+                if(closed || total >= source.getMinPoolSize()) return;
+                
+                total++;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            
+            try
+            {
+                connection = create();
+            }
+            catch(SQLException e)
+            {
+                // Server unavailable. Try again on the next borrow or eviction run.
+                return;
+            }
+            
+            returnConnection(connection);
+        }
+    }
+    
+    private void evict()
+    {
+        ArrayDeque<DivirgancePooledConnection> expired = new ArrayDeque<>();
+        Iterator<DivirgancePooledConnection> iterator;
+        DivirgancePooledConnection connection;
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(source.getIdleTimeout());
+        
+        lock.lock();
+        
+        try
+        {
+            // Oldest connections are at the tail
+            iterator = idle.descendingIterator();
+            
+            while(iterator.hasNext() && total - expired.size() > source.getMinPoolSize())
+            {
+                connection = iterator.next();
+                
+                if(connection.getLastUsed() > cutoff) break;
+                
+                iterator.remove();
+                expired.add(connection);
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        for(DivirgancePooledConnection expire : expired) destroy(expire);
+        
+        fill();
+    }
+    
+    private void returnConnection(DivirgancePooledConnection connection)
+    {
+        boolean discard;
+        
+        lock.lock();
+        
+        try
+        {
+            discard = closed;
+            
+            if(!discard)
+            {
+                idle.addFirst(connection);
+                available.signal();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        if(discard) destroy(connection);
+    }
+
+    @Override
+    public void connectionClosed(ConnectionEvent event)
+    {
+        returnConnection((DivirgancePooledConnection)event.getSource());
+    }
+
+    @Override
+    public void connectionErrorOccurred(ConnectionEvent event)
+    {
+        DivirgancePooledConnection connection = (DivirgancePooledConnection)event.getSource();
+        
+        lock.lock();
+        
+        try
+        {
+            idle.remove(connection);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        destroy(connection);
+    }
+    
+    public int getTotalCount()
+    {
+        lock.lock();
+        
+        try { return total; }
+        finally { lock.unlock(); }
+    }
+    
+    public int getIdleCount()
+    {
+        lock.lock();
+        
+        try { return idle.size(); }
+        finally { lock.unlock(); }
+    }
+    
+    public int getActiveCount()
+    {
+        lock.lock();
+        
+        try { return total - idle.size(); }
+        finally { lock.unlock(); }
+    }
+    
+    public int getWaitingCount()
+    {
+        lock.lock();
+        
+        try { return waiting; }
+        finally { lock.unlock(); }
+    }
+    
+    public long getBorrowCount()
+    {
+        lock.lock();
+        
+        try { return borrowed; }
+        finally { lock.unlock(); }
+    }
+    
+    public long getCreatedCount()
+    {
+        lock.lock();
+        
+        try { return created; }
+        finally { lock.unlock(); }
+    }
+    
+    public long getDestroyedCount()
+    {
+        lock.lock();
+        
+        try { return destroyed; }
+        finally { lock.unlock(); }
+    }
+    
+    public long getTimeoutCount()
+    {
+        lock.lock();
+        
+        try { return timeouts; }
+        finally { lock.unlock(); }
+    }
+    
+    /**
+     * Total time spent by callers waiting to borrow a connection.
+     * 
+     * @return wait time in milliseconds
+     */
+    public double getTotalWaitTime()
+    {
+        lock.lock();
+        
+        try { return totalWait / 1_000_000.0; }
+        finally { lock.unlock(); }
+    }
+    
+    /**
+     * Longest time a single caller has waited to borrow a connection.
+     * 
+     * @return wait time in milliseconds
+     */
+    public double getMaxWaitTime()
+    {
+        lock.lock();
+        
+        try { return maxWait / 1_000_000.0; }
+        finally { lock.unlock(); }
+    }
+    
+    /**
+     * Average time callers waited to borrow a connection.
+     * 
+     * @return wait time in milliseconds
+     */
+    public double getAverageWaitTime()
+    {
+        lock.lock();
+        
+        try { return (borrowed > 0) ? (totalWait / 1_000_000.0) / borrowed : 0; }
+        finally { lock.unlock(); }
+    }
+
+    @Override
+    public void close()
+    {
+        ArrayDeque<DivirgancePooledConnection> connections;
+        
+        lock.lock();
+        
+        try
+        {
+            closed = true;
+            connections = new ArrayDeque<>(idle);
+            
+            idle.clear();
+            available.signalAll();
+            
+            if(evictor != null) evictor.shutdownNow();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        for(DivirgancePooledConnection connection : connections) destroy(connection);
+    }
+}
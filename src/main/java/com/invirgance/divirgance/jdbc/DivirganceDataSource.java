@@ -0,0 +1,293 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import javax.sql.ConnectionPoolDataSource;
+import javax.sql.DataSource;
+
+/**
+ * DataSource that hands out connections from a DivirganceConnectionPool. As a
+ * ConnectionPoolDataSource it can also supply unpooled DivirgancePooledConnections
+ * to an external pool manager.
+ * 
+ * @author jbanes
+ */
+public class DivirganceDataSource implements DataSource, ConnectionPoolDataSource, AutoCloseable
+{
+    private final DivirganceDriver driver = new DivirganceDriver();
+    private final ReentrantLock lock = new ReentrantLock();
+    
+    private String url = "jdbc:divirgance://localhost";
+    private Properties properties = new Properties();
+    
+    private int minPoolSize = 1;
+    private int maxPoolSize = 10;
+    private long idleTimeout = 10 * 60 * 1000;
+    private long borrowTimeout = 30 * 1000;
+    private int validationTimeout = 5;
+    
+    private int loginTimeout;
+    private PrintWriter logWriter;
+    
+    private DivirganceConnectionPool pool;
+
+    public DivirganceDataSource()
+    {
+    }
+
+    public DivirganceDataSource(String url)
+    {
+        this.url = url;
+    }
+
+    public String getUrl()
+    {
+        return url;
+    }
+
+    public void setUrl(String url)
+    {
+        this.url = url;
+    }
+
+    public Properties getProperties()
+    {
+        return properties;
+    }
+
+    public void setProperties(Properties properties)
+    {
+        this.properties = properties;
+    }
+
+    public int getMinPoolSize()
+    {
+        return minPoolSize;
+    }
+
+    public void setMinPoolSize(int minPoolSize)
+    {
+        this.minPoolSize = minPoolSize;
+    }
+
+    public int getMaxPoolSize()
+    {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize(int maxPoolSize)
+    {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    /**
+     * How long a connection may sit unused in the pool before it is closed. 
+     * Connections are not evicted below the minimum pool size. A value of zero
+     * disables eviction.
+     * 
+     * @return idle timeout in milliseconds
+     */
+    public long getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout)
+    {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * How long getConnection() will wait for a connection to be returned when
+     * the pool is at its maximum size.
+     * 
+     * @return borrow timeout in milliseconds
+     */
+    public long getBorrowTimeout()
+    {
+        return borrowTimeout;
+    }
+
+    public void setBorrowTimeout(long borrowTimeout)
+    {
+        this.borrowTimeout = borrowTimeout;
+    }
+    
+    /**
+     * How long to wait for the server to answer the ping sent when validating
+     * a connection on borrow. 
+     * 
+     * @return validation timeout in seconds
+     */
+    public int getValidationTimeout()
+    {
+        return validationTimeout;
+    }
+
+    public void setValidationTimeout(int validationTimeout)
+    {
+        this.validationTimeout = validationTimeout;
+    }
+    
+    /**
+     * Returns the pool backing this DataSource, creating it if necessary. Useful
+     * for monitoring the pool metrics.
+     * 
+     * @return the connection pool
+     * @throws SQLException if the minimum pool size exceeds the maximum
+     */
+    public DivirganceConnectionPool getPool() throws SQLException
+    {
+        lock.lock();
+        
+        try
+        {
+            if(pool == null)
+            {
+                if(minPoolSize > maxPoolSize) throw new SQLException("Minimum pool size of " + minPoolSize + " exceeds maximum pool size of " + maxPoolSize);
+                
+                pool = new DivirganceConnectionPool(this);
+                
+                pool.start();
+            }
+            
+            return pool;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException
+    {
+        return getPool().borrow();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException
+    {
+        // Divirgance does not currently authenticate connections
+        return getConnection();
+    }
+
+    @Override
+    public DivirgancePooledConnection getPooledConnection() throws SQLException
+    {
+        Properties connect = properties;
+        
+        if(loginTimeout > 0 && properties.getProperty("connectTimeout") == null)
+        {
+            connect = new Properties();
+            
+            connect.putAll(properties);
+            connect.setProperty("connectTimeout", String.valueOf(loginTimeout * 1000));
+        }
+        
+        return new DivirgancePooledConnection((DivirganceConnection)driver.connect(url, connect));
+    }
+
+    @Override
+    public DivirgancePooledConnection getPooledConnection(String user, String password) throws SQLException
+    {
+        return getPooledConnection();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException
+    {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException
+    {
+        this.logWriter = out;
+    }
+
+    /**
+     * Sets the connect timeout, including the handshake, of new connections.
+     * A connectTimeout given in the URL or the properties takes precedence. 
+     * Zero leaves the driver default in place.
+     * 
+     * @param seconds timeout in seconds
+     * @throws SQLException if the timeout is negative
+     */
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException
+    {
+        if(seconds < 0) throw new SQLException("Login timeout must not be negative");
+        
+        this.loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException
+    {
+        return loginTimeout;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException
+    {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException
+    {
+        if(iface.isInstance(this)) return iface.cast(this);
+        
+        throw new SQLException(getClass().getName() + " is not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException
+    {
+        return iface.isInstance(this);
+    }
+
+    @Override
+    public void close()
+    {
+        lock.lock();
+        
+        try
+        {
+            if(pool != null) pool.close();
+            
+            pool = null;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+}
@@ -21,13 +21,13 @@ SOFTWARE.
  */
 package com.invirgance.divirgance.jdbc;
 
-import com.invirgance.divirgance.io.BinaryInput;
+import com.invirgance.divirgance.io.CloseableIterator;
 import com.invirgance.divirgance.io.IdentityTransformer;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.Socket;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  *
@@ -43,11 +43,11 @@ public class DivirganceDatabaseMetadata implements DatabaseMetaData
     static final int RESPONSE_ERROR = 0xFF;
     static final int RESPONSE_BSON = 0x01;
     
-    private Socket socket;
+    private DivirganceConnection connection;
 
-    public DivirganceDatabaseMetadata(Socket socket)
+    public DivirganceDatabaseMetadata(DivirganceConnection connection)
     {
-        this.socket = socket;
+        this.connection = connection;
     }
     
     @Override
@@ -773,51 +773,205 @@ public class DivirganceDatabaseMetadata implements DatabaseMetaData
     @Override
     public ResultSet getTables(String catalog, String schemaPattern, String tableNamePattern, String[] types) throws SQLException
     {
-        InputStream in;
-        DataOutputStream out;
-        Iterable<DivirganceRecord> iterable;
-        
         // TODO: Allow filtering of tables
         
-        try
+        DivirganceResponse response;
+        
+        if(catalog != null && connection.getMetadataCacheTimeout() > 0)
+        {
+            return new DivirganceResultSet(copy(getCachedTables(catalog).get(0)));
+        }
+        
+        response = connection.execute(getTablesCommand(catalog));
+        
+        return new DivirganceResultSet(getTables(catalog, response), response);
+    }
+    
+    /**
+     * Lists the tables of several catalogs at once. The requests are pipelined
+     * to the server so that the full list costs roughly one round trip rather
+     * than one per catalog. The results are returned in the order of the 
+     * catalogs given, in the same format as getTables().
+     * 
+     * @param catalogs the catalogs to list the tables of
+     * @return the tables of all the catalogs
+     * @throws SQLException if the server returns an error
+     */
+    public ResultSet getCatalogTables(String... catalogs) throws SQLException
+    {
+        final DivirganceCommand[] commands = new DivirganceCommand[catalogs.length];
+        final DivirganceResponse[] responses;
+        final ArrayList<DivirganceRecord> records;
+        
+        if(connection.getMetadataCacheTimeout() > 0)
         {
-            in = socket.getInputStream();
-            out = new DataOutputStream(socket.getOutputStream());
-            iterable = new BinaryInput(in);
+            records = new ArrayList<>();
             
-            out.write(COMMAND_LIST);
-            out.write(SUB_COMMAND_TABLES);
-            out.writeUTF(catalog);
+            for(List<DivirganceRecord> tables : getCachedTables(catalogs)) records.addAll(tables);
             
-            if(in.read() != RESPONSE_BSON) throw new SQLException("Unknown error while requesting tables list");
-                        
-            iterable = new IdentityTransformer() {
-                @Override
-                public DivirganceRecord transform(DivirganceRecord record) throws SQLException
+            return new DivirganceResultSet(copy(records));
+        }
+        
+        for(int i=0; i<catalogs.length; i++) commands[i] = getTablesCommand(catalogs[i]);
+        
+        responses = connection.execute(commands);
+        
+        return new DivirganceResultSet(new CloseableIterator<DivirganceRecord>() {
+            
+            private Iterator<DivirganceRecord> iterator;
+            private int index;
+            
+            @Override
+            public boolean hasNext()
+            {
+                while(iterator == null || !iterator.hasNext())
                 {
-                    DivirganceRecord result = new DivirganceRecord(true);
+                    if(index >= responses.length) return false;
                     
-                    result.put("TABLE_CAT", catalog);
-                    result.put("TABLE_SCHEM", null);
-                    result.put("TABLE_NAME", record.get("name"));
-                    result.put("TABLE_TYPE", "TABLE");
-                    result.put("REMARKS", null);
-                    result.put("TYPE_CAT", null);
-                    result.put("TYPE_SCHEM", null);
-                    result.put("TYPE_NAME", null);
-                    result.put("SELF_REFERENCING_COL_NAME", null);
-                    result.put("REF_GENERATION", null);
-                    
-                    return result;
+                    try
+                    {
+                        iterator = getTables(catalogs[index], responses[index]);
+                        index++;
+                    }
+                    catch(SQLException e) { throw new IllegalStateException(e); }
                 }
-            }.transform(iterable);
+                
+                return true;
+            }
+
+            @Override
+            public DivirganceRecord next()
+            {
+                if(!hasNext()) return null;
+                
+                return iterator.next();
+            }
+
+            @Override
+            public void close() throws Exception
+            {
+                for(DivirganceResponse response : responses) response.close();
+            }
+        }, responses);
+    }
+    
+    /**
+     * Reads the table listings of the catalogs from the metadata cache. The
+     * listings missing from the cache are requested together in a single 
+     * pipeline and cached.
+     */
+    private List<List<DivirganceRecord>> getCachedTables(String... catalogs) throws SQLException
+    {
+        DivirganceMetadataCache cache = DivirganceMetadataCache.getInstance();
+        ArrayList<List<DivirganceRecord>> tables = new ArrayList<>(catalogs.length);
+        ArrayList<Integer> missing = new ArrayList<>();
+        DivirganceCommand[] commands;
+        DivirganceResponse[] responses;
+        int index;
+        
+        for(int i=0; i<catalogs.length; i++)
+        {
+            tables.add(cache.get(connection.getServer(), catalogs[i]));
             
-            return new DivirganceResultSet(iterable.iterator());
+            if(tables.get(i) == null) missing.add(i);
         }
-        catch(IOException e)
+        
+        if(missing.isEmpty()) return tables;
+        
+        commands = new DivirganceCommand[missing.size()];
+        
+        for(int i=0; i<commands.length; i++) commands[i] = getTablesCommand(catalogs[missing.get(i)]);
+        
+        responses = connection.execute(commands);
+        
+        try
+        {
+            for(int i=0; i<responses.length; i++)
+            {
+                index = missing.get(i);
+                tables.set(index, load(getTables(catalogs[index], responses[i])));
+                
+                cache.put(connection.getServer(), catalogs[index], tables.get(index), connection.getMetadataCacheTimeout());
+            }
+        }
+        finally
+        {
+            for(DivirganceResponse response : responses) response.close();
+        }
+        
+        return tables;
+    }
+    
+    /**
+     * Cached records are shared by every connection in the JVM, so each caller
+     * is handed its own copies as it reads.
+     */
+    private static Iterator<DivirganceRecord> copy(List<DivirganceRecord> records)
+    {
+        final Iterator<DivirganceRecord> iterator = records.iterator();
+        
+        return new Iterator<DivirganceRecord>() {
+            @Override
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public DivirganceRecord next()
+            {
+                return new DivirganceRecord(iterator.next());
+            }
+        };
+    }
+    
+    private List<DivirganceRecord> load(Iterator<DivirganceRecord> iterator)
+    {
+        ArrayList<DivirganceRecord> records = new ArrayList<>();
+        
+        while(iterator.hasNext()) records.add(iterator.next());
+        
+        return Collections.unmodifiableList(records);
+    }
+    
+    DivirganceCommand getTablesCommand(String catalog) throws SQLException
+    {
+        return new DivirganceCommand(COMMAND_LIST).write(SUB_COMMAND_TABLES).writeUTF(catalog);
+    }
+    
+    Iterator<DivirganceRecord> getTables(String catalog, DivirganceResponse response) throws SQLException
+    {
+        if(response.getStatus() != RESPONSE_BSON)
         {
-            throw new SQLException(e);
+            response.close();
+            
+            if(response.getError() != null) throw new SQLException(response.getError());
+            
+            throw new SQLException("Unknown error while requesting tables list");
         }
+
+        return new IdentityTransformer() {
+            @Override
+            public DivirganceRecord transform(DivirganceRecord record) throws SQLException
+            {
+                // Reuse the decoded record rather than allocating another per row
+                Object name = record.get("name");
+                
+                record.clear();
+                record.put("TABLE_CAT", catalog);
+                record.put("TABLE_SCHEM", null);
+                record.put("TABLE_NAME", name);
+                record.put("TABLE_TYPE", "TABLE");
+                record.put("REMARKS", null);
+                record.put("TYPE_CAT", null);
+                record.put("TYPE_SCHEM", null);
+                record.put("TYPE_NAME", null);
+                record.put("SELF_REFERENCING_COL_NAME", null);
+                record.put("REF_GENERATION", null);
+
+                return record;
+            }
+        }.transform(response.iterator());
     }
 
     @Override
@@ -829,39 +983,66 @@ public class DivirganceDatabaseMetadata implements DatabaseMetaData
     @Override
     public ResultSet getCatalogs() throws SQLException
     {
-        InputStream in;
-        DataOutputStream out;
-        Iterable<DivirganceRecord> iterable;
+        DivirganceMetadataCache cache = DivirganceMetadataCache.getInstance();
+        List<DivirganceRecord> records;
+        DivirganceResponse response;
         
-        try
+        if(connection.getMetadataCacheTimeout() > 0)
         {
-            in = socket.getInputStream();
-            out = new DataOutputStream(socket.getOutputStream());
-            iterable = new BinaryInput(in);
-            
-            out.write(COMMAND_LIST);
-            out.write(SUB_COMMAND_DATABASES);
-            
-            if(in.read() != RESPONSE_BSON) throw new SQLException("Unknown error while requesting catalog list");
+            records = cache.get(connection.getServer(), null);
             
-            iterable = new IdentityTransformer() {
-                @Override
-                public DivirganceRecord transform(DivirganceRecord record) throws SQLException
+            if(records == null)
+            {
+                response = connection.execute(getCatalogsCommand());
+                
+                try
                 {
-                    DivirganceRecord result = new DivirganceRecord(true);
-                    
-                    result.put("TABLE_CAT", record.get("name"));
-                    
-                    return result;
+                    records = load(getCatalogs(response));
                 }
-            }.transform(iterable);
+                finally
+                {
+                    response.close();
+                }
+                
+                cache.put(connection.getServer(), null, records, connection.getMetadataCacheTimeout());
+            }
             
-            return new DivirganceResultSet(iterable.iterator());
+            return new DivirganceResultSet(copy(records));
         }
-        catch(IOException | SQLException e)
+        
+        response = connection.execute(getCatalogsCommand());
+        
+        return new DivirganceResultSet(getCatalogs(response), response);
+    }
+    
+    DivirganceCommand getCatalogsCommand()
+    {
+        return new DivirganceCommand(COMMAND_LIST).write(SUB_COMMAND_DATABASES);
+    }
+    
+    Iterator<DivirganceRecord> getCatalogs(DivirganceResponse response) throws SQLException
+    {
+        if(response.getStatus() != RESPONSE_BSON)
         {
-            throw new SQLException(e);
+            response.close();
+            
+            if(response.getError() != null) throw new SQLException(response.getError());
+            
+            throw new SQLException("Unknown error while requesting catalog list");
         }
+
+        return new IdentityTransformer() {
+            @Override
+            public DivirganceRecord transform(DivirganceRecord record) throws SQLException
+            {
+                Object name = record.get("name");
+                
+                record.clear();
+                record.put("TABLE_CAT", name);
+
+                return record;
+            }
+        }.transform(response.iterator());
     }
 
     @Override
@@ -1017,7 +1198,7 @@ public class DivirganceDatabaseMetadata implements DatabaseMetaData
     @Override
     public Connection getConnection() throws SQLException
     {
-        throw new UnsupportedOperationException("Not supported yet."); // Generated from nbfs://nbhost/SystemFileSystem/Templates/Classes/Code/GeneratedMethodBody
+        return connection;
     }
 
     @Override
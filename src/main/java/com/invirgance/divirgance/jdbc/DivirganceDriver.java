@@ -21,12 +21,16 @@ SOFTWARE.
  */
 package com.invirgance.divirgance.jdbc;
 
-import java.net.MalformedURLException;
+import com.invirgance.divirgance.net.ChannelTransport;
+import com.invirgance.divirgance.net.MemoryTransport;
+import com.invirgance.divirgance.net.Transport;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
+import java.net.UnixDomainSocketAddress;
 import java.sql.*;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
@@ -35,6 +39,9 @@ import java.util.logging.Logger;
  */
 public class DivirganceDriver implements Driver
 {
+    // Shared so that load balancing state carries across connections
+    private static final ConcurrentHashMap<String,DivirganceHostList> hostLists = new ConcurrentHashMap<>();
+    
     static 
     {
         try
@@ -50,20 +57,107 @@ public class DivirganceDriver implements Driver
     @Override
     public Connection connect(String url, Properties info) throws SQLException
     {
-        String host;
-        int port = 2999;
+        String authority;
+        DivirganceHostList hosts;
         URI uri;
         
         if(!url.startsWith("jdbc:divirgance:")) throw new SQLException("URL does not appear to be a Divirgence URL. Should start with jdbc:divirgance:, but instead was " + url);
+        if(url.startsWith("jdbc:divirgance:unix:") || url.startsWith("jdbc:divirgance:mem:")) return connectLocal(url, info);
+        
+        // Multi-host authorities (h1:2999,h2:2999) are not valid URI authorities,
+        // so the authority is split off and the remainder parsed on its own
+        authority = getAuthority(url);
         
-        try { uri = new URI(url); }
+        try { uri = new URI("divirgance://localhost" + url.substring("jdbc:divirgance://".length() + authority.length())); }
         catch(URISyntaxException e) { throw new SQLException(e); }
         
-        host = uri.getHost();
+        if(authority.isEmpty()) authority = "localhost";
+        
+        hosts = hostLists.get(authority);
+        
+        if(hosts == null)
+        {
+            hosts = new DivirganceHostList(authority, 2999);
+            
+            if(hostLists.putIfAbsent(authority, hosts) != null) hosts = hostLists.get(authority);
+        }
+        
+        return hosts.connect(getProperties(uri, info));
+    }
+    
+    /**
+     * Connects to a co-located server, either over a Unix domain socket or to
+     * an endpoint in the same JVM. URLs are in the form 
+     * jdbc:divirgance:unix:/path/to.sock[?options] or 
+     * jdbc:divirgance:mem:name[?options].
+     */
+    private Connection connectLocal(String url, Properties info) throws SQLException
+    {
+        boolean unix = url.startsWith("jdbc:divirgance:unix:");
+        int start = url.indexOf(':', "jdbc:divirgance:".length()) + 1;
+        int end = url.indexOf('?', start);
+        String path = url.substring(start, end < 0 ? url.length() : end);
+        Transport transport;
+        URI uri;
+        
+        if(path.isEmpty()) throw new SQLException("URL should be in the form jdbc:divirgance:unix:/path/to.sock[?options] or jdbc:divirgance:mem:name[?options], but instead was " + url);
+        
+        try { uri = new URI("divirgance://localhost/" + (end < 0 ? "" : url.substring(end))); }
+        catch(URISyntaxException e) { throw new SQLException(e); }
+        
+        try
+        {
+            if(unix) transport = new ChannelTransport(UnixDomainSocketAddress.of(path));
+            else transport = new MemoryTransport(path);
+        }
+        catch(IOException e)
+        {
+            throw new SQLException("Unable to connect to " + path, e);
+        }
+        
+        return new DivirganceConnection(transport, (unix ? "" : "mem:") + path, getProperties(uri, info));
+    }
+    
+    private String getAuthority(String url) throws SQLException
+    {
+        int start = "jdbc:divirgance:".length();
+        int end;
+        
+        if(!url.startsWith("//", start)) throw new SQLException("URL should be in the form jdbc:divirgance://host[:port][,host[:port]...][/?options], jdbc:divirgance:unix:/path/to.sock[?options] or jdbc:divirgance:mem:name[?options], but instead was " + url);
+        
+        start += 2;
+        end = start;
         
-        if(uri.getPort() > 0) port = uri.getPort();
+        while(end < url.length() && url.charAt(end) != '/' && url.charAt(end) != '?') end++;
+        
+        return url.substring(start, end);
+    }
+    
+    /**
+     * Combines the connection properties with any options passed in the query
+     * string of the URL (e.g. jdbc:divirgance://localhost/?multiplex=true). 
+     * URL options take precedence.
+     */
+    private Properties getProperties(URI uri, Properties info)
+    {
+        Properties properties = new Properties();
+        String query = uri.getQuery();
+        int index;
+        
+        if(info != null) properties.putAll(info);
+        if(query == null) return properties;
+        
+        for(String option : query.split("&"))
+        {
+            if(option.isEmpty()) continue;
+            
+            index = option.indexOf('=');
+            
+            if(index < 0) properties.setProperty(option, "true");
+            else properties.setProperty(option.substring(0, index), option.substring(index+1));
+        }
         
-        return new DivirganceConnection(host, port);
+        return properties;
     }
 
     @Override
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The servers named in a multi-host URL such as 
+ * <code>jdbc:divirgance://h1:2999,h2:2999,h3/</code>. New connections are 
+ * spread across the hosts according to the loadBalance connection property:
+ * <ul>
+ *   <li><b>roundRobin</b> (default) - each connection goes to the next host</li>
+ *   <li><b>leastLatency</b> - connections go to the host with the fastest recent handshake</li>
+ *   <li><b>failover</b> - connections go to the first available host in the list</li>
+ * </ul>
+ * A host that can't be reached or times out during the handshake is skipped
+ * for a backoff period and the next host is tried immediately. Any other 
+ * failure, such as an unknown transport or a refused multiplex request, is a
+ * configuration error and is thrown without trying the other hosts.
+ * 
+ * @author jbanes
+ */
+public class DivirganceHostList
+{
+    private static final long INITIAL_BACKOFF = 1000;
+    private static final long MAXIMUM_BACKOFF = 60 * 1000;
+    
+    private final List<Host> hosts = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    
+    private int next;
+
+    public DivirganceHostList(String authority, int defaultPort) throws SQLException
+    {
+        String host;
+        int port;
+        int index;
+        
+        for(String entry : authority.split(","))
+        {
+            entry = entry.trim();
+            
+            if(entry.isEmpty()) continue;
+            
+            index = entry.lastIndexOf(':');
+            
+            // Allow for bracketed IPv6 addresses
+            if(index > entry.lastIndexOf(']'))
+            {
+                host = entry.substring(0, index);
+                
+                try { port = Integer.parseInt(entry.substring(index+1)); }
+                catch(NumberFormatException e) { throw new SQLException("Invalid port in host " + entry); }
+            }
+            else
+            {
+                host = entry;
+                port = defaultPort;
+            }
+            
+            if(host.startsWith("[") && host.endsWith("]")) host = host.substring(1, host.length()-1);
+            
+            hosts.add(new Host(host, port));
+        }
+        
+        if(hosts.isEmpty()) hosts.add(new Host("localhost", defaultPort));
+    }
+    
+    public int size()
+    {
+        return hosts.size();
+    }
+    
+    private List<Host> order(String strategy)
+    {
+        ArrayList<Host> available = new ArrayList<>();
+        ArrayList<Host> down = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        int start;
+        
+        lock.lock();
+        
+        try
+        {
+            start = (strategy.equals("roundRobin")) ? next : 0;
+            next = (next + 1) % hosts.size();
+            
+            for(int i=0; i<hosts.size(); i++)
+            {
+                Host host = hosts.get((start + i) % hosts.size());
+                
+                if(host.retryAfter > now) down.add(host);
+                else available.add(host);
+            }
+            
+            // Hosts without a measurement sort first so that they get measured
+            if(strategy.equals("leastLatency")) available.sort((a, b) -> Long.compare(a.latency, b.latency));
+            
+            // Hosts in backoff are a last resort
+            available.addAll(down);
+            
+            return available;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    public DivirganceConnection connect(Properties properties) throws SQLException
+    {
+        String strategy = properties.getProperty("loadBalance", "roundRobin");
+        SQLException failure = null;
+        DivirganceConnection connection;
+        long start;
+        
+        if(!strategy.equals("roundRobin") && !strategy.equals("leastLatency") && !strategy.equals("failover"))
+        {
+            throw new SQLException("Unknown loadBalance strategy " + strategy + ". Supported strategies are roundRobin, leastLatency and failover.");
+        }
+        
+        for(Host host : order(strategy))
+        {
+            start = System.nanoTime();
+            
+            try
+            {
+                connection = new DivirganceConnection(host.host, host.port, properties);
+                
+                succeeded(host, System.nanoTime() - start);
+                
+                return connection;
+            }
+            catch(SQLException e)
+            {
+                if(!isUnreachable(e))
+                {
+                    if(failure != null) e.addSuppressed(failure);
+                    
+                    throw e;
+                }
+                
+                failed(host);
+                
+                if(failure == null) failure = new SQLException("Unable to connect to any Divirgance server in " + hosts, e);
+                else failure.addSuppressed(e);
+            }
+        }
+        
+        throw failure;
+    }
+    
+    /**
+     * Connect and read failures surface as an SQLException caused by an
+     * IOException and handshake timeouts as an SQLTimeoutException. Everything
+     * else is reported by the connection without an I/O cause.
+     */
+    private static boolean isUnreachable(SQLException e)
+    {
+        return (e instanceof SQLTimeoutException || e.getCause() instanceof IOException);
+    }
+    
+    private void succeeded(Host host, long latency)
+    {
+        lock.lock();
+        
+        try
+        {
+            // Exponentially weighted moving average of the handshake time
+            host.latency = (host.latency == 0) ? latency : (host.latency * 4 + latency) / 5;
+            host.backoff = 0;
+            host.retryAfter = 0;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    private void failed(Host host)
+    {
+        lock.lock();
+        
+        try
+        {
+            host.backoff = (host.backoff == 0) ? INITIAL_BACKOFF : Math.min(host.backoff * 2, MAXIMUM_BACKOFF);
+            host.retryAfter = System.currentTimeMillis() + host.backoff;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return hosts.toString();
+    }
+    
+    private static class Host
+    {
+        private final String host;
+        private final int port;
+        
+        private long latency;
+        private long backoff;
+        private long retryAfter;
+
+        public Host(String host, int port)
+        {
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public String toString()
+        {
+            return host + ":" + port;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Metadata listings shared by every connection in the JVM. Entries are keyed
+ * by server and catalog, and expire after the metadataCacheTimeout of the
+ * connection that loaded them. The least recently used entries are dropped
+ * once the maximum number of entries is reached.
+ * 
+ * @author jbanes
+ */
+public class DivirganceMetadataCache
+{
+    private static final DivirganceMetadataCache instance = new DivirganceMetadataCache();
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String,Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    
+    private int maxEntries = 1000;
+    
+    private long hits;
+    private long misses;
+
+    public static DivirganceMetadataCache getInstance()
+    {
+        return instance;
+    }
+    
+    private static String getKey(String server, String catalog)
+    {
+        if(catalog == null) return server;
+        
+        return server + '\u0000' + catalog;
+    }
+    
+    public int getMaxEntries()
+    {
+        lock.lock();
+        
+        try { return maxEntries; }
+        finally { lock.unlock(); }
+    }
+
+    public void setMaxEntries(int maxEntries)
+    {
+        lock.lock();
+        
+        try
+        {
+            this.maxEntries = maxEntries;
+            
+            trim();
+        }
+        finally { lock.unlock(); }
+    }
+    
+    private void trim()
+    {
+        Iterator<Entry> iterator = entries.values().iterator();
+        
+        while(entries.size() > maxEntries)
+        {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+    
+    /**
+     * @param server server the listing was read from
+     * @param catalog catalog of a table listing, or null for the catalog listing
+     * @return the cached records, or null if missing or expired
+     */
+    List<DivirganceRecord> get(String server, String catalog)
+    {
+        String key = getKey(server, catalog);
+        Entry entry;
+        
+        lock.lock();
+        
+        try
+        {
+            entry = entries.get(key);
+            
+            if(entry != null && entry.expires - System.nanoTime() <= 0)
+            {
+                entries.remove(key);
+                
+                entry = null;
+            }
+            
+            if(entry == null)
+            {
+                misses++;
+                return null;
+            }
+            
+            hits++;
+            
+            return entry.records;
+        }
+        finally { lock.unlock(); }
+    }
+    
+    void put(String server, String catalog, List<DivirganceRecord> records, long timeout)
+    {
+        lock.lock();
+        
+        try
+        {
+            entries.put(getKey(server, catalog), new Entry(records, System.nanoTime() + timeout * 1000000));
+            
+            trim();
+        }
+        finally { lock.unlock(); }
+    }
+    
+    /**
+     * Drops every cached listing.
+     */
+    public void invalidate()
+    {
+        lock.lock();
+        
+        try { entries.clear(); }
+        finally { lock.unlock(); }
+    }
+    
+    /**
+     * Drops the catalog listing and every table listing of a server.
+     * 
+     * @param server server as reported by DivirganceConnection.getServer()
+     */
+    public void invalidate(String server)
+    {
+        String prefix = server + '\u0000';
+        
+        lock.lock();
+        
+        try
+        {
+            entries.keySet().removeIf(key -> key.equals(server) || key.startsWith(prefix));
+        }
+        finally { lock.unlock(); }
+    }
+    
+    /**
+     * Drops the table listing of a single catalog.
+     * 
+     * @param server server as reported by DivirganceConnection.getServer()
+     * @param catalog catalog to drop the table listing of
+     */
+    public void invalidate(String server, String catalog)
+    {
+        lock.lock();
+        
+        try { entries.remove(getKey(server, catalog)); }
+        finally { lock.unlock(); }
+    }
+    
+    public int getCount()
+    {
+        lock.lock();
+        
+        try { return entries.size(); }
+        finally { lock.unlock(); }
+    }
+    
+    public long getHitCount()
+    {
+        lock.lock();
+        
+        try { return hits; }
+        finally { lock.unlock(); }
+    }
+    
+    public long getMissCount()
+    {
+        lock.lock();
+        
+        try { return misses; }
+        finally { lock.unlock(); }
+    }
+    
+    private static class Entry
+    {
+        private final List<DivirganceRecord> records;
+        private final long expires;
+
+        public Entry(List<DivirganceRecord> records, long expires)
+        {
+            this.records = records;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import com.invirgance.divirgance.net.TransportOutputStream;
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shares a single connection between many concurrent requests. Every command
+ * is sent with a 16 bit request id and every response comes back as a series
+ * of frames tagged with that id. A background reader demultiplexes the frames
+ * into a FrameInputStream per request.
+ * <p>
+ * Frames in both directions are encoded as a request id (unsigned short) and 
+ * a length (int) followed by the payload. A response frame with a length of 
+ * zero marks the end of the response. A command frame sent with the id of a
+ * request that is still in flight is a control command for that request, 
+ * either COMMAND_CANCEL or COMMAND_FETCH.
+ * <p>
+ * A request followed by a COMMAND_FETCH is streamed in chunks. The server only
+ * sends as many records as the client has asked for, and pauses until the
+ * client asks for more.
+ * <p>
+ * Writes to the socket are serialized by a write lock that is separate from
+ * the lock guarding the request table. The reader never waits behind a writer
+ * blocked on a full send buffer, so it keeps draining responses while the
+ * server is itself blocked sending them.
+ * 
+ * @author jbanes
+ */
+public class DivirganceMultiplexer implements AutoCloseable
+{
+    // Placeholder for released requests. Keeps the id reserved until the end
+    // frame arrives so that late frames are not routed to a new request.
+    private static final FrameInputStream DISCARD = new FrameInputStream();
+    
+    // Servers send frames of around 16KB. Anything this large is taken to be
+    // a corrupt stream rather than allocated.
+    static final int MAXIMUM_FRAME = 64 * 1024 * 1024;
+    
+    private final DataInput in;
+    private final TransportOutputStream out;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final HashMap<Integer,FrameInputStream> streams = new HashMap<>();
+    private final Thread reader;
+    
+    private int next;
+    private volatile boolean closed;
+
+    public DivirganceMultiplexer(DataInput in, TransportOutputStream out)
+    {
+        this.in = in;
+        this.out = out;
+        this.reader = Thread.ofVirtual().name("Divirgance Demultiplexer").start(this::run);
+    }
+    
+    public int open(FrameInputStream stream) throws IOException
+    {
+        int id;
+        
+        lock.lock();
+        
+        try
+        {
+            if(closed) throw new IOException("Connection has been closed");
+            if(streams.size() > 0xFFFF) throw new IOException("Maximum number of concurrent requests (" + 0xFFFF + ") has been exceeded");
+            
+            do
+            {
+                id = next;
+                next = (next + 1) & 0xFFFF;
+            }
+            while(streams.containsKey(id));
+            
+            streams.put(id, stream);
+            
+            return id;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    public void send(int id, byte[] command) throws IOException
+    {
+        send(new int[]{ id }, new byte[][]{ command });
+    }
+    
+    /**
+     * Writes several commands back-to-back with a single flush so that they
+     * reach the server together.
+     * 
+     * @param ids request ids of the commands
+     * @param commands encoded commands
+     * @throws IOException if the connection fails
+     */
+    public void send(int[] ids, byte[][] commands) throws IOException
+    {
+        writeLock.lock();
+        
+        try
+        {
+            for(int i=0; i<ids.length; i++)
+            {
+                out.writeShort(ids[i]);
+                out.writeInt(commands[i].length);
+                out.write(commands[i]);
+            }
+            
+            out.flush();
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Stops routing frames to the stream registered for the request. Any 
+     * remaining frames for the request are discarded on arrival and the stream
+     * is ended so that a blocked reader is released.
+     * 
+     * @param id request id
+     */
+    public void release(int id)
+    {
+        FrameInputStream stream;
+        
+        lock.lock();
+        
+        try
+        {
+            stream = streams.get(id);
+            
+            if(stream == null || stream == DISCARD) return;
+            
+            streams.put(id, DISCARD);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        stream.finish();
+    }
+    
+    /**
+     * Asks the server to stop sending the response to a request. Frames
+     * already in flight are discarded on arrival without being decoded.
+     * 
+     * @param id request id
+     * @throws IOException if the connection fails
+     */
+    public void cancel(int id) throws IOException
+    {
+        FrameInputStream stream;
+        
+        lock.lock();
+        
+        try
+        {
+            stream = streams.get(id);
+            
+            if(stream == null || stream == DISCARD) return;
+            
+            streams.put(id, DISCARD);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        stream.finish();
+        
+        writeLock.lock();
+        
+        try
+        {
+            out.writeShort(id);
+            out.writeInt(1);
+            out.write(DivirganceConnection.COMMAND_CANCEL);
+            out.flush();
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+    
+    private FrameInputStream lookup(int id, boolean remove)
+    {
+        lock.lock();
+        
+        try
+        {
+            return remove ? streams.remove(id) : streams.get(id);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    private void run()
+    {
+        FrameInputStream stream;
+        byte[] data;
+        int id;
+        int length;
+        
+        try
+        {
+            while(!closed)
+            {
+                id = in.readUnsignedShort();
+                length = in.readInt();
+                
+                if(length < 0 || length > MAXIMUM_FRAME) throw new IOException("Invalid frame length " + length + " for request " + id);
+                
+                if(length == 0)
+                {
+                    stream = lookup(id, true);
+                    
+                    if(stream != null && stream != DISCARD) stream.finish();
+                    
+                    continue;
+                }
+                
+                stream = lookup(id, false);
+                
+                // Frames of released and cancelled requests are dropped unread
+                if(stream == null || stream == DISCARD)
+                {
+                    skip(length);
+                    continue;
+                }
+                
+                data = new byte[length];
+                
+                in.readFully(data);
+                stream.offer(data);
+            }
+        }
+        catch(IOException e)
+        {
+            fail(e);
+        }
+        catch(RuntimeException | Error e)
+        {
+            // Waiting readers would otherwise never be released
+            fail(new IOException("Demultiplexer failed", e));
+            
+            throw e;
+        }
+    }
+    
+    private void skip(int length) throws IOException
+    {
+        int count;
+        
+        while(length > 0)
+        {
+            count = in.skipBytes(length);
+            
+            // skipBytes may stop short without reaching the end of the stream
+            if(count < 1)
+            {
+                in.readByte();
+                count = 1;
+            }
+            
+            length -= count;
+        }
+    }
+    
+    private void fail(IOException e)
+    {
+        ArrayList<FrameInputStream> failed;
+        
+        lock.lock();
+        
+        try
+        {
+            failed = new ArrayList<>(streams.values());
+            closed = true;
+            
+            streams.clear();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        for(FrameInputStream stream : failed)
+        {
+            if(stream != DISCARD) stream.fail(e);
+        }
+    }
+    
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    @Override
+    public void close()
+    {
+        fail(new IOException("Connection has been closed"));
+        
+        reader.interrupt();
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.PooledConnection;
+import javax.sql.StatementEventListener;
+
+/**
+ * Wraps a physical DivirganceConnection so that it can be handed out repeatedly
+ * without redoing the socket connect and handshake. Each call to getConnection()
+ * produces a logical handle whose close() returns the physical connection to 
+ * the listeners (i.e. the pool) rather than closing the socket.
+ * <p>
+ * The statements, result sets and metadata obtained through a handle are 
+ * wrapped as well, so that getConnection() and getStatement() lead back to the
+ * handle rather than the physical connection. Nothing obtained through a handle
+ * unwraps to the physical connection. Closing the handle closes its open 
+ * statements and result sets before the connection is returned. A failure 
+ * caused by an I/O error closes the handle and reports the physical connection
+ * as broken, even if its transport is still open.
+ * 
+ * @author jbanes
+ */
+public class DivirgancePooledConnection implements PooledConnection
+{
+    private final DivirganceConnection connection;
+    private final List<ConnectionEventListener> listeners = new CopyOnWriteArrayList<>();
+    
+    private volatile LogicalHandler handle;
+    private volatile long lastUsed;
+
+    public DivirgancePooledConnection(DivirganceConnection connection)
+    {
+        this.connection = connection;
+        this.lastUsed = System.nanoTime();
+    }
+
+    public DivirganceConnection getPhysicalConnection()
+    {
+        return connection;
+    }
+
+    long getLastUsed()
+    {
+        return lastUsed;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException
+    {
+        LogicalHandler current = handle;
+        
+        if(connection.isClosed()) throw new SQLException("Pooled connection has been closed");
+        
+        // Only one logical handle may be active at a time
+        if(current != null) current.invalidate();
+        
+        handle = new LogicalHandler();
+        
+        return handle.proxy;
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        LogicalHandler current = handle;
+        
+        if(current != null) current.invalidate();
+        
+        connection.close();
+    }
+
+    @Override
+    public void addConnectionEventListener(ConnectionEventListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeConnectionEventListener(ConnectionEventListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void addStatementEventListener(StatementEventListener listener)
+    {
+        // Statements are not pooled
+    }
+
+    @Override
+    public void removeStatementEventListener(StatementEventListener listener)
+    {
+        // Statements are not pooled
+    }
+    
+    private void fireClosed()
+    {
+        ConnectionEvent event = new ConnectionEvent(this);
+        
+        this.lastUsed = System.nanoTime();
+        
+        for(ConnectionEventListener listener : listeners) listener.connectionClosed(event);
+    }
+    
+    private void fireError(SQLException exception)
+    {
+        ConnectionEvent event = new ConnectionEvent(this, exception);
+        
+        for(ConnectionEventListener listener : listeners) listener.connectionErrorOccurred(event);
+    }
+    
+    /**
+     * A connection that failed on I/O may be out of step with the server even
+     * though its transport is still open.
+     */
+    private boolean isBroken(Throwable exception) throws SQLException
+    {
+        if(connection.isClosed()) return true;
+        
+        while(exception != null)
+        {
+            if(exception instanceof IOException) return true;
+            
+            exception = exception.getCause();
+        }
+        
+        return false;
+    }
+    
+    private static boolean isUnwrap(Method method)
+    {
+        return method.getName().equals("unwrap") || method.getName().equals("isWrapperFor");
+    }
+    
+    /**
+     * Answers unwrap() and isWrapperFor() with the proxy alone so that the
+     * physical objects never leave the handle.
+     */
+    private static Object unwrap(Object proxy, Method method, Object[] args) throws SQLException
+    {
+        Class<?> type = (Class<?>)args[0];
+        
+        if(method.getName().equals("isWrapperFor")) return type.isInstance(proxy);
+        if(type.isInstance(proxy)) return proxy;
+        
+        throw new SQLException("Pooled connection is not a wrapper for " + type.getName());
+    }
+    
+    private class LogicalHandler implements InvocationHandler
+    {
+        // Physical statements and metadata result sets mapped to their proxies
+        private final Map<Object,Object> open = new ConcurrentHashMap<>();
+        private final Connection proxy;
+        
+        private volatile boolean closed;
+
+        LogicalHandler()
+        {
+            this.proxy = (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{ Connection.class }, this);
+        }
+        
+        /**
+         * Closes the handle without returning the connection to the pool.
+         * 
+         * @return false if the handle was already closed
+         */
+        private boolean invalidate()
+        {
+            ArrayList<Object> objects;
+            
+            if(closed) return false;
+            
+            closed = true;
+            objects = new ArrayList<>(open.keySet());
+            
+            open.clear();
+            
+            for(Object object : objects)
+            {
+                try
+                {
+                    ((AutoCloseable)object).close();
+                }
+                catch(Exception e)
+                {
+                    // Nothing to do. The handle is going away.
+                }
+            }
+            
+            return true;
+        }
+        
+        private Object wrap(Object result, Statement statement)
+        {
+            Class<?> type;
+            
+            if(result instanceof PreparedStatement) type = PreparedStatement.class;
+            else if(result instanceof Statement) type = Statement.class;
+            else if(result instanceof ResultSet) type = ResultSet.class;
+            else if(result instanceof DatabaseMetaData) type = DatabaseMetaData.class;
+            else return result;
+            
+            // Result sets of statements are closed by their statement
+            if(result instanceof ResultSet && statement != null)
+            {
+                return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{ type }, new ChildHandler(result, statement));
+            }
+            
+            if(result instanceof DatabaseMetaData)
+            {
+                return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{ type }, new ChildHandler(result, null));
+            }
+            
+            return open.computeIfAbsent(result, target -> Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{ type }, new ChildHandler(target, null)));
+        }
+        
+        private Object call(Object target, Method method, Object[] args, Statement statement) throws Throwable
+        {
+            if(closed) throw new SQLException("Connection has been returned to the pool");
+            
+            try
+            {
+                return wrap(method.invoke(target, args), statement);
+            }
+            catch(InvocationTargetException e)
+            {
+                if(e.getCause() instanceof SQLException && isBroken(e.getCause()) && invalidate())
+                {
+                    handle = null;
+                    
+                    fireError((SQLException)e.getCause());
+                }
+                
+                throw e.getCause();
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            if(isUnwrap(method)) return unwrap(proxy, method, args);
+            
+            switch(method.getName())
+            {
+                case "close":
+                    if(!invalidate()) return null;
+                    
+                    handle = null;
+                    
+                    fireClosed();
+                    return null;
+                    
+                case "isClosed":
+                    return closed || connection.isClosed();
+                    
+                case "equals":
+                    return (proxy == args[0]);
+                    
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                    
+                case "toString":
+                    return "Pooled " + connection.toString();
+            }
+            
+            return call(connection, method, args, null);
+        }
+        
+        private class ChildHandler implements InvocationHandler
+        {
+            private final Object target;
+            private final Statement statement;
+
+            ChildHandler(Object target, Statement statement)
+            {
+                this.target = target;
+                this.statement = statement;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                if(isUnwrap(method)) return unwrap(proxy, method, args);
+                
+                switch(method.getName())
+                {
+                    case "close":
+                        open.remove(target);
+                        
+                        if(!closed) break;
+                        
+                        // Already closed along with the handle
+                        return null;
+                        
+                    case "isClosed":
+                        if(closed) return true;
+                        
+                        break;
+                        
+                    case "getConnection":
+                        if(closed) throw new SQLException("Connection has been returned to the pool");
+                        
+                        return LogicalHandler.this.proxy;
+                        
+                    case "getStatement":
+                        return statement;
+                        
+                    case "equals":
+                        return (proxy == args[0]);
+
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+
+                    case "toString":
+                        return "Pooled " + target.toString();
+                }
+                
+                // Result sets of a statement lead back to its proxy
+                return call(target, method, args, (target instanceof Statement) ? (Statement)proxy : statement);
+            }
+        }
+    }
+}
@@ -0,0 +1,644 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Statement parsed once by the server and executed by handle. Parameters are
+ * sent as a BSON record keyed by the parameter index.
+ * 
+ * @author jbanes
+ */
+public class DivirgancePreparedStatement extends DivirganceStatement implements PreparedStatement
+{
+    private final DivirganceConnection connection;
+    private final String sql;
+    private final int handle;
+    
+    private final ArrayList<DivirganceRecord> batch = new ArrayList<>();
+    
+    private DivirganceRecord parameters = new DivirganceRecord(true);
+
+    DivirgancePreparedStatement(DivirganceConnection connection, String sql) throws SQLException
+    {
+        super(connection, true);
+        
+        this.connection = connection;
+        this.sql = sql;
+        this.handle = connection.prepare(sql);
+    }
+
+    public String getSQL()
+    {
+        return sql;
+    }
+    
+    /**
+     * @return the server handle identifying the parsed statement
+     */
+    public int getHandle()
+    {
+        return handle;
+    }
+    
+    private void set(int parameterIndex, Object value) throws SQLException
+    {
+        checkOpen();
+        
+        if(parameterIndex < 1) throw new SQLException("Parameter index " + parameterIndex + " is out of range");
+        
+        parameters.put(String.valueOf(parameterIndex), value);
+    }
+    
+    /**
+     * Converts values the protocol has no type for into ones it does.
+     */
+    private static Object toValue(Object value) throws SQLException
+    {
+        if(value instanceof BigDecimal) return toNumber((BigDecimal)value);
+        if(value instanceof Character) return value.toString();
+        if(value instanceof byte[]) throw new SQLFeatureNotSupportedException("Binary values are not supported");
+        
+        return value;
+    }
+    
+    /**
+     * The protocol has no decimal type, so decimals are sent as a long or a
+     * double. Values that neither can hold exactly are rejected rather than
+     * silently rounded.
+     */
+    private static Object toNumber(BigDecimal value) throws SQLException
+    {
+        double number;
+        
+        if(value.signum() == 0 || value.stripTrailingZeros().scale() <= 0)
+        {
+            try
+            {
+                return value.longValueExact();
+            }
+            catch(ArithmeticException e)
+            {
+                // Too large for a long, so try a double
+            }
+        }
+        
+        number = value.doubleValue();
+        
+        if(Double.isInfinite(number) || BigDecimal.valueOf(number).compareTo(value) != 0)
+        {
+            throw new SQLException("Decimal " + value + " can not be sent without loss of precision");
+        }
+        
+        return number;
+    }
+    
+    private static String read(Reader reader, long length) throws SQLException
+    {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[4096];
+        int count;
+        
+        try
+        {
+            while(length != 0)
+            {
+                count = reader.read(buffer, 0, (length < 0) ? buffer.length : (int)Math.min(buffer.length, length));
+                
+                if(count < 0) break;
+                if(length > 0) length -= count;
+                
+                builder.append(buffer, 0, count);
+            }
+        }
+        catch(IOException e)
+        {
+            throw new SQLException(e);
+        }
+        
+        return builder.toString();
+    }
+    
+    /**
+     * Character data is read fully and sent as a string. Long strings are 
+     * encoded as a TYPE_CLOB.
+     */
+    private void setText(int parameterIndex, Reader reader, long length) throws SQLException
+    {
+        set(parameterIndex, (reader == null) ? null : read(reader, length));
+    }
+    
+    private void setAscii(int parameterIndex, InputStream stream, long length) throws SQLException
+    {
+        setText(parameterIndex, (stream == null) ? null : new InputStreamReader(stream, StandardCharsets.US_ASCII), length);
+    }
+    
+    private void setClob(int parameterIndex, Clob clob, String type) throws SQLException
+    {
+        if(clob != null && clob.length() > Integer.MAX_VALUE) throw new SQLException(type + " of " + clob.length() + " characters is too large");
+        
+        set(parameterIndex, (clob == null) ? null : clob.getSubString(1, (int)clob.length()));
+    }
+
+    @Override
+    public boolean execute() throws SQLException
+    {
+        DivirganceCommand command;
+        byte[] key = null;
+        
+        try
+        {
+            command = new DivirganceCommand(COMMAND_EXECUTE).writeInt(handle).writeRecords(List.of(parameters));
+            
+            // Handles differ between connections, so the cache is keyed by the SQL
+            if(connection.getResultCacheTimeout() > 0)
+            {
+                key = new DivirganceCommand(COMMAND_QUERY).writeUTF(sql).writeRecords(List.of(parameters)).toByteArray();
+            }
+        }
+        catch(IllegalStateException e)
+        {
+            throw new SQLException("Unable to encode parameters", e.getCause());
+        }
+        
+        return execute(command, key);
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException
+    {
+        if(!execute()) throw new SQLException("Statement did not return a result set");
+        
+        return getResultSet();
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException
+    {
+        return (int)executeLargeUpdate();
+    }
+
+    @Override
+    public long executeLargeUpdate() throws SQLException
+    {
+        if(execute())
+        {
+            getMoreResults();
+            
+            throw new SQLException("Statement returned a result set");
+        }
+        
+        return getLargeUpdateCount();
+    }
+
+    @Override
+    public void clearParameters() throws SQLException
+    {
+        parameters = new DivirganceRecord(true);
+    }
+
+    /**
+     * Closes the statement and releases its handle. Handles held by the
+     * connection's statement cache remain open on the server.
+     * 
+     * @throws SQLException if the server fails to release the handle
+     */
+    @Override
+    public void close() throws SQLException
+    {
+        if(isClosed()) return;
+        
+        super.close();
+        
+        if(connection.isClosed()) return;
+        
+        connection.release(handle);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException
+    {
+        set(parameterIndex, null);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException
+    {
+        set(parameterIndex, null);
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException
+    {
+        set(parameterIndex, x);
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException
+    {
+        set(parameterIndex, x);
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException
+    {
+        set(parameterIndex, x);
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException
+    {
+        set(parameterIndex, x);
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException
+    {
+        set(parameterIndex, x);
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException
+    {
+        set(parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException
+    {
+        set(parameterIndex, x);
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException
+    {
+        set(parameterIndex, x);
+    }
+
+    @Override
+    public void setNString(int parameterIndex, String value) throws SQLException
+    {
+        set(parameterIndex, value);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException
+    {
+        set(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException
+    {
+        set(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException
+    {
+        set(parameterIndex, toValue(x));
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException
+    {
+        set(parameterIndex, toValue(x));
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException
+    {
+        set(parameterIndex, (x == null) ? null : toNumber(x));
+    }
+
+    @Override
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Binary values are not supported");
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException
+    {
+        set(parameterIndex, x);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException
+    {
+        setAscii(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Deprecated Unicode streams are not supported. Use setCharacterStream instead.");
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Binary values are not supported");
+    }
+
+    @Override
+    public void addBatch() throws SQLException
+    {
+        checkOpen();
+        
+        // Parameters keep their values for the next row until cleared
+        batch.add(new DivirganceRecord(parameters));
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException
+    {
+        throw new SQLException("addBatch(String) can not be called on a PreparedStatement");
+    }
+
+    @Override
+    public void clearBatch() throws SQLException
+    {
+        batch.clear();
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException
+    {
+        long[] counts = executeLargeBatch();
+        int[] results = new int[counts.length];
+        
+        for(int i=0; i<counts.length; i++) results[i] = (int)counts[i];
+        
+        return results;
+    }
+
+    /**
+     * Sends every row added with {@link #addBatch()} as a single EXECUTE
+     * command. The rows share one BSON stream, so column keys and repeated
+     * string values are only transmitted the first time they are seen. The
+     * server reports a single total for the batch, so each row is reported
+     * as {@link Statement#SUCCESS_NO_INFO}. The total remains available from
+     * {@link #getLargeUpdateCount()}.
+     * 
+     * @return SUCCESS_NO_INFO for each row in the batch
+     * @throws BatchUpdateException if the batch fails or produces a result set
+     */
+    @Override
+    public long[] executeLargeBatch() throws SQLException
+    {
+        long[] counts = new long[batch.size()];
+        DivirganceCommand command;
+        
+        checkOpen();
+        
+        if(batch.isEmpty()) return counts;
+        
+        try
+        {
+            command = new DivirganceCommand(COMMAND_EXECUTE).writeInt(handle).writeRecords(batch);
+            
+            if(execute(command))
+            {
+                getMoreResults();
+                
+                throw new BatchUpdateException("Batch statement returned a result set", new int[0]);
+            }
+        }
+        catch(IllegalStateException e)
+        {
+            throw new BatchUpdateException("Unable to encode parameters", new int[0], e.getCause());
+        }
+        catch(BatchUpdateException e)
+        {
+            throw e;
+        }
+        catch(SQLException e)
+        {
+            throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), new int[0], e);
+        }
+        finally
+        {
+            batch.clear();
+        }
+        
+        Arrays.fill(counts, SUCCESS_NO_INFO);
+        
+        return counts;
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException
+    {
+        setText(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setRef(int parameterIndex, Ref x) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("REF values are not supported");
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, Blob x) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Binary values are not supported");
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Clob x) throws SQLException
+    {
+        setClob(parameterIndex, x, "CLOB");
+    }
+
+    @Override
+    public void setArray(int parameterIndex, Array x) throws SQLException
+    {
+        // Elements are encoded as a BSON array
+        set(parameterIndex, (x == null) ? null : toValue(x.getArray()));
+    }
+
+    /**
+     * Columns are only known once the server returns records, so this always
+     * returns null as permitted by JDBC. Use the metadata of the result set.
+     * 
+     * @return null
+     * @throws SQLException if the statement has been closed
+     */
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException
+    {
+        checkOpen();
+        
+        return null;
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException
+    {
+        set(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException
+    {
+        set(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException
+    {
+        set(parameterIndex, x);
+    }
+
+    @Override
+    public void setURL(int parameterIndex, URL x) throws SQLException
+    {
+        set(parameterIndex, (x == null) ? null : x.toString());
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Parameter metadata is not supported");
+    }
+
+    @Override
+    public void setRowId(int parameterIndex, RowId x) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("ROWID values are not supported");
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException
+    {
+        setText(parameterIndex, value, length);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, NClob value) throws SQLException
+    {
+        setClob(parameterIndex, value, "NCLOB");
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader, long length) throws SQLException
+    {
+        setText(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Binary values are not supported");
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException
+    {
+        setText(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("SQLXML values are not supported");
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException
+    {
+        set(parameterIndex, toValue(x));
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException
+    {
+        setAscii(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Binary values are not supported");
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException
+    {
+        setText(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException
+    {
+        setAscii(parameterIndex, x, -1);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Binary values are not supported");
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException
+    {
+        setText(parameterIndex, reader, -1);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException
+    {
+        setText(parameterIndex, value, -1);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader) throws SQLException
+    {
+        setText(parameterIndex, reader, -1);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Binary values are not supported");
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader) throws SQLException
+    {
+        setText(parameterIndex, reader, -1);
+    }
+}
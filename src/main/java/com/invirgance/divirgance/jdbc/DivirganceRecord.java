@@ -21,6 +21,7 @@ SOFTWARE.
  */
 package com.invirgance.divirgance.jdbc;
 
+import com.invirgance.divirgance.io.LazyFields;
 import java.sql.SQLException;
 import java.util.*;
 
@@ -34,6 +35,8 @@ public class DivirganceRecord implements Map<String, Object>
     
     private boolean ordered = false;
     private OrderedKeys<String> orderedKeys;
+    private Set<String> keys;
+    private LazyFields lazy;
 
     public DivirganceRecord()
     {
@@ -48,6 +51,33 @@ public class DivirganceRecord implements Map<String, Object>
         if(ordered) this.orderedKeys = new OrderedKeys<>();
     }
     
+    /**
+     * Creates an ordered record whose values are decoded on first access. The
+     * record is fully decoded as soon as it is modified or its values are 
+     * viewed as a collection. Reading a value writes the decoded value back, so
+     * a lazy record must not be shared between threads without locking.
+     * 
+     * @param fields the undecoded fields of the record
+     */
+    public DivirganceRecord(LazyFields fields)
+    {
+        this.map = new HashMap<>();
+        this.ordered = true;
+        this.orderedKeys = new OrderedKeys<>(Arrays.asList(fields.getKeys()));
+        this.lazy = fields;
+    }
+    
+    private void inflate()
+    {
+        LazyFields fields = this.lazy;
+        
+        if(fields == null) return;
+        
+        this.lazy = null;
+        
+        for(int i=0; i<fields.size(); i++) this.map.put(fields.getKeys()[i], fields.get(i));
+    }
+    
     public DivirganceRecord(Map<String, Object> map)
     {
         this();
@@ -67,41 +97,56 @@ public class DivirganceRecord implements Map<String, Object>
     @Override
     public int size()
     {
+        if(lazy != null) return lazy.size();
+        
         return this.map.size();
     }
 
     @Override
     public boolean isEmpty()
     {
-        return this.map.isEmpty();
+        return (size() < 1);
     }
     
     public boolean isNull(String key)
     {
-        return (this.map.get(key) == null);
+        return (get(key) == null);
     }
 
     @Override
     public boolean containsKey(Object key)
     {
+        if(lazy != null) return (lazy.indexOf(key) >= 0);
+        
         return this.map.containsKey(key);
     }
 
     @Override
     public boolean containsValue(Object value)
     {
+        inflate();
+        
         return this.map.containsValue(value);
     }
 
     @Override
     public Object get(Object key)
     {
+        int index;
+        
+        if(lazy != null)
+        {
+            index = lazy.indexOf(key);
+            
+            return (index < 0) ? null : lazy.get(index);
+        }
+        
         return this.map.get(key);
     }
     
     public boolean getBoolean(String key) throws SQLException
     {
-        Object value = this.map.get(key);
+        Object value = get(key);
         
         if(value == null) throw new SQLException(key + " is null and therefore can't be converted to a boolean");
         if(value instanceof Boolean) return ((Boolean)value);
@@ -112,7 +157,7 @@ public class DivirganceRecord implements Map<String, Object>
     
     public boolean getBoolean(String key, boolean defaultValue) throws SQLException
     {
-        Object value = this.map.get(key);
+        Object value = get(key);
         
         if(value == null) return defaultValue;
         if(value instanceof Boolean) return ((Boolean)value);
@@ -123,7 +168,7 @@ public class DivirganceRecord implements Map<String, Object>
     
     public double getDouble(String key) throws SQLException
     {
-        Object value = this.map.get(key);
+        Object value = get(key);
         
         if(value == null) throw new SQLException(key + " is null and therefore can't be converted to a double");
         if(value instanceof Double) return ((Double)value);
@@ -134,7 +179,7 @@ public class DivirganceRecord implements Map<String, Object>
     
     public double getDouble(String key, double defaultValue) throws SQLException
     {
-        Object value = this.map.get(key);
+        Object value = get(key);
         
         if(value == null) return defaultValue;
         if(value instanceof Double) return ((Double)value);
@@ -145,7 +190,7 @@ public class DivirganceRecord implements Map<String, Object>
     
     public int getInt(String key) throws SQLException
     {
-        Object value = this.map.get(key);
+        Object value = get(key);
         
         if(value == null) throw new SQLException(key + " is null and therefore can't be converted to an int");
         if(value instanceof Integer) return ((Integer)value);
@@ -156,7 +201,7 @@ public class DivirganceRecord implements Map<String, Object>
     
     public int getInt(String key, int defaultValue) throws SQLException
     {
-        Object value = this.map.get(key);
+        Object value = get(key);
         
         if(value == null) return defaultValue;
         if(value instanceof Integer) return ((Integer)value);
@@ -167,7 +212,7 @@ public class DivirganceRecord implements Map<String, Object>
     
     public ArrayList getJSONArray(String key) throws SQLException
     {
-        Object value = this.map.get(key);
+        Object value = get(key);
         
         if(value == null) return null;
         if(value instanceof ArrayList) return ((ArrayList)value);
@@ -177,7 +222,7 @@ public class DivirganceRecord implements Map<String, Object>
     
     public ArrayList getJSONArray(String key, ArrayList defaultValue) throws SQLException
     {
-        Object value = this.map.get(key);
+        Object value = get(key);
         
         if(value == null) return defaultValue;
         if(value instanceof ArrayList) return ((ArrayList)value);
@@ -187,7 +232,7 @@ public class DivirganceRecord implements Map<String, Object>
     
     public DivirganceRecord getJSONObject(String key) throws SQLException
     {
-        Object value = this.map.get(key);
+        Object value = get(key);
         
         if(value == null) return null;
         if(value instanceof DivirganceRecord) return ((DivirganceRecord)value);
@@ -197,7 +242,7 @@ public class DivirganceRecord implements Map<String, Object>
     
     public DivirganceRecord getJSONObject(String key, DivirganceRecord defaultValue) throws SQLException
     {
-        Object value = this.map.get(key);
+        Object value = get(key);
         
         if(value == null) return defaultValue;
         if(value instanceof DivirganceRecord) return ((DivirganceRecord)value);
@@ -207,7 +252,7 @@ public class DivirganceRecord implements Map<String, Object>
     
     public String getString(String key)
     {
-        Object value = this.map.get(key);
+        Object value = get(key);
         
         if(value == null) return null;
         
@@ -216,7 +261,7 @@ public class DivirganceRecord implements Map<String, Object>
     
     public String getString(String key, String defaultValue)
     {
-        Object value = this.map.get(key);
+        Object value = get(key);
         
         if(value == null) return defaultValue;
         
@@ -226,7 +271,10 @@ public class DivirganceRecord implements Map<String, Object>
     @Override
     public Object put(String key, Object value)
     {
-        if(ordered && !orderedKeys.contains(key)) orderedKeys.add(key);
+        inflate();
+        
+        // The map holds the same keys and is far cheaper to search
+        if(ordered && !this.map.containsKey(key)) orderedKeys.add(key);
         
         return this.map.put(key, value);
     }
@@ -234,6 +282,8 @@ public class DivirganceRecord implements Map<String, Object>
     @Override
     public Object remove(Object key)
     {
+        inflate();
+        
         if(ordered) orderedKeys.remove((String)key);
         
         return this.map.remove(key);
@@ -242,11 +292,13 @@ public class DivirganceRecord implements Map<String, Object>
     @Override
     public void putAll(Map<? extends String, ? extends Object> map)
     {
+        inflate();
+        
         if(ordered)
         {
             for(String key : map.keySet())
             {
-                if(!orderedKeys.contains(key)) orderedKeys.add(key);
+                if(!this.map.containsKey(key)) orderedKeys.add(key);
             }
         }
         
@@ -256,15 +308,25 @@ public class DivirganceRecord implements Map<String, Object>
     @Override
     public void clear()
     {
+        inflate();
+        
         if(ordered) orderedKeys.clear();
         
         this.map.clear();
     }
 
+    /**
+     * Keys of an ordered record are returned as a read-only view, as removing
+     * them through the view would leave the values behind. Use remove() 
+     * instead.
+     * 
+     * @return the keys of the record
+     */
     @Override
     public Set<String> keySet()
     {
-        if(ordered) return orderedKeys;
+        if(ordered && keys == null) keys = Collections.unmodifiableSet(orderedKeys);
+        if(ordered) return keys;
         
         return this.map.keySet();
     }
@@ -272,12 +334,16 @@ public class DivirganceRecord implements Map<String, Object>
     @Override
     public Collection<Object> values()
     {
+        inflate();
+        
         return this.map.values();
     }
 
     @Override
     public Set<Entry<String, Object>> entrySet()
     {
+        inflate();
+        
         return this.map.entrySet();
     }
     
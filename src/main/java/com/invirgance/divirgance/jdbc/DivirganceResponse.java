@@ -0,0 +1,429 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import com.invirgance.divirgance.io.BinaryInput;
+import com.invirgance.divirgance.io.CloseableIterator;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import static com.invirgance.divirgance.jdbc.DivirganceDatabaseMetadata.RESPONSE_BSON;
+import static com.invirgance.divirgance.jdbc.DivirganceDatabaseMetadata.RESPONSE_ERROR;
+import static com.invirgance.divirgance.jdbc.DivirganceStatement.RESPONSE_COUNT;
+import static com.invirgance.divirgance.jdbc.DivirganceStatement.RESPONSE_HANDLE;
+
+/**
+ * The response to a single DivirganceCommand. On a multiplexed connection the
+ * response reads from its own stream of frames. Otherwise responses share the 
+ * connection's stream in the order the commands were sent, and a response that
+ * is still being read is buffered into memory when a later response needs the
+ * stream.
+ * 
+ * @author jbanes
+ */
+public class DivirganceResponse implements Iterable<DivirganceRecord>, AutoCloseable
+{
+    private final DivirganceConnection connection;
+    private final InputStream in;
+    private final int id;
+    
+    private int status = -1;
+    private String error;
+    private long result;
+    private CloseableIterator<DivirganceRecord> records;
+    private ArrayDeque<DivirganceRecord> buffered;
+    private CaptureInputStream capture;
+    private Consumer<byte[]> captured;
+    private int captureLimit;
+    
+    private boolean complete;
+    private boolean closed;
+    
+    private int fetchSize;
+    private long granted;
+    private long consumed;
+
+    DivirganceResponse(DivirganceConnection connection, InputStream in, int id, int fetchSize)
+    {
+        this.connection = connection;
+        this.in = in;
+        this.id = id;
+        this.fetchSize = fetchSize;
+        this.granted = fetchSize;
+    }
+
+    DivirganceConnection getConnection()
+    {
+        return connection;
+    }
+
+    int getId()
+    {
+        return id;
+    }
+    
+    boolean isComplete()
+    {
+        return complete;
+    }
+    
+    public int getFetchSize()
+    {
+        return fetchSize;
+    }
+    
+    /**
+     * Changes the number of records requested from the server at a time. Only
+     * has an effect on responses that were started in chunked mode.
+     * 
+     * @param fetchSize number of records to request at a time
+     */
+    public void setFetchSize(int fetchSize)
+    {
+        if(granted > 0 && fetchSize > 0) this.fetchSize = fetchSize;
+    }
+    
+    public int getStatus() throws SQLException
+    {
+        if(status >= 0) return status;
+        
+        try
+        {
+            connection.begin(this);
+            
+            if(status < 0) readStatus();
+        }
+        catch(IOException e)
+        {
+            throw new SQLException(e);
+        }
+        finally
+        {
+            connection.end(this);
+        }
+        
+        return status;
+    }
+    
+    /**
+     * Message sent by the server with a RESPONSE_ERROR.
+     * 
+     * @return the error message or null if the server did not report an error
+     * @throws SQLException if the response can't be read
+     */
+    public String getError() throws SQLException
+    {
+        getStatus();
+        
+        return error;
+    }
+    
+    /**
+     * Number of rows affected, as sent by the server with a RESPONSE_COUNT.
+     * 
+     * @return the update count
+     * @throws SQLException if the response can't be read
+     */
+    public long getUpdateCount() throws SQLException
+    {
+        getStatus();
+        
+        return result;
+    }
+    
+    /**
+     * Server handle of a prepared statement, as sent with a RESPONSE_HANDLE.
+     * 
+     * @return the statement handle
+     * @throws SQLException if the response can't be read
+     */
+    public int getHandle() throws SQLException
+    {
+        getStatus();
+        
+        return (int)result;
+    }
+    
+    /**
+     * Keeps a copy of the raw BSON stream if this response returns records.
+     * The copy is handed to the consumer once the last record has been read.
+     * Nothing is handed over if the stream exceeds the limit or the response 
+     * is closed before it is complete. Must be called before the response
+     * is read.
+     * 
+     * @param limit maximum number of bytes to copy
+     * @param consumer receives the complete BSON stream
+     */
+    void capture(int limit, Consumer<byte[]> consumer)
+    {
+        this.captureLimit = limit;
+        this.captured = consumer;
+    }
+    
+    private void readStatus() throws IOException
+    {
+        BinaryInput input = null;
+        DataInput data;
+        
+        status = in.read();
+        
+        if(status < 0) throw new EOFException("Connection closed before a response was received");
+        
+        if(status == RESPONSE_BSON && captured != null)
+        {
+            capture = new CaptureInputStream(in, captureLimit);
+            
+            // Shared streams must not be read ahead, so keep them unbuffered
+            input = new BinaryInput((in instanceof DataInput) ? new DataInputStream(capture) : capture);
+        }
+        else if(status == RESPONSE_BSON)
+        {
+            input = new BinaryInput(in);
+        }
+        
+        if(input != null)
+        {
+            input.setLazy(connection.isLazyDecoding());
+            
+            records = input.iterator();
+            return;
+        }
+        
+        data = (in instanceof DataInput) ? (DataInput)in : new DataInputStream(in);
+        
+        switch(status)
+        {
+            case RESPONSE_ERROR:
+                error = data.readUTF();
+                break;
+                
+            case RESPONSE_COUNT:
+                result = data.readLong();
+                break;
+                
+            case RESPONSE_HANDLE:
+                result = data.readInt();
+                break;
+        }
+        
+        complete = true;
+    }
+    
+    private DivirganceRecord read() throws IOException
+    {
+        DivirganceRecord record;
+        
+        if(status < 0) readStatus();
+        if(complete) return null;
+        
+        try
+        {
+            record = records.next();
+        }
+        catch(IllegalStateException e)
+        {
+            if(e.getCause() instanceof IOException) throw (IOException)e.getCause();
+            
+            throw e;
+        }
+        
+        if(record == null)
+        {
+            complete = true;
+            
+            // A cancelled response may have been cut short by the server
+            if(capture != null && !capture.isExceeded() && !closed) captured.accept(capture.getCapture());
+        }
+        else if(granted > 0 && granted - (++consumed) <= fetchSize / 2)
+        {
+            // Ask for the next chunk before this one runs out
+            connection.fetch(this, fetchSize);
+            
+            granted += fetchSize;
+        }
+        
+        return record;
+    }
+    
+    /**
+     * Reads the remainder of this response off of the shared stream so that
+     * the next response can be read. Records of a closed response are discarded.
+     * 
+     * @throws IOException if the connection fails
+     */
+    void buffer() throws IOException
+    {
+        DivirganceRecord record;
+        
+        while((record = read()) != null)
+        {
+            if(closed) continue;
+            if(buffered == null) buffered = new ArrayDeque<>();
+            
+            buffered.add(record);
+        }
+    }
+    
+    /**
+     * Receives the full response without parking the calling thread. On a
+     * multiplexed connection the demultiplexer signals when the last frame
+     * arrives and the future is then completed on the supplied executor, so
+     * callbacks never run on (or block) the demultiplexer's reader thread.
+     * Otherwise, or if the response is chunked, the response is read into 
+     * memory on the supplied executor.
+     * 
+     * @param executor executor used to complete the future
+     * @return future completed when the response has been received
+     */
+    public CompletableFuture<DivirganceResponse> receive(Executor executor)
+    {
+        // Chunked responses only complete when the client keeps asking for more
+        if(in instanceof FrameInputStream && granted == 0)
+        {
+            // Failures are also handed to the executor rather than completed in place
+            return ((FrameInputStream)in).received().handleAsync((stream, e) -> {
+                
+                if(e != null) throw new CompletionException(new SQLException(e));
+                
+                return this;
+                
+            }, executor);
+        }
+        
+        return CompletableFuture.supplyAsync(() -> {
+            
+            try
+            {
+                connection.begin(this);
+                
+                buffer();
+            }
+            catch(IOException e)
+            {
+                throw new CompletionException(new SQLException(e));
+            }
+            finally
+            {
+                connection.end(this);
+            }
+            
+            return this;
+            
+        }, executor);
+    }
+    
+    DivirganceRecord next() throws SQLException
+    {
+        if(buffered != null && !buffered.isEmpty()) return buffered.poll();
+        if(complete || closed) return null;
+        
+        try
+        {
+            connection.begin(this);
+            
+            // Buffering may have happened while we waited for the connection
+            if(buffered != null && !buffered.isEmpty()) return buffered.poll();
+            
+            return read();
+        }
+        catch(IOException e)
+        {
+            throw new SQLException(e);
+        }
+        finally
+        {
+            connection.end(this);
+        }
+    }
+
+    @Override
+    public CloseableIterator<DivirganceRecord> iterator()
+    {
+        return new CloseableIterator<DivirganceRecord>() {
+            
+            private DivirganceRecord record;
+            
+            @Override
+            public boolean hasNext()
+            {
+                if(record != null) return true;
+                
+                try
+                {
+                    record = DivirganceResponse.this.next();
+                }
+                catch(SQLException e) { throw new IllegalStateException(e); }
+                
+                return (record != null);
+            }
+
+            @Override
+            public DivirganceRecord next()
+            {
+                DivirganceRecord record;
+                
+                hasNext();
+                
+                record = this.record;
+                this.record = null;
+                
+                return record;
+            }
+
+            @Override
+            public void close() throws Exception
+            {
+                DivirganceResponse.this.close();
+            }
+        };
+    }
+
+    /**
+     * Asks the server to stop sending this response without closing it. Safe
+     * to call from another thread while the response is being read. The 
+     * reader sees the response end early or fail.
+     */
+    void cancel()
+    {
+        connection.release(this);
+    }
+
+    @Override
+    public void close()
+    {
+        if(closed) return;
+        
+        closed = true;
+        buffered = null;
+        
+        connection.release(this);
+    }
+}
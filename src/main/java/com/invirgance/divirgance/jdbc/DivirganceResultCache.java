@@ -0,0 +1,335 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Query results shared by every connection in the JVM, stored as the raw BSON
+ * streams received from the server. Entries are keyed by server, SQL and
+ * parameters, and expire after the resultCacheTimeout of the connection that
+ * loaded them. The least recently used entries are dropped once the cached
+ * bytes exceed the maximum. Results larger than the maximum entry size are
+ * never cached.
+ * <p>
+ * Each server has a generation that is advanced whenever its results are 
+ * invalidated. A result that was still being received when its server was
+ * invalidated is dropped rather than cached, as it may predate the update.
+ * 
+ * @author jbanes
+ */
+public class DivirganceResultCache
+{
+    private static final DivirganceResultCache instance = new DivirganceResultCache();
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Key,Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<String,Long> generations = new HashMap<>();
+    
+    private long maxBytes = 64 * 1024 * 1024;
+    private int maxEntryBytes = 1024 * 1024;
+    private long bytes;
+    
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public static DivirganceResultCache getInstance()
+    {
+        return instance;
+    }
+    
+    public long getMaxBytes()
+    {
+        lock.lock();
+        
+        try { return maxBytes; }
+        finally { lock.unlock(); }
+    }
+
+    public void setMaxBytes(long maxBytes)
+    {
+        lock.lock();
+        
+        try
+        {
+            this.maxBytes = maxBytes;
+            
+            trim();
+        }
+        finally { lock.unlock(); }
+    }
+
+    public int getMaxEntryBytes()
+    {
+        lock.lock();
+        
+        try { return maxEntryBytes; }
+        finally { lock.unlock(); }
+    }
+
+    public void setMaxEntryBytes(int maxEntryBytes)
+    {
+        lock.lock();
+        
+        try { this.maxEntryBytes = maxEntryBytes; }
+        finally { lock.unlock(); }
+    }
+    
+    private void trim()
+    {
+        Iterator<Entry> iterator = entries.values().iterator();
+        
+        while(bytes > maxBytes)
+        {
+            bytes -= iterator.next().size;
+            evictions++;
+            
+            iterator.remove();
+        }
+    }
+    
+    /**
+     * @param server server the results were read from
+     * @param key encoded SQL and parameters
+     * @return the BSON stream of the results, or null if missing or expired
+     */
+    byte[] get(String server, byte[] key)
+    {
+        Key lookup = new Key(server, key);
+        Entry entry;
+        
+        lock.lock();
+        
+        try
+        {
+            entry = entries.get(lookup);
+            
+            if(entry != null && entry.expires - System.nanoTime() <= 0)
+            {
+                entries.remove(lookup);
+                
+                bytes -= entry.size;
+                entry = null;
+            }
+            
+            if(entry == null)
+            {
+                misses++;
+                return null;
+            }
+            
+            hits++;
+            
+            return entry.data;
+        }
+        finally { lock.unlock(); }
+    }
+    
+    /**
+     * Read before a query is sent and passed back to put() once its results
+     * have been received.
+     * 
+     * @param server server the results will be read from
+     * @return the current generation of the server
+     */
+    long getGeneration(String server)
+    {
+        lock.lock();
+        
+        try { return generations.computeIfAbsent(server, name -> 0L); }
+        finally { lock.unlock(); }
+    }
+    
+    /**
+     * @param server server the results were read from
+     * @param key encoded SQL and parameters
+     * @param data the BSON stream of the results
+     * @param timeout milliseconds until the entry expires
+     * @param generation generation of the server when the query was sent
+     */
+    void put(String server, byte[] key, byte[] data, long timeout, long generation)
+    {
+        Entry entry = new Entry(data, key.length + data.length, System.nanoTime() + timeout * 1000000);
+        Entry previous;
+        
+        lock.lock();
+        
+        try
+        {
+            if(entry.size > maxEntryBytes) return;
+            
+            // Invalidated while the results were being received
+            if(generations.getOrDefault(server, 0L) != generation) return;
+            
+            previous = entries.put(new Key(server, key), entry);
+            
+            if(previous != null) bytes -= previous.size;
+            
+            bytes += entry.size;
+            
+            trim();
+        }
+        finally { lock.unlock(); }
+    }
+    
+    /**
+     * Drops every cached result.
+     */
+    public void invalidate()
+    {
+        lock.lock();
+        
+        try
+        {
+            entries.clear();
+            generations.replaceAll((server, generation) -> generation + 1);
+            
+            bytes = 0;
+        }
+        finally { lock.unlock(); }
+    }
+    
+    /**
+     * Drops the cached results of a server. Called whenever a statement 
+     * executed through this driver reports an update count.
+     * 
+     * @param server server as reported by DivirganceConnection.getServer()
+     */
+    public void invalidate(String server)
+    {
+        Iterator<Map.Entry<Key,Entry>> iterator;
+        Map.Entry<Key,Entry> entry;
+        
+        lock.lock();
+        
+        try
+        {
+            generations.merge(server, 1L, Long::sum);
+            
+            iterator = entries.entrySet().iterator();
+            
+            while(iterator.hasNext())
+            {
+                entry = iterator.next();
+                
+                if(!entry.getKey().server.equals(server)) continue;
+                
+                bytes -= entry.getValue().size;
+                
+                iterator.remove();
+            }
+        }
+        finally { lock.unlock(); }
+    }
+    
+    public int getCount()
+    {
+        lock.lock();
+        
+        try { return entries.size(); }
+        finally { lock.unlock(); }
+    }
+    
+    public long getBytes()
+    {
+        lock.lock();
+        
+        try { return bytes; }
+        finally { lock.unlock(); }
+    }
+    
+    public long getHitCount()
+    {
+        lock.lock();
+        
+        try { return hits; }
+        finally { lock.unlock(); }
+    }
+    
+    public long getMissCount()
+    {
+        lock.lock();
+        
+        try { return misses; }
+        finally { lock.unlock(); }
+    }
+    
+    public long getEvictionCount()
+    {
+        lock.lock();
+        
+        try { return evictions; }
+        finally { lock.unlock(); }
+    }
+    
+    private static class Key
+    {
+        private final String server;
+        private final byte[] key;
+        private final int hash;
+
+        public Key(String server, byte[] key)
+        {
+            this.server = server;
+            this.key = key;
+            this.hash = server.hashCode() * 31 + Arrays.hashCode(key);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            Key other;
+            
+            if(!(obj instanceof Key)) return false;
+            
+            other = (Key)obj;
+            
+            return server.equals(other.server) && Arrays.equals(key, other.key);
+        }
+    }
+    
+    private static class Entry
+    {
+        private final byte[] data;
+        private final int size;
+        private final long expires;
+
+        public Entry(byte[] data, int size, long expires)
+        {
+            this.data = data;
+            this.size = size;
+            this.expires = expires;
+        }
+    }
+}
@@ -21,6 +21,8 @@ SOFTWARE.
  */
 package com.invirgance.divirgance.jdbc;
 
+import com.invirgance.divirgance.io.CloseableIterator;
+import com.invirgance.divirgance.io.PrefetchIterator;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
@@ -39,35 +41,130 @@ public class DivirganceResultSet implements ResultSet
     private Iterator<DivirganceRecord> iterator;
     private DivirganceRecord record;
     
+    private DivirganceResponse[] responses;
+    private int fetchSize;
+    private Statement statement;
+    private int maxRows;
+    private int rows;
+    private boolean closed;
+    
     public DivirganceResultSet(Iterator<DivirganceRecord> iterator)
     {
         this.iterator = iterator;
     }
+    
+    DivirganceResultSet(Iterator<DivirganceRecord> iterator, DivirganceResponse... responses)
+    {
+        this.iterator = iterator;
+        this.responses = responses;
+        
+        if(responses.length < 1) return;
+        
+        this.fetchSize = responses[0].getFetchSize();
+        
+        setPrefetch(responses[0].getConnection().getPrefetch());
+    }
+    
+    void setStatement(Statement statement)
+    {
+        this.statement = statement;
+    }
+    
+    /**
+     * Ends the result set after the given number of records. The rest of the
+     * response is cancelled rather than read.
+     * 
+     * @param maxRows maximum number of records or zero for no limit
+     */
+    void setMaxRows(int maxRows)
+    {
+        this.maxRows = maxRows;
+    }
+    
+    /**
+     * Enables reading ahead on a background virtual thread. Up to the given 
+     * number of records are read and decoded while the application processes
+     * the current record. Must be called before the first call to next().
+     * 
+     * @param records maximum number of records to read ahead, or zero to 
+     *        disable prefetching
+     */
+    public void setPrefetch(int records)
+    {
+        if(records < 1 || iterator instanceof PrefetchIterator) return;
+        if(record != null) throw new IllegalStateException("Prefetch must be enabled before reading the first record");
+        
+        this.iterator = new PrefetchIterator<>(iterator, records);
+    }
 
     @Override
     public boolean next() throws SQLException
     {
-        if(!iterator.hasNext())
+        if(closed) throw new SQLException("Result set has been closed");
+        
+        if(maxRows > 0 && rows >= maxRows)
         {
+            if(this.record != null) release();
+            
             this.record = null;
-
+            
             return false;
         }
         
-        this.record = iterator.next();
+        try
+        {
+            if(!iterator.hasNext())
+            {
+                this.record = null;
+
+                return false;
+            }
+
+            this.record = iterator.next();
+        }
+        catch(IllegalStateException e)
+        {
+            // Iterators can only report a failed read unchecked
+            if(e.getCause() instanceof SQLException) throw (SQLException)e.getCause();
+            
+            throw new SQLException((e.getCause() != null) ? e.getCause() : e);
+        }
+        
+        rows++;
         
         return true;
     }
+    
+    private void release() throws SQLException
+    {
+        // Responses cancel themselves on close rather than being drained
+        if(iterator instanceof CloseableIterator)
+        {
+            try
+            {
+                ((CloseableIterator<DivirganceRecord>)iterator).close();
+            }
+            catch(SQLException e) { throw e; }
+            catch(Exception e) { throw new SQLException(e); }
+        }
+        else
+        {
+            while(iterator.hasNext()) iterator.next();
+        }
+    }
 
     @Override
     public void close() throws SQLException
     {
-        //TODO: Need a packetized approach here
+        if(closed) return;
+        
+        closed = true;
         
-        // Drain the iterator
-        while(iterator.hasNext()) iterator.next();
+        release();
         
         this.record = null;
+        
+        if(statement instanceof DivirganceStatement) ((DivirganceStatement)statement).closed(this);
     }
 
     @Override
@@ -421,13 +518,19 @@ public class DivirganceResultSet implements ResultSet
     @Override
     public void setFetchSize(int rows) throws SQLException
     {
-        throw new UnsupportedOperationException("Not supported yet."); // Generated from nbfs://nbhost/SystemFileSystem/Templates/Classes/Code/GeneratedMethodBody
+        if(rows < 0) throw new SQLException("Fetch size must not be negative");
+        
+        this.fetchSize = rows;
+        
+        if(responses == null) return;
+        
+        for(DivirganceResponse response : responses) response.setFetchSize(rows);
     }
 
     @Override
     public int getFetchSize() throws SQLException
     {
-        throw new UnsupportedOperationException("Not supported yet."); // Generated from nbfs://nbhost/SystemFileSystem/Templates/Classes/Code/GeneratedMethodBody
+        return fetchSize;
     }
 
     @Override
@@ -733,7 +836,7 @@ public class DivirganceResultSet implements ResultSet
     @Override
     public Statement getStatement() throws SQLException
     {
-        throw new UnsupportedOperationException("Not supported yet."); // Generated from nbfs://nbhost/SystemFileSystem/Templates/Classes/Code/GeneratedMethodBody
+        return statement;
     }
 
     @Override
@@ -925,7 +1028,7 @@ public class DivirganceResultSet implements ResultSet
     @Override
     public boolean isClosed() throws SQLException
     {
-        throw new UnsupportedOperationException("Not supported yet."); // Generated from nbfs://nbhost/SystemFileSystem/Templates/Classes/Code/GeneratedMethodBody
+        return closed;
     }
 
     @Override
@@ -0,0 +1,592 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import com.invirgance.divirgance.io.BinaryInput;
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static com.invirgance.divirgance.jdbc.DivirganceDatabaseMetadata.RESPONSE_BSON;
+
+/**
+ * Executes SQL on the server. Result sets stream their records from the
+ * response as they are read rather than being loaded into memory.
+ * 
+ * @author jbanes
+ */
+public class DivirganceStatement implements Statement
+{
+    static final int COMMAND_QUERY = 0x20;
+    static final int COMMAND_PREPARE = 0x21;
+    static final int COMMAND_EXECUTE = 0x22;
+    static final int COMMAND_CLOSE_STATEMENT = 0x23;
+    
+    static final int RESPONSE_COUNT = 0x02;
+    static final int RESPONSE_HANDLE = 0x03;
+    
+    private final DivirganceConnection connection;
+    private final ArrayList<String> batch = new ArrayList<>();
+    
+    private DivirganceResultSet resultSet;
+    private volatile DivirganceResponse response;
+    private long updateCount = -1;
+    private int fetchSize;
+    private int maxRows;
+    private int maxFieldSize;
+    private int queryTimeout;
+    private boolean poolable;
+    private boolean closeOnCompletion;
+    private boolean closed;
+
+    DivirganceStatement(DivirganceConnection connection)
+    {
+        this(connection, false);
+    }
+    
+    DivirganceStatement(DivirganceConnection connection, boolean poolable)
+    {
+        this.connection = connection;
+        this.fetchSize = connection.getFetchSize();
+        this.poolable = poolable;
+    }
+    
+    void checkOpen() throws SQLException
+    {
+        if(closed) throw new SQLException("Statement has been closed");
+    }
+    
+    static SQLException getException(DivirganceResponse response) throws SQLException
+    {
+        if(response.getError() != null) return new SQLException(response.getError());
+        
+        return new SQLException("Unexpected response 0x" + Integer.toHexString(response.getStatus()).toUpperCase() + " from server");
+    }
+    
+    private void clearResults() throws SQLException
+    {
+        DivirganceResultSet results = resultSet;
+        
+        // Cleared first so that closing on completion ignores replaced results
+        resultSet = null;
+        response = null;
+        updateCount = -1;
+        
+        if(results != null) results.close();
+    }
+    
+    /**
+     * Called when one of the statement's result sets is closed.
+     */
+    void closed(DivirganceResultSet results) throws SQLException
+    {
+        if(closeOnCompletion && results == resultSet) close();
+    }
+    
+    /**
+     * Sends the command and processes the response as either a result set or
+     * an update count.
+     * 
+     * @param command encoded command to execute
+     * @return true if the command produced a result set
+     * @throws SQLException if the server reports an error
+     */
+    boolean execute(DivirganceCommand command) throws SQLException
+    {
+        return execute(command, null);
+    }
+    
+    /**
+     * Sends the command unless its results are in the result cache. Complete
+     * results are added to the cache, and an update count drops the cached
+     * results of the server.
+     * 
+     * @param command encoded command to execute
+     * @param key SQL and parameters identifying the results, or null to bypass the cache
+     * @return true if the command produced a result set
+     * @throws SQLException if the server reports an error
+     */
+    boolean execute(DivirganceCommand command, byte[] key) throws SQLException
+    {
+        DivirganceResultCache cache = DivirganceResultCache.getInstance();
+        long timeout = connection.getResultCacheTimeout();
+        DivirganceResponse response;
+        BinaryInput input;
+        long generation = 0;
+        byte[] data;
+        
+        checkOpen();
+        clearResults();
+        
+        if(key != null && timeout > 0)
+        {
+            data = cache.get(connection.getServer(), key);
+            
+            if(data != null)
+            {
+                input = new BinaryInput(ByteBuffer.wrap(data));
+                input.setLazy(connection.isLazyDecoding());
+                
+                resultSet = new DivirganceResultSet(input.iterator());
+                resultSet.setStatement(this);
+                resultSet.setMaxRows(maxRows);
+                return true;
+            }
+            
+            generation = cache.getGeneration(connection.getServer());
+        }
+        
+        response = connection.execute(fetchSize, command)[0];
+        this.response = response;
+        
+        if(key != null && timeout > 0)
+        {
+            final long started = generation;
+            
+            response.capture(cache.getMaxEntryBytes(), result -> cache.put(connection.getServer(), key, result, timeout, started));
+        }
+        
+        switch(response.getStatus())
+        {
+            case RESPONSE_BSON:
+                resultSet = new DivirganceResultSet(response.iterator(), response);
+                resultSet.setStatement(this);
+                resultSet.setMaxRows(maxRows);
+                return true;
+                
+            case RESPONSE_COUNT:
+                updateCount = response.getUpdateCount();
+                
+                // Other connections may be caching this server even if this one isn't
+                cache.invalidate(connection.getServer());
+                
+                return false;
+        }
+        
+        response.close();
+        
+        throw getException(response);
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException
+    {
+        if(!execute(sql)) throw new SQLException("Statement did not return a result set");
+        
+        return resultSet;
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException
+    {
+        return (int)executeLargeUpdate(sql);
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql) throws SQLException
+    {
+        if(execute(sql))
+        {
+            clearResults();
+            
+            throw new SQLException("Statement returned a result set");
+        }
+        
+        return updateCount;
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException
+    {
+        DivirganceCommand command = new DivirganceCommand(COMMAND_QUERY).writeUTF(sql);
+        
+        return execute(command, command.toByteArray());
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException
+    {
+        return resultSet;
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException
+    {
+        return (int)updateCount;
+    }
+
+    @Override
+    public long getLargeUpdateCount() throws SQLException
+    {
+        return updateCount;
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException
+    {
+        clearResults();
+        
+        return false;
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        if(closed) return;
+        
+        // Set first so that a result set closing on completion doesn't recurse
+        closed = true;
+        
+        batch.clear();
+        clearResults();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException
+    {
+        return closed;
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException
+    {
+        if(rows < 0) throw new SQLException("Fetch size must not be negative");
+        
+        this.fetchSize = rows;
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException
+    {
+        return fetchSize;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException
+    {
+        return connection;
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException
+    {
+        return null;
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException
+    {
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException
+    {
+        return ResultSet.CONCUR_READ_ONLY;
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException
+    {
+        return ResultSet.TYPE_FORWARD_ONLY;
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException
+    {
+        return maxFieldSize;
+    }
+
+    /**
+     * Recorded for callers that expect it. Values are never truncated.
+     * 
+     * @param max maximum number of bytes of a value or zero for no limit
+     * @throws SQLException if the limit is negative
+     */
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException
+    {
+        if(max < 0) throw new SQLException("Maximum field size must not be negative");
+        
+        this.maxFieldSize = max;
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException
+    {
+        return maxRows;
+    }
+
+    /**
+     * Limits the number of records returned by result sets created after the
+     * call. Once the limit is reached the server is asked to stop sending the
+     * rest of the response.
+     * 
+     * @param max maximum number of records or zero for no limit
+     * @throws SQLException if the limit is negative
+     */
+    @Override
+    public void setMaxRows(int max) throws SQLException
+    {
+        if(max < 0) throw new SQLException("Maximum rows must not be negative");
+        
+        this.maxRows = max;
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException
+    {
+        // SQL is sent to the server as written
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException
+    {
+        return queryTimeout;
+    }
+
+    /**
+     * Recorded for callers such as pools and ORMs. The protocol has no way to
+     * pass a timeout to the server, so it is not enforced. Use cancel() to 
+     * stop a running statement.
+     * 
+     * @param seconds timeout in seconds or zero for no limit
+     * @throws SQLException if the timeout is negative
+     */
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException
+    {
+        if(seconds < 0) throw new SQLException("Query timeout must not be negative");
+        
+        this.queryTimeout = seconds;
+    }
+
+    /**
+     * Asks the server to stop sending the current result. May be called from
+     * another thread while the result is being read, in which case the reader
+     * sees the result end early or fail.
+     * 
+     * @throws SQLException if the statement has been closed
+     */
+    @Override
+    public void cancel() throws SQLException
+    {
+        DivirganceResponse current = response;
+        
+        checkOpen();
+        
+        if(current != null) current.cancel();
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Named cursors are not supported");
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException
+    {
+        if(direction != ResultSet.FETCH_FORWARD) throw new SQLFeatureNotSupportedException("Only forward only result sets are supported");
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException
+    {
+        return ResultSet.FETCH_FORWARD;
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException
+    {
+        checkOpen();
+        
+        batch.add(sql);
+    }
+
+    @Override
+    public void clearBatch() throws SQLException
+    {
+        batch.clear();
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException
+    {
+        long[] counts = executeLargeBatch();
+        int[] results = new int[counts.length];
+        
+        for(int i=0; i<counts.length; i++) results[i] = (int)counts[i];
+        
+        return results;
+    }
+    
+    /**
+     * Executes each statement added with {@link #addBatch(String)} in turn.
+     * Unlike a PreparedStatement batch, each statement is a separate command
+     * and reports its own update count.
+     * 
+     * @return the update count of each statement
+     * @throws BatchUpdateException if a statement fails or returns a result set
+     */
+    @Override
+    public long[] executeLargeBatch() throws SQLException
+    {
+        long[] counts = new long[batch.size()];
+        
+        checkOpen();
+        
+        try
+        {
+            for(int i=0; i<counts.length; i++)
+            {
+                try
+                {
+                    counts[i] = executeLargeUpdate(batch.get(i));
+                }
+                catch(SQLException e)
+                {
+                    throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), Arrays.copyOf(counts, i), e);
+                }
+            }
+        }
+        finally
+        {
+            batch.clear();
+        }
+        
+        return counts;
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException
+    {
+        // There is never more than one result, so there is nothing to keep open for
+        if(current == KEEP_CURRENT_RESULT)
+        {
+            updateCount = -1;
+            
+            return false;
+        }
+        
+        return getMoreResults();
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Generated keys are not supported");
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException
+    {
+        if(autoGeneratedKeys != NO_GENERATED_KEYS) throw new SQLFeatureNotSupportedException("Generated keys are not supported");
+        
+        return executeUpdate(sql);
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Generated keys are not supported");
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Generated keys are not supported");
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException
+    {
+        if(autoGeneratedKeys != NO_GENERATED_KEYS) throw new SQLFeatureNotSupportedException("Generated keys are not supported");
+        
+        return execute(sql);
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Generated keys are not supported");
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Generated keys are not supported");
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException
+    {
+        // There are no transactions to close result sets on commit
+        return ResultSet.HOLD_CURSORS_OVER_COMMIT;
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException
+    {
+        checkOpen();
+        
+        this.poolable = poolable;
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException
+    {
+        checkOpen();
+        
+        return poolable;
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException
+    {
+        checkOpen();
+        
+        this.closeOnCompletion = true;
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException
+    {
+        checkOpen();
+        
+        return closeOnCompletion;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException
+    {
+        if(iface.isInstance(this)) return iface.cast(this);
+        
+        throw new SQLException("Statement is not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException
+    {
+        return iface.isInstance(this);
+    }
+}
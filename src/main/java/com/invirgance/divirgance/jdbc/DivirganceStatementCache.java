@@ -0,0 +1,261 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import static com.invirgance.divirgance.jdbc.DivirganceConnection.RESPONSE_OK;
+import static com.invirgance.divirgance.jdbc.DivirganceStatement.*;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Least recently used cache of server statement handles keyed by SQL text. A
+ * handle stays open on the server while it is cached or still in use by an
+ * open statement. Evicted handles are released once their last statement is
+ * closed. Round trips to the server are never made while holding the lock.
+ * 
+ * @author jbanes
+ */
+class DivirganceStatementCache
+{
+    private final DivirganceConnection connection;
+    private final int size;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String,Entry> statements = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<Integer,Entry> handles = new HashMap<>();
+    
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public DivirganceStatementCache(DivirganceConnection connection, int size)
+    {
+        this.connection = connection;
+        this.size = size;
+    }
+    
+    static int prepare(DivirganceConnection connection, String sql) throws SQLException
+    {
+        DivirganceResponse response = connection.execute(new DivirganceCommand(COMMAND_PREPARE).writeUTF(sql));
+        
+        try
+        {
+            if(response.getStatus() != RESPONSE_HANDLE) throw getException(response);
+            
+            return response.getHandle();
+        }
+        finally
+        {
+            response.close();
+        }
+    }
+    
+    static void close(DivirganceConnection connection, int handle) throws SQLException
+    {
+        DivirganceResponse response;
+        
+        if(connection.isClosed()) return;
+        
+        response = connection.execute(new DivirganceCommand(COMMAND_CLOSE_STATEMENT).writeInt(handle));
+        
+        try
+        {
+            if(response.getStatus() != RESPONSE_OK) throw getException(response);
+        }
+        finally
+        {
+            response.close();
+        }
+    }
+    
+    /**
+     * Returns the handle for the SQL, preparing it on the server on a miss.
+     * Every handle acquired must be given back with {@link #release(int)}.
+     * 
+     * @param sql statement to prepare
+     * @return server handle of the parsed statement
+     * @throws SQLException if the server fails to prepare the statement
+     */
+    public int acquire(String sql) throws SQLException
+    {
+        Entry entry;
+        Entry evicted = null;
+        int handle;
+        
+        lock.lock();
+        
+        try
+        {
+            entry = statements.get(sql);
+            
+            if(entry != null)
+            {
+                hits++;
+                entry.uses++;
+                
+                return entry.handle;
+            }
+            
+            misses++;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        handle = prepare(connection, sql);
+        
+        lock.lock();
+        
+        try
+        {
+            entry = statements.get(sql);
+            
+            // Another thread prepared the same statement while we were waiting
+            if(entry != null)
+            {
+                entry.uses++;
+                
+                evicted = new Entry(handle);
+                
+                return entry.handle;
+            }
+            
+            entry = new Entry(handle);
+            entry.uses++;
+            
+            statements.put(sql, entry);
+            handles.put(handle, entry);
+            
+            if(statements.size() > size) evicted = evict();
+            
+            return handle;
+        }
+        finally
+        {
+            lock.unlock();
+            
+            if(evicted != null) close(connection, evicted.handle);
+        }
+    }
+    
+    private Entry evict()
+    {
+        Iterator<Entry> iterator = statements.values().iterator();
+        Entry entry = iterator.next();
+        
+        iterator.remove();
+        evictions++;
+        
+        entry.evicted = true;
+        
+        if(entry.uses > 0) return null;
+        
+        handles.remove(entry.handle);
+        
+        return entry;
+    }
+    
+    /**
+     * Gives back a handle obtained from {@link #acquire(String)}. The handle is
+     * closed on the server if it has been evicted and is no longer in use.
+     * 
+     * @param handle server handle of the statement being closed
+     * @throws SQLException if the server fails to release the handle
+     */
+    public void release(int handle) throws SQLException
+    {
+        Entry entry;
+        
+        lock.lock();
+        
+        try
+        {
+            entry = handles.get(handle);
+            
+            if(entry != null && --entry.uses > 0) return;
+            if(entry != null && !entry.evicted) return;
+            
+            handles.remove(handle);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        close(connection, handle);
+    }
+    
+    public int getSize()
+    {
+        return size;
+    }
+    
+    public int getCount()
+    {
+        lock.lock();
+        
+        try { return statements.size(); }
+        finally { lock.unlock(); }
+    }
+    
+    public long getHitCount()
+    {
+        lock.lock();
+        
+        try { return hits; }
+        finally { lock.unlock(); }
+    }
+    
+    public long getMissCount()
+    {
+        lock.lock();
+        
+        try { return misses; }
+        finally { lock.unlock(); }
+    }
+    
+    public long getEvictionCount()
+    {
+        lock.lock();
+        
+        try { return evictions; }
+        finally { lock.unlock(); }
+    }
+    
+    private static class Entry
+    {
+        private final int handle;
+        
+        private int uses;
+        private boolean evicted;
+
+        public Entry(int handle)
+        {
+            this.handle = handle;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Receives the frames for a single request from the DivirganceMultiplexer and
+ * presents them as a continuous stream.
+ * 
+ * @author jbanes
+ */
+public class FrameInputStream extends InputStream
+{
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition ready = lock.newCondition();
+    private final ArrayDeque<byte[]> frames = new ArrayDeque<>();
+    
+    private byte[] frame;
+    private int offset;
+    
+    private boolean end;
+    private IOException error;
+    
+    private final CompletableFuture<FrameInputStream> received = new CompletableFuture<>();
+    
+    /**
+     * Completes once every frame of the response has arrived, at which point
+     * the stream can be read without blocking.
+     * 
+     * @return future completed by the demultiplexer
+     */
+    public CompletableFuture<FrameInputStream> received()
+    {
+        return received;
+    }
+    
+    void offer(byte[] data)
+    {
+        lock.lock();
+        
+        try
+        {
+            frames.add(data);
+            ready.signal();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    void finish()
+    {
+        lock.lock();
+        
+        try
+        {
+            end = true;
+            ready.signal();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        received.complete(this);
+    }
+    
+    void fail(IOException error)
+    {
+        lock.lock();
+        
+        try
+        {
+            this.error = error;
+            ready.signal();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        received.completeExceptionally(error);
+    }
+    
+    private boolean fill() throws IOException
+    {
+        if(frame != null && offset < frame.length) return true;
+        
+        lock.lock();
+        
+        try
+        {
+            while(frames.isEmpty())
+            {
+                if(end) return false;
+                if(error != null) throw new IOException(error.getMessage(), error);
+                
+                ready.awaitUninterruptibly();
+            }
+            
+            frame = frames.poll();
+            offset = 0;
+            
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if(!fill()) return -1;
+        
+        return frame[offset++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        int count;
+        
+        if(len == 0) return 0;
+        if(!fill()) return -1;
+        
+        count = Math.min(len, frame.length - offset);
+        
+        System.arraycopy(frame, offset, b, off, count);
+        
+        offset += count;
+        
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return (frame != null) ? frame.length - offset : 0;
+    }
+}
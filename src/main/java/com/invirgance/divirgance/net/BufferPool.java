@@ -0,0 +1,66 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct ByteBuffers used for channel I/O. Direct buffers are expensive
+ * to allocate and are only reclaimed by the garbage collector, so they are
+ * recycled between connections rather than allocated per connection.
+ * 
+ * @author jbanes
+ */
+public class BufferPool
+{
+    public static final int BUFFER_SIZE = 64 * 1024;
+    
+    private static final int MAX_IDLE = 64;
+    
+    private static final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger idle = new AtomicInteger();
+    
+    public static ByteBuffer acquire()
+    {
+        ByteBuffer buffer = buffers.poll();
+        
+        if(buffer == null) return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        
+        idle.decrementAndGet();
+        
+        return buffer.clear();
+    }
+    
+    public static void release(ByteBuffer buffer)
+    {
+        if(buffer == null || !buffer.isDirect() || buffer.capacity() != BUFFER_SIZE) return;
+        if(idle.incrementAndGet() > MAX_IDLE)
+        {
+            idle.decrementAndGet();
+            return;
+        }
+        
+        buffers.offer(buffer);
+    }
+}
@@ -0,0 +1,460 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.net;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reads from a channel into a pooled direct ByteBuffer. Implements DataInput
+ * directly against the buffer so that the decoder can read primitives without
+ * going through BufferedInputStream and DataInputStream.
+ * <p>
+ * Every read holds the lock while it uses the buffer. The stream may be closed
+ * from another thread during a read, and the buffer is only returned to the 
+ * pool, where another connection may pick it up, once that read is done.
+ * 
+ * @author jbanes
+ */
+public class ChannelInputStream extends InputStream implements DataInput
+{
+    private final ReadableByteChannel channel;
+    private final ReentrantLock lock = new ReentrantLock();
+    
+    private ByteBuffer buffer;
+    private volatile boolean closed;
+
+    public ChannelInputStream(ReadableByteChannel channel)
+    {
+        this.channel = channel;
+        this.buffer = BufferPool.acquire().flip();
+    }
+    
+    private ByteBuffer buffer() throws IOException
+    {
+        ByteBuffer buffer = this.buffer;
+        
+        if(buffer == null) throw new IOException("Stream closed");
+        
+        return buffer;
+    }
+    
+    /**
+     * Reads from the channel until at least the requested number of bytes are
+     * available in the buffer. Must be called while holding the lock.
+     */
+    private ByteBuffer require(int count) throws IOException
+    {
+        ByteBuffer buffer = buffer();
+        
+        if(buffer.remaining() >= count) return buffer;
+        
+        buffer.compact();
+        
+        try
+        {
+            while(buffer.position() < count)
+            {
+                if(channel.read(buffer) < 0) throw new EOFException();
+            }
+        }
+        finally
+        {
+            buffer.flip();
+        }
+        
+        return buffer;
+    }
+    
+    private boolean fill() throws IOException
+    {
+        try
+        {
+            require(1);
+            
+            return true;
+        }
+        catch(EOFException e)
+        {
+            return false;
+        }
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        lock.lock();
+        
+        try
+        {
+            if(!fill()) return -1;
+            
+            return buffer().get() & 0xFF;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        ByteBuffer buffer;
+        
+        if(len == 0) return 0;
+        
+        lock.lock();
+        
+        try
+        {
+            if(!fill()) return -1;
+            
+            buffer = buffer();
+            len = Math.min(len, buffer.remaining());
+            
+            buffer.get(b, off, len);
+            
+            return len;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        lock.lock();
+        
+        try
+        {
+            return buffer().remaining();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException
+    {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException
+    {
+        int count;
+        
+        lock.lock();
+        
+        try
+        {
+            while(len > 0)
+            {
+                count = read(b, off, len);
+                
+                if(count < 0) throw new EOFException();
+                
+                off += count;
+                len -= count;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int skipBytes(int n) throws IOException
+    {
+        ByteBuffer buffer;
+        int skipped = 0;
+        int count;
+        
+        lock.lock();
+        
+        try
+        {
+            while(skipped < n && fill())
+            {
+                buffer = buffer();
+                count = Math.min(n - skipped, buffer.remaining());
+                
+                buffer.position(buffer.position() + count);
+                
+                skipped += count;
+            }
+            
+            return skipped;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException
+    {
+        lock.lock();
+        
+        try
+        {
+            return (require(1).get() != 0);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public byte readByte() throws IOException
+    {
+        lock.lock();
+        
+        try
+        {
+            return require(1).get();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException
+    {
+        lock.lock();
+        
+        try
+        {
+            return require(1).get() & 0xFF;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public short readShort() throws IOException
+    {
+        lock.lock();
+        
+        try
+        {
+            return require(2).getShort();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException
+    {
+        lock.lock();
+        
+        try
+        {
+            return require(2).getShort() & 0xFFFF;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public char readChar() throws IOException
+    {
+        lock.lock();
+        
+        try
+        {
+            return require(2).getChar();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int readInt() throws IOException
+    {
+        lock.lock();
+        
+        try
+        {
+            return require(4).getInt();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long readLong() throws IOException
+    {
+        lock.lock();
+        
+        try
+        {
+            return require(8).getLong();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public float readFloat() throws IOException
+    {
+        lock.lock();
+        
+        try
+        {
+            return require(4).getFloat();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public double readDouble() throws IOException
+    {
+        lock.lock();
+        
+        try
+        {
+            return require(8).getDouble();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads bytes up to a line terminator as DataInputStream.readLine() does.
+     * Each byte is taken as a character, so only Latin-1 text is decoded
+     * correctly.
+     * 
+     * @return the line without its terminator, or null at the end of stream
+     * @throws IOException if the channel can't be read
+     */
+    @Override
+    public String readLine() throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        ByteBuffer buffer;
+        int c;
+        
+        lock.lock();
+        
+        try
+        {
+            while(fill())
+            {
+                buffer = buffer();
+                c = buffer.get() & 0xFF;
+                
+                if(c == '\n') return line.toString();
+                
+                if(c == '\r')
+                {
+                    // Consumes the \n of a \r\n terminator
+                    if(fill() && buffer().get(buffer().position()) == '\n') buffer().get();
+                    
+                    return line.toString();
+                }
+                
+                line.append((char)c);
+            }
+            
+            return (line.length() > 0) ? line.toString() : null;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String readUTF() throws IOException
+    {
+        lock.lock();
+        
+        try
+        {
+            return DataInputStream.readUTF(this);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if(closed) return;
+        
+        closed = true;
+        
+        channel.close();
+        
+        // Every read holds the lock while it touches the buffer, so once any
+        // read in progress has aborted the buffer can be safely recycled
+        lock.lock();
+        
+        try
+        {
+            BufferPool.release(buffer);
+            
+            buffer = null;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+}
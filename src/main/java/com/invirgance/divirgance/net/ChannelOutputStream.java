@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Buffers writes in a pooled direct ByteBuffer and writes them to the channel
+ * on flush.
+ * 
+ * @author jbanes
+ */
+public class ChannelOutputStream extends OutputStream
+{
+    private final WritableByteChannel channel;
+    
+    private ByteBuffer buffer;
+
+    public ChannelOutputStream(WritableByteChannel channel)
+    {
+        this.channel = channel;
+        this.buffer = BufferPool.acquire();
+    }
+    
+    private ByteBuffer buffer() throws IOException
+    {
+        if(buffer == null) throw new IOException("Stream closed");
+        
+        return buffer;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        if(!buffer().hasRemaining()) flush();
+        
+        buffer.put((byte)b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        int count;
+        
+        while(len > 0)
+        {
+            if(!buffer().hasRemaining()) flush();
+            
+            count = Math.min(len, buffer.remaining());
+            
+            buffer.put(b, off, count);
+            
+            off += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        ByteBuffer buffer = buffer();
+        
+        buffer.flip();
+        
+        try
+        {
+            while(buffer.hasRemaining()) channel.write(buffer);
+        }
+        finally
+        {
+            buffer.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if(buffer == null) return;
+        
+        BufferPool.release(buffer);
+        
+        buffer = null;
+        
+        channel.close();
+    }
+}
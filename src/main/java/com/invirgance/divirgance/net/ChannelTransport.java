@@ -0,0 +1,135 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Transport over a blocking SocketChannel. Reads and writes go through pooled
+ * direct ByteBuffers, avoiding the copies and stream wrappers of the classic 
+ * Socket transport. Both TCP and Unix domain socket addresses are supported.
+ * 
+ * @author jbanes
+ */
+public class ChannelTransport implements Transport
+{
+    private SocketChannel channel;
+    private ChannelInputStream in;
+    private ChannelOutputStream out;
+
+    public ChannelTransport(SocketAddress address) throws IOException
+    {
+        this(address, 0);
+    }
+    
+    /**
+     * Wraps an already connected channel, such as one returned by a server's
+     * accept().
+     * 
+     * @param channel connected channel
+     * @throws IOException if the channel options can't be set
+     */
+    public ChannelTransport(SocketChannel channel) throws IOException
+    {
+        this.channel = channel;
+        
+        if(channel.getRemoteAddress() instanceof InetSocketAddress) channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        
+        this.in = new ChannelInputStream(channel);
+        this.out = new ChannelOutputStream(channel);
+    }
+
+    /**
+     * Connects to the address, failing if the connection can't be established
+     * within the timeout.
+     * 
+     * @param address address of the server
+     * @param timeout connect timeout in milliseconds or zero for no timeout
+     * @throws IOException if the connection fails
+     */
+    public ChannelTransport(SocketAddress address, int timeout) throws IOException
+    {
+        if(address instanceof UnixDomainSocketAddress) this.channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        else this.channel = SocketChannel.open();
+        
+        try
+        {
+            if(address instanceof InetSocketAddress) channel.socket().connect(address, timeout);
+            else channel.connect(address);
+            
+            if(address instanceof InetSocketAddress) channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        catch(IOException e)
+        {
+            try
+            {
+                channel.close();
+            }
+            catch(IOException x) { e.addSuppressed(x); }
+            
+            throw e;
+        }
+        
+        this.in = new ChannelInputStream(channel);
+        this.out = new ChannelOutputStream(channel);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException
+    {
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException
+    {
+        return out;
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return !channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            in.close();
+            out.close();
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+}
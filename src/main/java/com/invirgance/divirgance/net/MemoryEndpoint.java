@@ -0,0 +1,44 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.net;
+
+import java.io.IOException;
+
+/**
+ * Server side of an in-memory connection. Endpoints are bound to a name with
+ * MemoryTransport.bind() and receive a transport for every client connecting
+ * to that name. 
+ * 
+ * @author jbanes
+ */
+public interface MemoryEndpoint
+{
+    /**
+     * Called on the connecting thread for each new connection. Implementations
+     * should hand the transport off to their own thread and return, as the 
+     * client blocks until this method returns.
+     * 
+     * @param transport server side of the connection
+     * @throws IOException if the connection is refused
+     */
+    public void accept(Transport transport) throws IOException;
+}
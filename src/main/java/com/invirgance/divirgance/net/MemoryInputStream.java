@@ -0,0 +1,112 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the chunks of a MemoryPipe. Only fetching the next chunk touches the
+ * pipe's lock; reads within a chunk are plain array access.
+ * 
+ * @author jbanes
+ */
+public class MemoryInputStream extends InputStream
+{
+    private static final byte[] EMPTY = new byte[0];
+    
+    private final MemoryPipe pipe;
+    
+    private byte[] chunk = EMPTY;
+    private int position;
+    private boolean eof;
+
+    public MemoryInputStream(MemoryPipe pipe)
+    {
+        this.pipe = pipe;
+    }
+    
+    private boolean next() throws IOException
+    {
+        byte[] next;
+        
+        while(position >= chunk.length)
+        {
+            if(eof) return false;
+            
+            next = pipe.take();
+            
+            if(next == null)
+            {
+                eof = true;
+                return false;
+            }
+            
+            chunk = next;
+            position = 0;
+        }
+        
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if(!next()) return -1;
+        
+        return chunk[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        int count;
+        
+        if(len == 0) return 0;
+        if(!next()) return -1;
+        
+        count = Math.min(len, chunk.length - position);
+        
+        System.arraycopy(chunk, position, b, off, count);
+        
+        position += count;
+        
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        if(position < chunk.length) return chunk.length - position;
+        
+        return pipe.available();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        chunk = EMPTY;
+        eof = true;
+        
+        pipe.closeReader();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Buffers writes and passes them to a MemoryPipe as a single chunk on flush.
+ * The buffered bytes are copied into the chunk, as the buffer is reused for
+ * the next writes. Flushing blocks while the pipe is full.
+ * 
+ * @author jbanes
+ */
+public class MemoryOutputStream extends OutputStream
+{
+    private static final int BUFFER_SIZE = 8 * 1024;
+    
+    private final MemoryPipe pipe;
+    
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int count;
+
+    public MemoryOutputStream(MemoryPipe pipe)
+    {
+        this.pipe = pipe;
+    }
+    
+    private byte[] buffer() throws IOException
+    {
+        if(buffer == null) throw new IOException("Stream closed");
+        
+        return buffer;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        if(count >= buffer().length) flush();
+        
+        buffer[count++] = (byte)b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        // Large writes are copied straight into a chunk rather than through the buffer
+        if(len >= buffer().length)
+        {
+            flush();
+            pipe.offer(Arrays.copyOfRange(b, off, off + len));
+            
+            return;
+        }
+        
+        if(count + len > buffer.length) flush();
+        
+        System.arraycopy(b, off, buffer, count, len);
+        
+        count += len;
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        if(count < 1) return;
+        
+        pipe.offer(Arrays.copyOf(buffer(), count));
+        
+        count = 0;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if(buffer == null) return;
+        
+        buffer = null;
+        
+        pipe.closeWriter();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.net;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One direction of an in-memory connection. The writer hands over whole 
+ * chunks of bytes on flush and the reader consumes them in place, so a chunk
+ * is not copied again once it has been queued.
+ * <p>
+ * At most <code>capacity</code> bytes are queued. A writer that gets that far
+ * ahead of the reader waits for it, just as a socket writer waits on a full
+ * send buffer, so a slow reader throttles the writer rather than the writer
+ * filling the heap.
+ * 
+ * @author jbanes
+ */
+public class MemoryPipe
+{
+    public static final int DEFAULT_CAPACITY = 256 * 1024;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+    private final int capacity;
+    
+    private int queued;
+    private boolean writerClosed;
+    private boolean readerClosed;
+
+    public MemoryPipe()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of bytes queued for the reader
+     */
+    public MemoryPipe(int capacity)
+    {
+        this.capacity = capacity;
+    }
+    
+    /**
+     * Passes a chunk to the reader, waiting while the pipe is full. A chunk
+     * larger than the capacity is accepted once the pipe is empty. The pipe 
+     * takes ownership of the array, which must not be modified afterwards.
+     * 
+     * @param chunk bytes to hand to the reader
+     * @throws IOException if either side of the pipe has been closed or the thread was interrupted
+     */
+    public void offer(byte[] chunk) throws IOException
+    {
+        lock.lock();
+        
+        try
+        {
+            while(!writerClosed && !readerClosed && queued > 0 && queued + chunk.length > capacity)
+            {
+                notFull.await();
+            }
+            
+            if(writerClosed || readerClosed) throw new IOException("Pipe closed");
+            
+            chunks.add(chunk);
+            queued += chunk.length;
+            available.signal();
+        }
+        catch(InterruptedException e)
+        {
+            throw new InterruptedIOException();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Waits for the next chunk written to the pipe.
+     * 
+     * @return the next chunk or null once the writer has closed the pipe
+     * @throws IOException if the reader has been closed or the thread was interrupted
+     */
+    public byte[] take() throws IOException
+    {
+        byte[] chunk;
+        
+        lock.lock();
+        
+        try
+        {
+            while(chunks.isEmpty())
+            {
+                if(readerClosed) throw new IOException("Pipe closed");
+                if(writerClosed) return null;
+                
+                available.await();
+            }
+            
+            chunk = chunks.poll();
+            queued -= chunk.length;
+            
+            notFull.signal();
+            
+            return chunk;
+        }
+        catch(InterruptedException e)
+        {
+            throw new InterruptedIOException();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    public int available()
+    {
+        lock.lock();
+        
+        try
+        {
+            return chunks.isEmpty() ? 0 : chunks.peek().length;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Signals end of stream to the reader once the remaining chunks are read.
+     */
+    public void closeWriter()
+    {
+        lock.lock();
+        
+        try
+        {
+            writerClosed = true;
+            available.signalAll();
+            notFull.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Discards any unread chunks and fails further reads and writes.
+     */
+    public void closeReader()
+    {
+        lock.lock();
+        
+        try
+        {
+            readerClosed = true;
+            queued = 0;
+            chunks.clear();
+            available.signalAll();
+            notFull.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.net;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transport to a server running in the same JVM. Bytes are passed through a 
+ * pair of MemoryPipes rather than the kernel, making it suitable for embedded
+ * servers and for measuring the driver without network noise.
+ * 
+ * @author jbanes
+ */
+public class MemoryTransport implements Transport
+{
+    private static final ConcurrentHashMap<String,MemoryEndpoint> endpoints = new ConcurrentHashMap<>();
+    
+    private final MemoryPipe inbound;
+    private final MemoryPipe outbound;
+    private final DataInputStream in;
+    private final MemoryOutputStream out;
+    
+    private volatile boolean closed;
+    
+    /**
+     * Makes an endpoint available to clients connecting to the given name.
+     * 
+     * @param name name used in jdbc:divirgance:mem:name URLs
+     * @param endpoint server accepting the connections
+     * @throws IllegalStateException if the name is already bound
+     */
+    public static void bind(String name, MemoryEndpoint endpoint)
+    {
+        if(endpoints.putIfAbsent(name, endpoint) != null) throw new IllegalStateException("An endpoint is already bound to " + name);
+    }
+    
+    /**
+     * Removes the endpoint bound to the name. Existing connections are not 
+     * affected.
+     * 
+     * @param name name the endpoint was bound to
+     * @param endpoint the endpoint to remove
+     */
+    public static void unbind(String name, MemoryEndpoint endpoint)
+    {
+        endpoints.remove(name, endpoint);
+    }
+    
+    private MemoryTransport(MemoryPipe inbound, MemoryPipe outbound)
+    {
+        this.inbound = inbound;
+        this.outbound = outbound;
+        this.in = new DataInputStream(new MemoryInputStream(inbound));
+        this.out = new MemoryOutputStream(outbound);
+    }
+    
+    /**
+     * Connects to the endpoint bound to the name.
+     * 
+     * @param name name the endpoint was bound to
+     * @throws IOException if no endpoint is bound or it refuses the connection
+     */
+    public MemoryTransport(String name) throws IOException
+    {
+        this(new MemoryPipe(), new MemoryPipe());
+        
+        MemoryEndpoint endpoint = endpoints.get(name);
+        
+        if(endpoint == null) throw new ConnectException("No in-memory endpoint bound to " + name);
+        
+        try
+        {
+            endpoint.accept(new MemoryTransport(outbound, inbound));
+        }
+        catch(IOException | RuntimeException e)
+        {
+            close();
+            
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException
+    {
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException
+    {
+        return out;
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+        
+        try
+        {
+            out.close();
+        }
+        finally
+        {
+            inbound.closeReader();
+        }
+    }
+}
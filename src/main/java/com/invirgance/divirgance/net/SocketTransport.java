@@ -0,0 +1,94 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.net;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Transport over a classic blocking java.net.Socket.
+ * 
+ * @author jbanes
+ */
+public class SocketTransport implements Transport
+{
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+
+    public SocketTransport(String host, int port) throws IOException
+    {
+        this(new InetSocketAddress(host, port), 0);
+    }
+
+    public SocketTransport(InetSocketAddress address, int timeout) throws IOException
+    {
+        this.socket = new Socket();
+        
+        try
+        {
+            this.socket.connect(address, timeout);
+
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 16 * 1024));
+            this.out = new TransportOutputStream(socket.getOutputStream(), 16 * 1024);
+        }
+        catch(IOException e)
+        {
+            try
+            {
+                socket.close();
+            }
+            catch(IOException x) { e.addSuppressed(x); }
+            
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException
+    {
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException
+    {
+        return out;
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return socket.isClosed();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        socket.close();
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.net;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+
+/**
+ * Buffered DataOutput over a transport's output stream. Unlike DataOutputStream
+ * and BufferedOutputStream none of the methods are synchronized. Callers that
+ * share the stream serialize their writes with a ReentrantLock, so a virtual 
+ * thread blocked on a full send buffer unmounts rather than pinning its 
+ * carrier thread.
+ * <p>
+ * Writes at least as large as the buffer bypass it and go straight to the
+ * underlying stream.
+ * 
+ * @author jbanes
+ */
+public class TransportOutputStream extends OutputStream implements DataOutput
+{
+    private static final int BUFFER_SIZE = 1024;
+    
+    private final OutputStream out;
+    private final byte[] buffer;
+    
+    private int count;
+
+    public TransportOutputStream(OutputStream out)
+    {
+        this(out, BUFFER_SIZE);
+    }
+    
+    public TransportOutputStream(OutputStream out, int size)
+    {
+        this.out = out;
+        this.buffer = new byte[size];
+    }
+    
+    private void drain() throws IOException
+    {
+        if(count < 1) return;
+        
+        out.write(buffer, 0, count);
+        
+        count = 0;
+    }
+    
+    private void require(int length) throws IOException
+    {
+        if(buffer.length - count < length) drain();
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        if(count >= buffer.length) drain();
+        
+        buffer[count++] = (byte)b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if(len >= buffer.length)
+        {
+            drain();
+            out.write(b, off, len);
+            
+            return;
+        }
+        
+        require(len);
+        System.arraycopy(b, off, buffer, count, len);
+        
+        count += len;
+    }
+
+    @Override
+    public void writeBoolean(boolean v) throws IOException
+    {
+        write(v ? 1 : 0);
+    }
+
+    @Override
+    public void writeByte(int v) throws IOException
+    {
+        write(v);
+    }
+
+    @Override
+    public void writeShort(int v) throws IOException
+    {
+        require(2);
+        
+        buffer[count++] = (byte)(v >>> 8);
+        buffer[count++] = (byte)v;
+    }
+
+    @Override
+    public void writeChar(int v) throws IOException
+    {
+        writeShort(v);
+    }
+
+    @Override
+    public void writeInt(int v) throws IOException
+    {
+        require(4);
+        
+        buffer[count++] = (byte)(v >>> 24);
+        buffer[count++] = (byte)(v >>> 16);
+        buffer[count++] = (byte)(v >>> 8);
+        buffer[count++] = (byte)v;
+    }
+
+    @Override
+    public void writeLong(long v) throws IOException
+    {
+        writeInt((int)(v >>> 32));
+        writeInt((int)v);
+    }
+
+    @Override
+    public void writeFloat(float v) throws IOException
+    {
+        writeInt(Float.floatToIntBits(v));
+    }
+
+    @Override
+    public void writeDouble(double v) throws IOException
+    {
+        writeLong(Double.doubleToLongBits(v));
+    }
+
+    @Override
+    public void writeBytes(String s) throws IOException
+    {
+        for(int i=0; i<s.length(); i++) write(s.charAt(i));
+    }
+
+    @Override
+    public void writeChars(String s) throws IOException
+    {
+        for(int i=0; i<s.length(); i++) writeChar(s.charAt(i));
+    }
+
+    /**
+     * Writes the string in the modified UTF-8 encoding read by 
+     * DataInput.readUTF().
+     * 
+     * @param s string to write
+     * @throws UTFDataFormatException if the encoding is longer than 65535 bytes
+     * @throws IOException if the write fails
+     */
+    @Override
+    public void writeUTF(String s) throws IOException
+    {
+        int length = 0;
+        char c;
+        
+        for(int i=0; i<s.length(); i++)
+        {
+            c = s.charAt(i);
+            
+            if(c >= 0x01 && c <= 0x7F) length++;
+            else if(c <= 0x7FF) length += 2;
+            else length += 3;
+        }
+        
+        if(length > 0xFFFF) throw new UTFDataFormatException("Encoded string is too long: " + length + " bytes");
+        
+        writeShort(length);
+        
+        for(int i=0; i<s.length(); i++)
+        {
+            c = s.charAt(i);
+            
+            if(c >= 0x01 && c <= 0x7F)
+            {
+                write(c);
+            }
+            else if(c <= 0x7FF)
+            {
+                write(0xC0 | (c >> 6));
+                write(0x80 | (c & 0x3F));
+            }
+            else
+            {
+                write(0xE0 | (c >> 12));
+                write(0x80 | ((c >> 6) & 0x3F));
+                write(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            drain();
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
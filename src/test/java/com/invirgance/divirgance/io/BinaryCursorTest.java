@@ -0,0 +1,238 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.io;
+
+import com.invirgance.divirgance.jdbc.DivirganceRecord;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class BinaryCursorTest
+{
+    private static List<DivirganceRecord> records(int count)
+    {
+        ArrayList<DivirganceRecord> records = new ArrayList<>();
+        DivirganceRecord record;
+        
+        for(int i=0; i<count; i++)
+        {
+            record = new DivirganceRecord(true);
+            
+            record.put("id", i);
+            record.put("big", i * 10000000000L);
+            record.put("value", i / 4.0);
+            record.put("name", "name" + (i % 10));
+            record.put("flag", (i % 2) == 0);
+            record.put("empty", null);
+            record.put("created", new Date(1700000000000L + i));
+            record.put("tags", List.of("a", "b" + i));
+            
+            // Records do not all share the same keys
+            if(i % 7 == 0) record.put("extra", "extra" + i);
+            
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    private static BinaryCursor cursor(List<DivirganceRecord> records, Set<String> projection) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryInput input;
+        
+        try(BinaryOutput output = new BinaryOutput(out))
+        {
+            output.write(records);
+        }
+        
+        input = new BinaryInput(new ByteArrayInputStream(out.toByteArray()));
+        
+        input.setProjection(projection);
+        
+        return input.cursor();
+    }
+    
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        List<DivirganceRecord> records = records(100);
+        BinaryCursor cursor = cursor(records, null);
+        ArrayList<String> keys = new ArrayList<>();
+        DivirganceRecord expected;
+        String name;
+        int count = 0;
+        
+        while(cursor.nextRecord())
+        {
+            expected = records.get(count++);
+            
+            keys.clear();
+            
+            while(cursor.nextField())
+            {
+                name = cursor.getFieldName();
+                
+                keys.add(name);
+                
+                switch(name)
+                {
+                    case "id":
+                        assertEquals(expected.get(name), cursor.readInt());
+                        break;
+                        
+                    case "big":
+                        assertEquals(expected.get(name), cursor.readLong());
+                        break;
+                        
+                    case "value":
+                        assertEquals(expected.get(name), cursor.readDouble());
+                        break;
+                        
+                    case "flag":
+                        assertEquals(expected.get(name), cursor.readBoolean());
+                        break;
+                        
+                    case "empty":
+                        assertTrue(cursor.isNull());
+                        assertNull(cursor.readString());
+                        break;
+                        
+                    case "name":
+                    case "extra":
+                        assertEquals(expected.get(name), cursor.readString());
+                        break;
+                        
+                    default:
+                        assertEquals(expected.get(name), cursor.readValue(), name);
+                }
+            }
+            
+            assertEquals(new ArrayList<>(expected.keySet()), keys);
+        }
+        
+        assertEquals(records.size(), count);
+        assertFalse(cursor.nextRecord());
+    }
+    
+    @Test
+    public void testSkip() throws Exception
+    {
+        List<DivirganceRecord> records = records(50);
+        BinaryCursor cursor = cursor(records, null);
+        int count = 0;
+        
+        // Unread fields and whole records are skipped on the way to the next one
+        while(cursor.nextRecord())
+        {
+            if(count % 3 == 0)
+            {
+                while(cursor.nextField())
+                {
+                    if(cursor.getFieldName().equals("name")) assertEquals(records.get(count).get("name"), cursor.readString());
+                }
+            }
+            else if(count % 3 == 1)
+            {
+                assertTrue(cursor.nextField());
+                assertEquals(count, cursor.readInt());
+            }
+            
+            count++;
+        }
+        
+        assertEquals(records.size(), count);
+    }
+    
+    @Test
+    public void testProjection() throws Exception
+    {
+        List<DivirganceRecord> records = records(50);
+        BinaryCursor cursor = cursor(records, Set.of("id", "extra", "tags"));
+        ArrayList<String> keys = new ArrayList<>();
+        int count = 0;
+        
+        while(cursor.nextRecord())
+        {
+            keys.clear();
+            
+            while(cursor.nextField())
+            {
+                keys.add(cursor.getFieldName());
+                
+                if(cursor.getFieldName().equals("id")) assertEquals(count, cursor.readInt());
+            }
+            
+            if(count % 7 == 0) assertEquals(List.of("id", "tags", "extra"), keys);
+            else assertEquals(List.of("id", "tags"), keys);
+            
+            count++;
+        }
+        
+        assertEquals(records.size(), count);
+    }
+    
+    @Test
+    public void testErrors() throws Exception
+    {
+        BinaryCursor cursor = cursor(records(2), null);
+        
+        // Not yet positioned on a field
+        assertThrows(SQLException.class, () -> cursor.readInt());
+        assertThrows(SQLException.class, () -> cursor.readValue());
+        assertTrue(cursor.nextRecord());
+        assertThrows(SQLException.class, () -> cursor.readString());
+        
+        assertTrue(cursor.nextField());
+        assertEquals("id", cursor.getFieldName());
+        
+        // A mismatched read leaves the value unread
+        assertThrows(SQLException.class, () -> cursor.readString());
+        assertThrows(SQLException.class, () -> cursor.readBoolean());
+        assertEquals(0, cursor.readLong());
+        
+        // Values can only be read once
+        assertThrows(SQLException.class, () -> cursor.readLong());
+        assertThrows(SQLException.class, () -> cursor.readValue());
+        
+        while(cursor.nextField())
+        {
+            if(cursor.getFieldName().equals("empty")) assertThrows(SQLException.class, () -> cursor.readInt());
+        }
+        
+        assertThrows(SQLException.class, () -> cursor.readInt());
+        assertThrows(IllegalStateException.class, () -> cursor.getFieldName());
+        assertTrue(cursor.nextRecord());
+        assertFalse(cursor.nextRecord());
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.io;
+
+import com.invirgance.divirgance.jdbc.DivirganceRecord;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class BinaryInputTest
+{
+    private static List<DivirganceRecord> records(int count)
+    {
+        ArrayList<DivirganceRecord> records = new ArrayList<>();
+        DivirganceRecord record;
+        DivirganceRecord nested;
+        
+        for(int i=0; i<count; i++)
+        {
+            record = new DivirganceRecord(true);
+            nested = new DivirganceRecord(true);
+            
+            nested.put("key", i);
+            nested.put("label", "nested" + (i % 3));
+            
+            record.put("id", i);
+            record.put("big", i * 10000000000L);
+            record.put("value", i / 3.0);
+            record.put("ratio", i / 4.0f);
+            record.put("small", (short)i);
+            record.put("tiny", (byte)i);
+            record.put("name", "name" + (i % 10));
+            record.put("flag", (i % 2) == 0);
+            record.put("empty", null);
+            record.put("created", new Date(1700000000000L + i));
+            record.put("tags", List.of("a", "b" + i));
+            record.put("nested", nested);
+            
+            // Records do not all share the same keys
+            if(i % 7 == 0) record.put("extra", "extra" + i);
+            
+            records.add(record);
+        }
+        
+        return records;
+    }
+    
+    private static byte[] encode(List<DivirganceRecord> records) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
+        try(BinaryOutput output = new BinaryOutput(out))
+        {
+            output.write(records);
+        }
+        
+        return out.toByteArray();
+    }
+    
+    private static List<DivirganceRecord> decode(BinaryInput input)
+    {
+        ArrayList<DivirganceRecord> records = new ArrayList<>();
+        
+        for(DivirganceRecord record : input) records.add(record);
+        
+        return records;
+    }
+    
+    private static BinaryInput input(byte[] data)
+    {
+        return new BinaryInput(new ByteArrayInputStream(data));
+    }
+    
+    private static void assertRecordEquals(DivirganceRecord expected, DivirganceRecord actual)
+    {
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+        
+        for(String key : expected.keySet()) assertEquals(expected.get(key), actual.get(key), key);
+    }
+    
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        List<DivirganceRecord> records = records(100);
+        List<DivirganceRecord> decoded = decode(input(encode(records)));
+        
+        assertEquals(records.size(), decoded.size());
+        
+        for(int i=0; i<records.size(); i++) assertRecordEquals(records.get(i), decoded.get(i));
+    }
+    
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testByteBuffer(boolean lazy) throws Exception
+    {
+        byte[] data = encode(records(100));
+        List<DivirganceRecord> expected = decode(input(data));
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length).put(data).flip();
+        BinaryInput input;
+        List<DivirganceRecord> decoded;
+        
+        // Buffers must decode exactly as the stream decoder does
+        for(ByteBuffer buffer : List.of(ByteBuffer.wrap(data), direct))
+        {
+            input = new BinaryInput(buffer);
+            
+            input.setLazy(lazy);
+            
+            decoded = decode(input);
+            
+            assertEquals(expected.size(), decoded.size());
+            
+            for(int i=0; i<expected.size(); i++) assertRecordEquals(expected.get(i), decoded.get(i));
+        }
+    }
+    
+    @Test
+    public void testLazy() throws Exception
+    {
+        byte[] data = encode(records(100));
+        List<DivirganceRecord> expected = decode(input(data));
+        BinaryInput input = input(data);
+        List<DivirganceRecord> records;
+        DivirganceRecord record;
+        
+        input.setLazy(true);
+        
+        records = decode(input);
+        
+        assertEquals(expected.size(), records.size());
+        
+        for(int i=0; i<records.size(); i++)
+        {
+            record = records.get(i);
+            
+            // Reads through the undecoded values before anything inflates the record
+            assertEquals(expected.get(i).size(), record.size());
+            assertEquals(expected.get(i).containsKey("extra"), record.containsKey("extra"));
+            assertEquals(i, record.getInt("id"));
+            assertEquals("name" + (i % 10), record.getString("name"));
+            assertNull(record.get("empty"));
+            
+            assertRecordEquals(expected.get(i), record);
+            assertEquals(expected.get(i), record);
+        }
+        
+        // Keys can't be removed behind the back of the undecoded values
+        record = records.get(1);
+        
+        assertThrows(UnsupportedOperationException.class, () -> records.get(1).keySet().remove("id"));
+        assertThrows(UnsupportedOperationException.class, () -> records.get(1).keySet().clear());
+        assertEquals(expected.get(1).size(), record.size());
+        assertEquals(1, record.get("id"));
+        
+        // Changes inflate the record without losing undecoded values
+        record = records.get(0);
+        record.put("id", -1);
+        record.remove("extra");
+        
+        assertEquals(-1, record.get("id"));
+        assertFalse(record.containsKey("extra"));
+        assertEquals(expected.get(0).get("nested"), record.get("nested"));
+        assertEquals(expected.get(0).size() - 1, record.size());
+    }
+    
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testProjection(boolean lazy) throws Exception
+    {
+        Set<String> projection = Set.of("id", "extra", "nested", "tags");
+        byte[] data = encode(records(100));
+        List<DivirganceRecord> expected = decode(input(data));
+        BinaryInput input = input(data);
+        List<DivirganceRecord> records;
+        DivirganceRecord projected;
+        
+        input.setLazy(lazy);
+        input.setProjection(projection);
+        
+        records = decode(input);
+        
+        assertEquals(expected.size(), records.size());
+        
+        for(int i=0; i<records.size(); i++)
+        {
+            projected = new DivirganceRecord(true);
+            
+            for(String key : expected.get(i).keySet())
+            {
+                if(projection.contains(key)) projected.put(key, expected.get(i).get(key));
+            }
+            
+            // Nested records are kept whole
+            assertRecordEquals(projected, records.get(i));
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testReuse(boolean projected) throws Exception
+    {
+        Set<String> projection = projected ? Set.of("id", "extra", "name") : null;
+        byte[] data = encode(records(100));
+        List<DivirganceRecord> expected = decode(input(data));
+        BinaryInput input = input(data);
+        DivirganceRecord first = null;
+        DivirganceRecord copy;
+        int index = 0;
+        
+        input.setReuse(true);
+        input.setProjection(projection);
+        
+        for(DivirganceRecord record : input)
+        {
+            if(first == null) first = record;
+            
+            assertSame(first, record);
+            
+            copy = new DivirganceRecord(true);
+            
+            for(String key : expected.get(index).keySet())
+            {
+                if(projection == null || projection.contains(key)) copy.put(key, expected.get(index).get(key));
+            }
+            
+            // Keys left over from a previous record with an extra column are cleared
+            assertRecordEquals(copy, record);
+            
+            index++;
+        }
+        
+        assertEquals(expected.size(), index);
+    }
+    
+    @Test
+    public void testReuseIgnoredWhenLazy() throws Exception
+    {
+        BinaryInput input = input(encode(records(2)));
+        List<DivirganceRecord> records;
+        
+        input.setReuse(true);
+        input.setLazy(true);
+        
+        records = decode(input);
+        
+        assertNotSame(records.get(0), records.get(1));
+        assertEquals(0, records.get(0).getInt("id"));
+        assertEquals(1, records.get(1).getInt("id"));
+    }
+    
+    @Test
+    public void testKeyLimit() throws Exception
+    {
+        LinkedHashMap<String,Object> record = new LinkedHashMap<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<DivirganceRecord> decoded;
+        
+        for(int i=0; i<0xFFFF; i++) record.put("key" + i, i);
+        
+        try(BinaryOutput output = new BinaryOutput(out))
+        {
+            output.write(record);
+        }
+        
+        decoded = decode(input(out.toByteArray()));
+        
+        assertEquals(1, decoded.size());
+        assertEquals(record.size(), decoded.get(0).size());
+        assertEquals(0xFFFE, decoded.get(0).get("key65534"));
+        
+        // The key count would not fit in the unsigned short of the header
+        record.put("overflow", 0);
+        
+        assertThrows(IOException.class, () -> new BinaryEncoder().write(record, new DataOutputStream(new ByteArrayOutputStream())));
+        assertThrows(IOException.class, () -> new BinaryEncoder().write(Map.of(1, "one"), new DataOutputStream(new ByteArrayOutputStream())));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class ByteBufferInputTest
+{
+    private static byte[] encode() throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        
+        for(int i=-3; i<3; i++)
+        {
+            out.writeBoolean(i < 0);
+            out.writeByte(i * 50);
+            out.writeByte(200 + i);
+            out.writeShort(i * 12345);
+            out.writeShort(0xFFF0 + i);
+            out.writeChar('é' + i);
+            out.writeInt(i * 123456789);
+            out.writeLong(i * 1234567890123456789L);
+            out.writeFloat(i / 3.0f);
+            out.writeDouble(i / 7.0);
+            out.writeUTF("value é中 " + i);
+            out.write(new byte[]{ 1, 2, (byte)i });
+        }
+        
+        return buffer.toByteArray();
+    }
+    
+    private static List<Object> read(DataInput in) throws IOException
+    {
+        ArrayList<Object> values = new ArrayList<>();
+        byte[] bytes;
+        
+        for(int i=0; i<6; i++)
+        {
+            values.add(in.readBoolean());
+            values.add(in.readByte());
+            values.add(in.readUnsignedByte());
+            values.add(in.readShort());
+            values.add(in.readUnsignedShort());
+            values.add(in.readChar());
+            values.add(in.readInt());
+            values.add(in.readLong());
+            values.add(in.readFloat());
+            values.add(in.readDouble());
+            values.add(in.readUTF());
+            
+            in.readFully(bytes = new byte[3]);
+            values.add(List.of(bytes[0], bytes[1], bytes[2]));
+        }
+        
+        return values;
+    }
+    
+    /**
+     * Places the data after some padding in a heap or direct buffer.
+     */
+    private static ByteBuffer wrap(byte[] data, boolean direct)
+    {
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(data.length + 16) : ByteBuffer.allocate(data.length + 16);
+        
+        buffer.position(7);
+        buffer.put(data);
+        buffer.flip();
+        buffer.position(7);
+        
+        return buffer;
+    }
+    
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testMatchesStream(boolean direct) throws Exception
+    {
+        byte[] data = encode();
+        ByteBuffer buffer = wrap(data, direct);
+        ByteBufferInput input = new ByteBufferInput(buffer);
+        
+        assertEquals(read(new DataInputStream(new ByteArrayInputStream(data))), read(input));
+        assertEquals(0, input.available());
+        assertEquals(7, buffer.position());
+        assertThrows(EOFException.class, () -> input.readByte());
+    }
+    
+    @Test
+    public void testNegativeLength() throws Exception
+    {
+        ByteBufferInput input = new ByteBufferInput(new byte[]{ 1, 2, 3, 4 });
+        
+        input.readByte();
+        
+        assertThrows(IOException.class, () -> input.readFully(new byte[4], 0, -1));
+        
+        // The position is untouched by the rejected read
+        assertEquals(1, input.getPosition());
+        assertEquals(2, input.readByte());
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.io;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class PrefetchIteratorTest
+{
+    /**
+     * Returns the values and then throws, signalling once it has thrown.
+     */
+    private static Iterator<Integer> failing(List<Integer> values, Throwable failure, CountDownLatch thrown)
+    {
+        return new Iterator<Integer>() {
+            private final Iterator<Integer> iterator = values.iterator();
+            
+            @Override
+            public boolean hasNext()
+            {
+                return true;
+            }
+
+            @Override
+            public Integer next()
+            {
+                if(iterator.hasNext()) return iterator.next();
+                
+                thrown.countDown();
+                
+                if(failure instanceof Error) throw (Error)failure;
+                
+                throw (RuntimeException)failure;
+            }
+        };
+    }
+    
+    /**
+     * Counts forever and records when it is closed.
+     */
+    private static class Endless implements CloseableIterator<Integer>
+    {
+        private final AtomicInteger count = new AtomicInteger();
+        private final CountDownLatch closed = new CountDownLatch(1);
+        
+        @Override
+        public boolean hasNext()
+        {
+            return true;
+        }
+
+        @Override
+        public Integer next()
+        {
+            return count.incrementAndGet();
+        }
+
+        @Override
+        public void close()
+        {
+            closed.countDown();
+        }
+    }
+    
+    private static <T extends Throwable> List<Integer> drain(PrefetchIterator<Integer> iterator, Class<T> type, Throwable failure)
+    {
+        ArrayList<Integer> values = new ArrayList<>();
+        
+        assertSame(failure, assertThrows(type, () -> {
+            
+            while(iterator.hasNext()) values.add(iterator.next());
+        }));
+        
+        return values;
+    }
+    
+    @Test
+    public void testValues() throws Exception
+    {
+        ArrayList<Integer> values = new ArrayList<>();
+        
+        try(PrefetchIterator<Integer> iterator = new PrefetchIterator<>(List.of(1, 2, 3, 4, 5).iterator(), 2))
+        {
+            while(iterator.hasNext()) values.add(iterator.next());
+        }
+        
+        assertEquals(List.of(1, 2, 3, 4, 5), values);
+    }
+    
+    @Test
+    public void testFailureAfterValues() throws Exception
+    {
+        RuntimeException failure = new IllegalStateException("Read failed");
+        CountDownLatch thrown = new CountDownLatch(1);
+        
+        try(PrefetchIterator<Integer> iterator = new PrefetchIterator<>(failing(List.of(1, 2, 3), failure, thrown), 10))
+        {
+            // Everything read ahead is still delivered before the failure
+            thrown.await();
+            
+            assertEquals(List.of(1, 2, 3), drain(iterator, IllegalStateException.class, failure));
+        }
+    }
+    
+    @Test
+    public void testError() throws Exception
+    {
+        Error failure = new StackOverflowError();
+        CountDownLatch thrown = new CountDownLatch(1);
+        
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            
+            try(PrefetchIterator<Integer> iterator = new PrefetchIterator<>(failing(List.of(1, 2), failure, thrown), 10))
+            {
+                thrown.await();
+                
+                assertEquals(List.of(1, 2), drain(iterator, StackOverflowError.class, failure));
+            }
+        });
+    }
+    
+    @Test
+    public void testClose() throws Exception
+    {
+        Endless endless = new Endless();
+        PrefetchIterator<Integer> iterator = new PrefetchIterator<>(endless, 4);
+        int count;
+        
+        assertEquals(1, iterator.next());
+        
+        iterator.close();
+        
+        assertEquals(0, endless.closed.getCount());
+        assertFalse(iterator.hasNext());
+        
+        // The background thread stops once released from the full buffer
+        count = endless.count.get();
+        
+        Thread.sleep(100);
+        
+        assertTrue(endless.count.get() <= count + 1);
+    }
+    
+    @Test
+    public void testAbandoned() throws Exception
+    {
+        Endless endless = new Endless();
+        
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            
+            read(endless);
+            
+            // Never closed, so only collection can release the reader
+            while(!endless.closed.await(100, TimeUnit.MILLISECONDS)) System.gc();
+        });
+    }
+    
+    private static void read(Endless endless)
+    {
+        PrefetchIterator<Integer> iterator = new PrefetchIterator<>(endless, 4);
+        
+        assertEquals(1, iterator.next());
+    }
+}
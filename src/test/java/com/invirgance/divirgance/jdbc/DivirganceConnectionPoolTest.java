@@ -0,0 +1,346 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class DivirganceConnectionPoolTest
+{
+    private static TestServer server;
+    
+    @BeforeAll
+    public static void start() throws Exception
+    {
+        server = new TestServer();
+    }
+    
+    @AfterAll
+    public static void stop()
+    {
+        server.close();
+    }
+    
+    private static DivirganceDataSource source(int min, int max)
+    {
+        DivirganceDataSource source = new DivirganceDataSource(server.getURL("mem", ""));
+        
+        source.setMinPoolSize(min);
+        source.setMaxPoolSize(max);
+        
+        return source;
+    }
+    
+    private static int count(ResultSet results) throws Exception
+    {
+        int count = 0;
+        
+        while(results.next()) count++;
+        
+        return count;
+    }
+    
+    private static void await(String description, long timeout, Condition condition) throws Exception
+    {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        
+        while(!condition.test())
+        {
+            if(System.nanoTime() > end) fail("Timed out waiting for " + description);
+            
+            Thread.sleep(20);
+        }
+    }
+    
+    private interface Condition
+    {
+        boolean test() throws Exception;
+    }
+    
+    @Test
+    public void testHandshakeReuse() throws Exception
+    {
+        try(DivirganceDataSource source = source(1, 2))
+        {
+            for(int i=0; i<10; i++)
+            {
+                try(Connection connection = source.getConnection();
+                    Statement statement = connection.createStatement())
+                {
+                    assertEquals(100, count(statement.executeQuery("SELECT * FROM TestDatabase.small")));
+                }
+            }
+            
+            // Every borrow is served by the connection opened when the pool started
+            assertEquals(1, source.getPool().getCreatedCount());
+            assertEquals(10, source.getPool().getBorrowCount());
+            assertEquals(1, source.getPool().getTotalCount());
+            assertEquals(1, source.getPool().getIdleCount());
+        }
+    }
+    
+    @Test
+    public void testSizing() throws Exception
+    {
+        Connection[] connections = new Connection[3];
+        DivirganceConnectionPool pool;
+        
+        try(DivirganceDataSource source = source(2, 3))
+        {
+            pool = source.getPool();
+            
+            assertEquals(2, pool.getTotalCount());
+            assertEquals(2, pool.getIdleCount());
+            
+            for(int i=0; i<connections.length; i++) connections[i] = source.getConnection();
+            
+            assertEquals(3, pool.getTotalCount());
+            assertEquals(3, pool.getActiveCount());
+            assertEquals(0, pool.getIdleCount());
+            
+            for(Connection connection : connections) connection.close();
+            
+            assertEquals(3, pool.getTotalCount());
+            assertEquals(3, pool.getIdleCount());
+            assertEquals(3, pool.getCreatedCount());
+        }
+        
+        assertEquals(0, pool.getTotalCount());
+        assertEquals(3, pool.getDestroyedCount());
+        
+        try(DivirganceDataSource source = source(3, 2))
+        {
+            assertThrows(SQLException.class, () -> source.getConnection());
+        }
+    }
+    
+    @Test
+    public void testBorrowTimeout() throws Exception
+    {
+        CompletableFuture<Connection> waiter;
+        DivirganceConnectionPool pool;
+        Connection connection;
+        long start;
+        
+        try(DivirganceDataSource source = source(0, 1))
+        {
+            source.setBorrowTimeout(200);
+            
+            pool = source.getPool();
+            connection = source.getConnection();
+            start = System.nanoTime();
+            
+            assertThrows(SQLException.class, () -> source.getConnection());
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+            assertEquals(1, pool.getTimeoutCount());
+            
+            // A waiting borrower is handed the connection as soon as it is returned
+            source.setBorrowTimeout(10000);
+            
+            waiter = CompletableFuture.supplyAsync(() -> {
+                
+                try
+                {
+                    return source.getConnection();
+                }
+                catch(SQLException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            });
+            
+            await("the borrower to wait", 5000, () -> pool.getWaitingCount() == 1);
+            
+            connection.close();
+            
+            try(Connection borrowed = waiter.get(5, TimeUnit.SECONDS))
+            {
+                assertFalse(borrowed.isClosed());
+            }
+            
+            assertEquals(1, pool.getCreatedCount());
+            assertEquals(2, pool.getBorrowCount());
+            assertTrue(pool.getMaxWaitTime() > 0);
+            assertTrue(pool.getAverageWaitTime() <= pool.getMaxWaitTime());
+            assertTrue(pool.getTotalWaitTime() >= pool.getMaxWaitTime());
+        }
+    }
+    
+    @Test
+    public void testEviction() throws Exception
+    {
+        Connection[] connections = new Connection[3];
+        DivirganceConnectionPool pool;
+        
+        try(DivirganceDataSource source = source(1, 3))
+        {
+            source.setIdleTimeout(200);
+            
+            pool = source.getPool();
+            
+            for(int i=0; i<connections.length; i++) connections[i] = source.getConnection();
+            for(Connection connection : connections) connection.close();
+            
+            assertEquals(3, pool.getIdleCount());
+            
+            // Idle connections are closed down to the minimum size
+            await("idle connections to be evicted", 5000, () -> pool.getTotalCount() == 1);
+            
+            assertEquals(2, pool.getDestroyedCount());
+            
+            try(Connection connection = source.getConnection())
+            {
+                assertTrue(connection.isValid(5));
+            }
+        }
+    }
+    
+    @Test
+    public void testLogicalHandles() throws Exception
+    {
+        Connection connection;
+        Statement statement;
+        PreparedStatement prepared;
+        DatabaseMetaData metadata;
+        ResultSet results;
+        ResultSet tables;
+        
+        try(DivirganceDataSource source = source(1, 1))
+        {
+            connection = source.getConnection();
+            statement = connection.createStatement();
+            prepared = connection.prepareStatement("SELECT * FROM TestDatabase.small WHERE id = ?");
+            metadata = connection.getMetaData();
+            results = statement.executeQuery("SELECT * FROM TestDatabase.small");
+            tables = metadata.getTables(TestServer.CATALOG, null, null, null);
+            
+            // Nothing leads back to the physical connection
+            assertSame(connection, statement.getConnection());
+            assertSame(connection, prepared.getConnection());
+            assertSame(connection, metadata.getConnection());
+            assertSame(statement, results.getStatement());
+            assertThrows(SQLException.class, () -> connection.unwrap(DivirganceConnection.class));
+            assertThrows(SQLException.class, () -> connection.unwrap(DivirganceAsyncConnection.class));
+            assertThrows(SQLException.class, () -> statement.unwrap(DivirganceStatement.class));
+            assertFalse(connection.isWrapperFor(DivirganceConnection.class));
+            assertSame(connection, connection.unwrap(Connection.class));
+            
+            prepared.setInt(1, 5);
+            
+            try(ResultSet row = prepared.executeQuery())
+            {
+                assertSame(prepared, row.getStatement());
+                assertTrue(row.next());
+                assertEquals(5, row.getInt(1));
+            }
+            
+            assertTrue(results.next());
+            assertTrue(tables.next());
+            
+            // Returning the connection closes what was left open
+            connection.close();
+            
+            assertTrue(statement.isClosed());
+            assertTrue(prepared.isClosed());
+            assertTrue(results.isClosed());
+            assertTrue(tables.isClosed());
+            assertThrows(SQLException.class, () -> connection.createStatement());
+            assertThrows(SQLException.class, () -> statement.getConnection());
+            assertThrows(SQLException.class, () -> metadata.getTables(TestServer.CATALOG, null, null, null));
+            
+            try(Connection next = source.getConnection();
+                Statement query = next.createStatement())
+            {
+                assertEquals(100, count(query.executeQuery("SELECT * FROM TestDatabase.small")));
+            }
+            
+            assertEquals(1, source.getPool().getCreatedCount());
+        }
+    }
+    
+    @Test
+    public void testBrokenConnection() throws Exception
+    {
+        DivirganceConnectionPool pool;
+        Connection connection;
+        Statement statement;
+        
+        try(TestServer failing = new TestServer();
+            DivirganceDataSource source = new DivirganceDataSource(failing.getURL("mem", "")))
+        {
+            pool = source.getPool();
+            connection = source.getConnection();
+            statement = connection.createStatement();
+            
+            assertEquals(100, count(statement.executeQuery("SELECT * FROM TestDatabase.small")));
+            
+            failing.close();
+            
+            assertThrows(SQLException.class, () -> count(statement.executeQuery("SELECT * FROM TestDatabase.small")));
+            
+            // The failed connection is dropped rather than returned
+            assertEquals(0, pool.getTotalCount());
+            assertEquals(1, pool.getDestroyedCount());
+            assertTrue(connection.isClosed());
+            
+            connection.close();
+            
+            assertEquals(0, pool.getTotalCount());
+            assertEquals(0, pool.getIdleCount());
+        }
+    }
+    
+    @Test
+    public void testLoginTimeout() throws Exception
+    {
+        DivirganceDataSource source = source(0, 1);
+        DivirganceDataSource explicit = new DivirganceDataSource(server.getURL("mem", "connectTimeout=1500"));
+        
+        source.setLoginTimeout(3);
+        explicit.setLoginTimeout(3);
+        
+        try(DivirganceConnection first = source.getPooledConnection().getPhysicalConnection();
+            DivirganceConnection second = explicit.getPooledConnection().getPhysicalConnection())
+        {
+            // A connectTimeout in the URL takes precedence
+            assertEquals("3000", first.getProperties().getProperty("connectTimeout"));
+            assertEquals("1500", second.getProperties().getProperty("connectTimeout"));
+        }
+        
+        assertThrows(SQLException.class, () -> source.setLoginTimeout(-1));
+    }
+}
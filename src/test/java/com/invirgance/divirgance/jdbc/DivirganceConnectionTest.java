@@ -0,0 +1,331 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import com.invirgance.divirgance.net.MemoryTransport;
+import java.net.ServerSocket;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static com.invirgance.divirgance.jdbc.DivirganceStatement.COMMAND_QUERY;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class DivirganceConnectionTest
+{
+    private static TestServer server;
+    
+    @BeforeAll
+    public static void start() throws Exception
+    {
+        server = new TestServer();
+    }
+    
+    @AfterAll
+    public static void stop()
+    {
+        server.close();
+    }
+    
+    private static int count(ResultSet results) throws Exception
+    {
+        int count = 0;
+        
+        while(results.next()) count++;
+        
+        return count;
+    }
+    
+    private static int count(DivirganceResponse response)
+    {
+        int count = 0;
+        
+        for(DivirganceRecord record : response) count++;
+        
+        return count;
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "unix", "nio", "socket"})
+    public void testMultiplexedQueries(String transport) throws Exception
+    {
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        
+        try(DivirganceConnection connection = server.connect(transport, "multiplex=true");
+            ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            assertTrue(connection.isMultiplexed());
+            
+            for(int i=0; i<32; i++)
+            {
+                final int thread = i;
+                
+                futures.add(executor.submit(() -> {
+                    
+                    try(PreparedStatement statement = connection.prepareStatement("SELECT id, name FROM TestDatabase.small WHERE id = ?"))
+                    {
+                        for(int j=0; j<25; j++)
+                        {
+                            int id = (thread * 25 + j) % 100;
+                            
+                            statement.setInt(1, id);
+                            
+                            try(ResultSet results = statement.executeQuery())
+                            {
+                                assertTrue(results.next());
+                                assertEquals(id, results.getInt(1));
+                                assertEquals("name" + id, results.getString(2));
+                                assertFalse(results.next());
+                            }
+                        }
+                    }
+                    
+                    return null;
+                }));
+            }
+            
+            for(Future<?> future : futures) future.get();
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "unix", "nio", "socket"})
+    public void testReceiveCallbacks(String transport) throws Exception
+    {
+        CompletableFuture<Integer> future;
+        
+        try(DivirganceConnection connection = server.connect(transport, "multiplex=true"))
+        {
+            future = connection.execute(new DivirganceCommand(COMMAND_QUERY).writeUTF("SELECT * FROM TestDatabase.small"))
+                .receive(DivirganceAsyncConnection.VIRTUAL)
+                .thenApply(response -> {
+                    
+                    assertNotEquals("Divirgance Demultiplexer", Thread.currentThread().getName());
+                    
+                    // Waits on a second response, which only arrives if the reader is free
+                    try(DivirganceResponse next = connection.execute(new DivirganceCommand(COMMAND_QUERY).writeUTF("SELECT * FROM TestDatabase.small LIMIT 10")))
+                    {
+                        return count(response) + count(next);
+                    }
+                    catch(Exception e)
+                    {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            
+            assertEquals(110, assertTimeoutPreemptively(Duration.ofSeconds(30), () -> future.get()));
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"nio", "socket"})
+    public void testHandshakeTimeout(String transport) throws Exception
+    {
+        // The listener is never accepted from, so the connect succeeds but the
+        // server never answers
+        try(ServerSocket silent = new ServerSocket(0))
+        {
+            String options = "/?transport=" + transport + "&connectTimeout=500";
+            String unanswered = "jdbc:divirgance://localhost:" + silent.getLocalPort() + options;
+            String failover = "jdbc:divirgance://localhost:" + silent.getLocalPort() + ",localhost:" + server.getPort() + options + "&loadBalance=failover";
+            
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                
+                SQLException e = assertThrows(SQLException.class, () -> new DivirganceDriver().connect(unanswered, new Properties()));
+                
+                assertTrue(e.getMessage().contains("Unable to connect"), e.getMessage());
+                assertTrue(e.getCause().getMessage().contains("handshake"), e.getCause().getMessage());
+                
+                try(DivirganceConnection connection = (DivirganceConnection)new DivirganceDriver().connect(failover, new Properties()))
+                {
+                    assertTrue(connection.isValid(5));
+                }
+            });
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"fetchSize=ten", "prefetch=-1", "connectTimeout=99999999999", "resultCacheTimeout=1.5", "statementCacheSize=", "metadataCacheTimeout=-5"})
+    public void testInvalidProperties(String option) throws Exception
+    {
+        Properties properties = new Properties();
+        String[] pair = option.split("=", 2);
+        MemoryTransport transport = new MemoryTransport(server.getName());
+        SQLException e;
+        
+        properties.setProperty(pair[0], pair[1]);
+        
+        // Reported as an SQLException and the transport is not leaked
+        e = assertThrows(SQLException.class, () -> new DivirganceConnection(transport, "test", properties));
+        
+        assertTrue(e.getMessage().contains(pair[0]), e.getMessage());
+        assertTrue(transport.isClosed());
+        
+        // Rejected before a TCP connection is opened
+        e = assertThrows(SQLException.class, () -> new DivirganceDriver().connect(server.getURL("nio", option), new Properties()));
+        
+        assertTrue(e.getMessage().contains(pair[0]), e.getMessage());
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"statementCacheSize=0", "statementCacheSize=4"})
+    public void testLongStatement(String options) throws Exception
+    {
+        // Longer than the 65535 byte limit on strings in the protocol
+        String sql = "SELECT * FROM TestDatabase.small WHERE name = '" + "\u00e9".repeat(40000) + "'";
+        
+        try(DivirganceConnection connection = server.connect("mem", options);
+            Statement statement = connection.createStatement())
+        {
+            assertThrows(SQLException.class, () -> statement.execute(sql));
+            assertThrows(SQLException.class, () -> {
+                
+                try(PreparedStatement prepared = connection.prepareStatement(sql))
+                {
+                    prepared.executeQuery();
+                }
+            });
+            
+            assertEquals(100, count(statement.executeQuery("SELECT * FROM TestDatabase.small")));
+        }
+    }
+    
+    @ParameterizedTest
+    @CsvSource({"mem,false", "mem,true", "unix,false", "unix,true", "nio,false", "nio,true", "socket,false", "socket,true"})
+    public void testPipelinedCommands(String transport, boolean multiplex) throws Exception
+    {
+        DivirganceResponse[] responses;
+        
+        try(DivirganceConnection connection = server.connect(transport, "multiplex=" + multiplex))
+        {
+            responses = connection.execute(
+                new DivirganceCommand(COMMAND_QUERY).writeUTF("SELECT * FROM TestDatabase.small LIMIT 10"),
+                new DivirganceCommand(COMMAND_QUERY).writeUTF("SELECT * FROM TestDatabase.small LIMIT 20"),
+                new DivirganceCommand(COMMAND_QUERY).writeUTF("SELECT * FROM TestDatabase.small LIMIT 30")
+            );
+            
+            // Reading out of order buffers the earlier responses
+            assertEquals(30, count(responses[2]));
+            assertEquals(10, count(responses[0]));
+            assertEquals(20, count(responses[1]));
+        }
+    }
+    
+    @ParameterizedTest
+    @CsvSource({"mem,false", "mem,true", "unix,false", "unix,true", "nio,false", "nio,true", "socket,false", "socket,true"})
+    public void testCloseCancelsResponse(String transport, boolean multiplex) throws Exception
+    {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            
+            try(DivirganceConnection connection = server.connect(transport, "multiplex=" + multiplex);
+                Statement statement = connection.createStatement())
+            {
+                // The table never ends, so closing must stop the server rather than drain it
+                try(ResultSet results = statement.executeQuery("SELECT * FROM TestDatabase.endless"))
+                {
+                    for(int i=0; i<10; i++) assertTrue(results.next());
+                }
+                
+                assertEquals(100, count(statement.executeQuery("SELECT * FROM TestDatabase.small")));
+            }
+        });
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "unix", "nio", "socket"})
+    public void testChunkedResponses(String transport) throws Exception
+    {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            
+            try(DivirganceConnection connection = server.connect(transport, "multiplex=true&fetchSize=50");
+                Statement first = connection.createStatement();
+                Statement second = connection.createStatement();
+                Statement endless = connection.createStatement())
+            {
+                ResultSet a = first.executeQuery("SELECT id FROM TestDatabase.medium");
+                ResultSet b = second.executeQuery("SELECT id FROM TestDatabase.medium");
+                ResultSet c = endless.executeQuery("SELECT id FROM TestDatabase.endless");
+                
+                assertEquals(50, first.getFetchSize());
+                
+                // Chunked responses only advance as far as they are read
+                for(int i=0; i<10000; i++)
+                {
+                    assertTrue(a.next());
+                    assertTrue(b.next());
+                    assertTrue(c.next());
+                    assertEquals(i, a.getInt(1));
+                    assertEquals(i, b.getInt(1));
+                    assertEquals(i, c.getInt(1));
+                }
+                
+                assertFalse(a.next());
+                assertFalse(b.next());
+                
+                c.close();
+                
+                assertEquals(100, count(first.executeQuery("SELECT * FROM TestDatabase.small")));
+            }
+        });
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "unix", "nio", "socket"})
+    public void testLazyDecoding(String transport) throws Exception
+    {
+        try(DivirganceConnection eager = server.connect(transport, "");
+            DivirganceConnection lazy = server.connect(transport, "lazyDecoding=true");
+            ResultSet expected = eager.createStatement().executeQuery("SELECT * FROM TestDatabase.medium");
+            ResultSet results = lazy.createStatement().executeQuery("SELECT * FROM TestDatabase.medium"))
+        {
+            assertTrue(lazy.isLazyDecoding());
+            
+            while(expected.next())
+            {
+                assertTrue(results.next());
+                assertEquals(expected.getInt(1), results.getInt(1));
+                assertEquals(expected.getString(2), results.getString(2));
+                assertEquals(expected.getDouble(3), results.getDouble(3));
+                assertEquals(expected.getBoolean(5), results.getBoolean(5));
+            }
+            
+            assertFalse(results.next());
+        }
+    }
+}
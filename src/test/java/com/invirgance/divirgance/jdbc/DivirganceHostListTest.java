@@ -0,0 +1,271 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class DivirganceHostListTest
+{
+    private static final ConcurrentLinkedQueue<Integer> accepted = new ConcurrentLinkedQueue<>();
+    
+    /**
+     * Answers the greeting of the handshake and nothing else. Refuses to 
+     * multiplex, and when down closes connections as soon as they arrive.
+     */
+    private static class FakeServer implements AutoCloseable
+    {
+        private final ServerSocket server = new ServerSocket(0);
+        private final ConcurrentLinkedQueue<Socket> sockets = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger accepts = new AtomicInteger();
+        
+        private volatile boolean down;
+        private volatile long delay;
+
+        FakeServer() throws IOException
+        {
+            Thread.ofVirtual().start(this::accept);
+        }
+        
+        private void accept()
+        {
+            Socket socket;
+            
+            try
+            {
+                while(true)
+                {
+                    socket = server.accept();
+                    
+                    accepts.incrementAndGet();
+                    accepted.add(server.getLocalPort());
+                    
+                    if(down) socket.close();
+                    else serve(socket);
+                }
+            }
+            catch(IOException e) { }
+        }
+        
+        private void serve(Socket socket) throws IOException
+        {
+            sockets.add(socket);
+            
+            Thread.ofVirtual().start(() -> {
+                
+                try
+                {
+                    InputStream in = socket.getInputStream();
+                    OutputStream out = socket.getOutputStream();
+                    
+                    if(delay > 0) Thread.sleep(delay);
+                    
+                    out.write("DIVIRGANCE".getBytes(StandardCharsets.US_ASCII));
+                    out.write(new byte[]{ 1, 0 });
+                    out.flush();
+                    
+                    while(in.read() >= 0) out.write(0xFF);
+                }
+                catch(IOException | InterruptedException e) { }
+            });
+        }
+        
+        String getHost()
+        {
+            return "localhost:" + server.getLocalPort();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            server.close();
+            
+            for(Socket socket : sockets) socket.close();
+        }
+    }
+    
+    private static Properties properties(String... pairs)
+    {
+        Properties properties = new Properties();
+        
+        for(int i=0; i<pairs.length; i+=2) properties.setProperty(pairs[i], pairs[i+1]);
+        
+        return properties;
+    }
+    
+    /**
+     * @return port of the server that accepted the connection
+     */
+    private static int connect(DivirganceHostList hosts, Properties properties) throws SQLException
+    {
+        Integer[] ports;
+        
+        accepted.clear();
+        
+        try(DivirganceConnection connection = hosts.connect(properties))
+        {
+            ports = accepted.toArray(new Integer[0]);
+            
+            return ports[ports.length-1];
+        }
+    }
+    
+    @Test
+    public void testRoundRobin() throws Exception
+    {
+        ArrayList<Integer> ports = new ArrayList<>();
+        
+        try(FakeServer first = new FakeServer();
+            FakeServer second = new FakeServer();
+            FakeServer third = new FakeServer())
+        {
+            DivirganceHostList hosts = new DivirganceHostList(first.getHost() + "," + second.getHost() + "," + third.getHost(), 2999);
+            
+            for(int i=0; i<6; i++) ports.add(connect(hosts, properties()));
+            
+            assertEquals(List.of(first.server.getLocalPort(), second.server.getLocalPort(), third.server.getLocalPort(),
+                                 first.server.getLocalPort(), second.server.getLocalPort(), third.server.getLocalPort()), ports);
+        }
+    }
+    
+    @Test
+    public void testLeastLatency() throws Exception
+    {
+        try(FakeServer slow = new FakeServer();
+            FakeServer first = new FakeServer();
+            FakeServer second = new FakeServer())
+        {
+            DivirganceHostList hosts = new DivirganceHostList(slow.getHost() + "," + first.getHost() + "," + second.getHost(), 2999);
+            Properties properties = properties("loadBalance", "leastLatency");
+            
+            slow.delay = 200;
+            
+            // Every host is measured once before the fastest is preferred
+            for(int i=0; i<3; i++) connect(hosts, properties);
+            
+            assertEquals(1, slow.accepts.get());
+            assertEquals(1, first.accepts.get());
+            assertEquals(1, second.accepts.get());
+            
+            for(int i=0; i<6; i++) connect(hosts, properties);
+            
+            assertEquals(1, slow.accepts.get());
+            assertEquals(8, first.accepts.get() + second.accepts.get());
+        }
+    }
+    
+    @Test
+    public void testBackoff() throws Exception
+    {
+        try(FakeServer primary = new FakeServer();
+            FakeServer secondary = new FakeServer())
+        {
+            DivirganceHostList hosts = new DivirganceHostList(primary.getHost() + "," + secondary.getHost(), 2999);
+            Properties properties = properties("loadBalance", "failover");
+            
+            primary.down = true;
+            
+            assertEquals(secondary.server.getLocalPort(), connect(hosts, properties));
+            assertEquals(1, primary.accepts.get());
+            
+            // Skipped during the initial one second backoff
+            connect(hosts, properties);
+            
+            assertEquals(1, primary.accepts.get());
+            
+            Thread.sleep(1300);
+            
+            // Retried once the backoff expires, and the backoff doubles on failure
+            connect(hosts, properties);
+            
+            assertEquals(2, primary.accepts.get());
+            
+            Thread.sleep(1300);
+            connect(hosts, properties);
+            
+            assertEquals(2, primary.accepts.get());
+            
+            Thread.sleep(1000);
+            
+            // Success resets the backoff
+            primary.down = false;
+            
+            assertEquals(primary.server.getLocalPort(), connect(hosts, properties));
+            assertEquals(3, primary.accepts.get());
+            
+            primary.down = true;
+            
+            connect(hosts, properties);
+            
+            assertEquals(4, primary.accepts.get());
+            
+            Thread.sleep(1300);
+            connect(hosts, properties);
+            
+            assertEquals(5, primary.accepts.get());
+        }
+    }
+    
+    @Test
+    public void testConfigurationErrors() throws Exception
+    {
+        try(FakeServer first = new FakeServer();
+            FakeServer second = new FakeServer())
+        {
+            DivirganceHostList hosts = new DivirganceHostList(first.getHost() + "," + second.getHost(), 2999);
+            SQLException exception;
+            
+            // Thrown straight away rather than tried against every host
+            exception = assertThrows(SQLException.class, () -> hosts.connect(properties("multiplex", "true", "loadBalance", "failover")));
+            
+            assertTrue(exception.getMessage().contains("multiplex"), exception.getMessage());
+            assertEquals(1, first.accepts.get());
+            assertEquals(0, second.accepts.get());
+            
+            exception = assertThrows(SQLException.class, () -> hosts.connect(properties("transport", "carrier-pigeon")));
+            
+            assertTrue(exception.getMessage().startsWith("Unknown transport"), exception.getMessage());
+            assertEquals(1, first.accepts.get());
+            assertEquals(0, second.accepts.get());
+            
+            // Neither error put the first host into backoff
+            assertEquals(first.server.getLocalPort(), connect(hosts, properties("loadBalance", "failover")));
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class DivirganceMetadataCacheTest
+{
+    private final DivirganceMetadataCache cache = DivirganceMetadataCache.getInstance();
+    
+    private TestServer server;
+    
+    @BeforeEach
+    public void start() throws Exception
+    {
+        server = new TestServer();
+    }
+    
+    @AfterEach
+    public void stop()
+    {
+        server.close();
+    }
+    
+    private static List<String> read(ResultSet results, int column) throws Exception
+    {
+        ArrayList<String> values = new ArrayList<>();
+        
+        try(results)
+        {
+            while(results.next()) values.add(results.getString(column));
+        }
+        
+        return values;
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "socket"})
+    public void testCatalogs(String transport) throws Exception
+    {
+        long hits;
+        
+        try(DivirganceConnection connection = server.connect(transport, "metadataCacheTimeout=60000"))
+        {
+            DatabaseMetaData metadata = connection.getMetaData();
+            
+            assertEquals(List.of("TestDatabase"), read(metadata.getCatalogs(), 1));
+            
+            hits = cache.getHitCount();
+            
+            server.getServer().addCatalog("Added");
+            
+            assertEquals(List.of("TestDatabase"), read(metadata.getCatalogs(), 1));
+            assertEquals(hits + 1, cache.getHitCount());
+            
+            cache.invalidate(connection.getServer());
+            
+            assertEquals(List.of("Added", "TestDatabase"), read(metadata.getCatalogs(), 1));
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "socket"})
+    public void testTables(String transport) throws Exception
+    {
+        List<String> tables = List.of("endless", "items", "medium", "small");
+        long hits;
+        
+        try(DivirganceConnection connection = server.connect(transport, "metadataCacheTimeout=60000"))
+        {
+            DivirganceDatabaseMetadata metadata = (DivirganceDatabaseMetadata)connection.getMetaData();
+            
+            assertEquals(tables, read(metadata.getTables("TestDatabase", null, null, null), 3));
+            
+            hits = cache.getHitCount();
+            
+            server.getServer().addTable("TestDatabase", "added");
+            server.getServer().addTable("Other", "other");
+            
+            assertEquals(tables, read(metadata.getTables("TestDatabase", null, null, null), 3));
+            assertEquals(hits + 1, cache.getHitCount());
+            
+            // Only the catalog missing from the cache is requested
+            assertEquals(List.of("endless", "items", "medium", "small", "other"), read(metadata.getCatalogTables("TestDatabase", "Other"), 3));
+            assertEquals(hits + 2, cache.getHitCount());
+            
+            cache.invalidate(connection.getServer(), "TestDatabase");
+            
+            assertEquals(List.of("added", "endless", "items", "medium", "small"), read(metadata.getTables("TestDatabase", null, null, null), 3));
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "socket"})
+    public void testExpiry(String transport) throws Exception
+    {
+        try(DivirganceConnection connection = server.connect(transport, "metadataCacheTimeout=50"))
+        {
+            DatabaseMetaData metadata = connection.getMetaData();
+            
+            assertEquals(List.of("TestDatabase"), read(metadata.getCatalogs(), 1));
+            
+            server.getServer().addCatalog("Added");
+            Thread.sleep(100);
+            
+            assertEquals(List.of("Added", "TestDatabase"), read(metadata.getCatalogs(), 1));
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "socket"})
+    public void testDisabled(String transport) throws Exception
+    {
+        try(DivirganceConnection connection = server.connect(transport, ""))
+        {
+            DatabaseMetaData metadata = connection.getMetaData();
+            
+            assertEquals(List.of("TestDatabase"), read(metadata.getCatalogs(), 1));
+            
+            server.getServer().addCatalog("Added");
+            
+            assertEquals(List.of("Added", "TestDatabase"), read(metadata.getCatalogs(), 1));
+        }
+    }
+}
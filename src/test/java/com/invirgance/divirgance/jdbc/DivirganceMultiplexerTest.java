@@ -0,0 +1,200 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import com.invirgance.divirgance.net.TransportOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class DivirganceMultiplexerTest
+{
+    private static final int SIZE = 32 * 1024 * 1024;
+    private static final int FRAME = 64 * 1024;
+    
+    /**
+     * Plays a server that answers the first request with more data than the
+     * socket buffers hold and only then reads any further commands, as a
+     * server writing from its reading thread would.
+     */
+    private static long serve(ServerSocket listener) throws IOException
+    {
+        long received = 0;
+        
+        try(Socket socket = listener.accept())
+        {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            byte[] frame = new byte[FRAME];
+            int id;
+            
+            out.write("DIVIRGANCE".getBytes(StandardCharsets.US_ASCII));
+            out.write(1);
+            out.write(0);
+            out.flush();
+            
+            assertEquals(DivirganceConnection.COMMAND_MULTIPLEX, in.read());
+            
+            out.write(DivirganceConnection.RESPONSE_OK);
+            out.flush();
+            
+            id = in.readUnsignedShort();
+            in.skipNBytes(in.readInt());
+            
+            for(int i=0; i<SIZE/FRAME; i++)
+            {
+                out.writeShort(id);
+                out.writeInt(frame.length);
+                out.write(frame);
+            }
+            
+            out.writeShort(id);
+            out.writeInt(0);
+            out.flush();
+            
+            try
+            {
+                while(true)
+                {
+                    in.readUnsignedShort();
+                    in.skipNBytes(in.readInt());
+                    
+                    received++;
+                }
+            }
+            catch(EOFException e)
+            {
+                return received;
+            }
+        }
+    }
+    
+    @Test
+    public void testReaderNotBlockedByWriter() throws Exception
+    {
+        try(ServerSocket listener = new ServerSocket(0))
+        {
+            CompletableFuture<Long> server = CompletableFuture.supplyAsync(() -> {
+                
+                try { return serve(listener); }
+                catch(IOException e) { throw new IllegalStateException(e); }
+            });
+            
+            assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+                
+                DivirganceCommand large = new DivirganceCommand(DivirganceConnection.COMMAND_PING);
+                DivirganceResponse first;
+                
+                for(int i=0; i<SIZE/4; i++) large.writeInt(i);
+                
+                try(DivirganceConnection connection = (DivirganceConnection)new DivirganceDriver().connect("jdbc:divirgance://localhost:" + listener.getLocalPort() + "/?multiplex=true", new Properties()))
+                {
+                    first = connection.execute(new DivirganceCommand(DivirganceConnection.COMMAND_PING));
+                    
+                    // Blocks on a full send buffer until the server reads again,
+                    // which it only does once its response has been drained
+                    connection.execute(large);
+                    
+                    first.receive(DivirganceAsyncConnection.VIRTUAL).get(30, TimeUnit.SECONDS);
+                    
+                    assertEquals(DivirganceConnection.RESPONSE_OK, first.getStatus());
+                }
+                
+                assertEquals(1, server.get(30, TimeUnit.SECONDS));
+            });
+        }
+    }
+    
+    @Test
+    public void testInvalidFrameLength() throws Exception
+    {
+        for(int length : new int[]{ -1, DivirganceMultiplexer.MAXIMUM_FRAME + 1 })
+        {
+            PipedInputStream in = new PipedInputStream();
+            DataOutputStream server = new DataOutputStream(new PipedOutputStream(in));
+            DivirganceMultiplexer multiplexer = new DivirganceMultiplexer(new DataInputStream(in), new TransportOutputStream(new ByteArrayOutputStream()));
+            FrameInputStream stream = new FrameInputStream();
+            int id = multiplexer.open(stream);
+            
+            server.writeShort(id);
+            server.writeInt(length);
+            server.flush();
+            
+            // Fails the stream rather than allocating or reading a bad length
+            IOException e = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(IOException.class, () -> stream.read()));
+            
+            assertTrue(e.getMessage().contains("Invalid frame length"), e.getMessage());
+            assertTrue(multiplexer.isClosed());
+            
+            server.close();
+        }
+    }
+    
+    @Test
+    public void testReaderFailure() throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch(1);
+        InputStream broken = new InputStream() {
+            
+            @Override
+            public int read() throws IOException
+            {
+                try { latch.await(); } catch(InterruptedException e) { throw new InterruptedIOException(); }
+                
+                throw new IllegalStateException("Broken stream");
+            }
+        };
+        
+        DivirganceMultiplexer multiplexer = new DivirganceMultiplexer(new DataInputStream(broken), new TransportOutputStream(new ByteArrayOutputStream()));
+        FrameInputStream stream = new FrameInputStream();
+        
+        multiplexer.open(stream);
+        latch.countDown();
+        
+        // Unchecked failures release waiting readers too
+        IOException e = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(IOException.class, () -> stream.read()));
+        
+        assertInstanceOf(IllegalStateException.class, e.getCause().getCause());
+        assertTrue(multiplexer.isClosed());
+    }
+}
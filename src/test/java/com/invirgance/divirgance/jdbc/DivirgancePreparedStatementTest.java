@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class DivirgancePreparedStatementTest
+{
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "nio"})
+    public void testBatchKeepsParameters(String transport) throws Exception
+    {
+        ArrayList<String> rows = new ArrayList<>();
+        
+        try(TestServer server = new TestServer();
+            DivirganceConnection connection = server.connect(transport, "");
+            PreparedStatement statement = connection.prepareStatement("INSERT INTO TestDatabase.items (id, name) VALUES (?, ?)"))
+        {
+            statement.setInt(1, 1);
+            statement.setString(2, "first");
+            statement.addBatch();
+            
+            // Only the id changes, the name carries over from the last row
+            statement.setInt(1, 2);
+            statement.addBatch();
+            
+            statement.setInt(1, 3);
+            statement.setString(2, "third");
+            statement.addBatch();
+            
+            assertEquals(3, statement.executeBatch().length);
+            
+            // Values still persist after the batch has executed
+            statement.setInt(1, 4);
+            
+            assertEquals(1, statement.executeUpdate());
+            
+            for(DivirganceRecord record : server.getItems()) rows.add(record.get("id") + ":" + record.get("name"));
+            
+            assertEquals(List.of("1:first", "2:first", "3:third", "4:third"), rows);
+            
+            statement.clearParameters();
+            statement.setInt(1, 5);
+            
+            assertThrows(SQLException.class, () -> statement.executeUpdate());
+        }
+    }
+}
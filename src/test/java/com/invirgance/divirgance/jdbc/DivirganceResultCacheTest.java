@@ -0,0 +1,240 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class DivirganceResultCacheTest
+{
+    private final DivirganceResultCache cache = DivirganceResultCache.getInstance();
+    
+    private TestServer server;
+    
+    @BeforeEach
+    public void start() throws Exception
+    {
+        server = new TestServer();
+        
+        for(int i=0; i<3; i++) server.getItems().add(item(i));
+    }
+    
+    @AfterEach
+    public void stop()
+    {
+        server.close();
+    }
+    
+    private static DivirganceRecord item(int id)
+    {
+        DivirganceRecord record = new DivirganceRecord(true);
+        
+        record.put("id", id);
+        record.put("name", "item" + id);
+        
+        return record;
+    }
+    
+    private static int count(ResultSet results) throws Exception
+    {
+        int count = 0;
+        
+        try(results)
+        {
+            while(results.next()) count++;
+        }
+        
+        return count;
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "socket"})
+    public void testStatement(String transport) throws Exception
+    {
+        long hits;
+        
+        try(DivirganceConnection connection = server.connect(transport, "resultCacheTimeout=60000");
+            Statement statement = connection.createStatement())
+        {
+            assertEquals(3, count(statement.executeQuery("SELECT * FROM TestDatabase.items")));
+            
+            hits = cache.getHitCount();
+            
+            server.getItems().add(item(3));
+            
+            assertEquals(3, count(statement.executeQuery("SELECT * FROM TestDatabase.items")));
+            assertEquals(hits + 1, cache.getHitCount());
+            
+            // Updates drop the cached results of the server
+            assertEquals(1, statement.executeUpdate("INSERT INTO TestDatabase.items (id, name) VALUES (4, 'item4')"));
+            assertEquals(5, count(statement.executeQuery("SELECT * FROM TestDatabase.items")));
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "socket"})
+    public void testReplay(String transport) throws Exception
+    {
+        try(DivirganceConnection connection = server.connect(transport, "resultCacheTimeout=60000&lazyDecoding=true");
+            Statement statement = connection.createStatement())
+        {
+            for(int pass=0; pass<2; pass++)
+            {
+                try(ResultSet results = statement.executeQuery("SELECT id, name FROM TestDatabase.items"))
+                {
+                    for(int i=0; i<3; i++)
+                    {
+                        assertTrue(results.next());
+                        assertEquals(i, results.getInt(1));
+                        assertEquals("item" + i, results.getString(2));
+                    }
+                    
+                    assertFalse(results.next());
+                }
+            }
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "socket"})
+    public void testParameters(String transport) throws Exception
+    {
+        try(DivirganceConnection connection = server.connect(transport, "resultCacheTimeout=60000");
+            PreparedStatement statement = connection.prepareStatement("SELECT * FROM TestDatabase.items WHERE id = ?"))
+        {
+            statement.setInt(1, 1);
+            
+            assertEquals(1, count(statement.executeQuery()));
+            
+            server.getItems().add(item(1));
+            server.getItems().add(item(2));
+            
+            // Cached by SQL and parameters
+            assertEquals(1, count(statement.executeQuery()));
+            
+            statement.setInt(1, 2);
+            
+            assertEquals(2, count(statement.executeQuery()));
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "socket"})
+    public void testIncomplete(String transport) throws Exception
+    {
+        long misses;
+        
+        try(DivirganceConnection connection = server.connect(transport, "resultCacheTimeout=60000");
+            Statement statement = connection.createStatement())
+        {
+            try(ResultSet results = statement.executeQuery("SELECT * FROM TestDatabase.medium"))
+            {
+                for(int i=0; i<10; i++) assertTrue(results.next());
+            }
+            
+            misses = cache.getMissCount();
+            
+            // A result closed before it was complete is not cached
+            assertEquals(10000, count(statement.executeQuery("SELECT * FROM TestDatabase.medium")));
+            assertEquals(misses + 1, cache.getMissCount());
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "socket"})
+    public void testInvalidatedWhileReading(String transport) throws Exception
+    {
+        try(DivirganceConnection connection = server.connect(transport, "resultCacheTimeout=60000");
+            DivirganceConnection writer = server.connect(transport, "");
+            Statement statement = connection.createStatement())
+        {
+            try(ResultSet results = statement.executeQuery("SELECT * FROM TestDatabase.items"))
+            {
+                assertTrue(results.next());
+                
+                // The update lands after the query was sent but before its
+                // results were complete, so they must not be cached
+                try(Statement update = writer.createStatement())
+                {
+                    assertEquals(1, update.executeUpdate("INSERT INTO TestDatabase.items (id, name) VALUES (3, 'item3')"));
+                }
+                
+                while(results.next());
+            }
+            
+            assertEquals(4, count(statement.executeQuery("SELECT * FROM TestDatabase.items")));
+        }
+    }
+    
+    @Test
+    public void testGeneration() throws Exception
+    {
+        String name = "generation" + System.nanoTime();
+        byte[] key = new byte[]{ 1 };
+        long generation = cache.getGeneration(name);
+        
+        cache.invalidate(name);
+        cache.put(name, key, new byte[]{ 2 }, 60000, generation);
+        
+        assertNull(cache.get(name, key));
+        
+        generation = cache.getGeneration(name);
+        
+        cache.invalidate();
+        cache.put(name, key, new byte[]{ 2 }, 60000, generation);
+        
+        assertNull(cache.get(name, key));
+        
+        cache.put(name, key, new byte[]{ 2 }, 60000, cache.getGeneration(name));
+        
+        assertArrayEquals(new byte[]{ 2 }, cache.get(name, key));
+        
+        cache.invalidate(name);
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "socket"})
+    public void testDisabled(String transport) throws Exception
+    {
+        try(DivirganceConnection connection = server.connect(transport, "");
+            Statement statement = connection.createStatement())
+        {
+            assertEquals(3, count(statement.executeQuery("SELECT * FROM TestDatabase.items")));
+            
+            server.getItems().add(item(3));
+            
+            assertEquals(4, count(statement.executeQuery("SELECT * FROM TestDatabase.items")));
+        }
+    }
+}
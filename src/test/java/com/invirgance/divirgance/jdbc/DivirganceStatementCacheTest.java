@@ -0,0 +1,168 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static com.invirgance.divirgance.jdbc.DivirganceDatabaseMetadata.RESPONSE_BSON;
+import static com.invirgance.divirgance.jdbc.DivirganceDatabaseMetadata.RESPONSE_ERROR;
+import static com.invirgance.divirgance.jdbc.DivirganceStatement.COMMAND_EXECUTE;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class DivirganceStatementCacheTest
+{
+    private static final String FIRST = "SELECT id FROM TestDatabase.small LIMIT 1";
+    private static final String SECOND = "SELECT id FROM TestDatabase.small LIMIT 2";
+    private static final String THIRD = "SELECT id FROM TestDatabase.small LIMIT 3";
+    
+    private static TestServer server;
+    
+    @BeforeAll
+    public static void start() throws Exception
+    {
+        server = new TestServer();
+    }
+    
+    @AfterAll
+    public static void stop()
+    {
+        server.close();
+    }
+    
+    private static int count(PreparedStatement statement) throws Exception
+    {
+        int count = 0;
+        
+        try(ResultSet results = statement.executeQuery())
+        {
+            while(results.next()) count++;
+        }
+        
+        return count;
+    }
+    
+    private static int getStatus(DivirganceConnection connection, int handle) throws Exception
+    {
+        DivirganceCommand command = new DivirganceCommand(COMMAND_EXECUTE).writeInt(handle).writeRecords(List.of(new DivirganceRecord()));
+        
+        try(DivirganceResponse response = connection.execute(command))
+        {
+            return response.getStatus();
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "socket"})
+    public void testReuse(String transport) throws Exception
+    {
+        int handle;
+        
+        try(DivirganceConnection connection = server.connect(transport, "statementCacheSize=2"))
+        {
+            assertEquals(2, connection.getStatementCacheSize());
+            
+            try(DivirgancePreparedStatement statement = (DivirgancePreparedStatement)connection.prepareStatement(FIRST))
+            {
+                handle = statement.getHandle();
+                
+                assertEquals(1, count(statement));
+            }
+            
+            // Closing the statement leaves the cached handle open on the server
+            try(DivirgancePreparedStatement statement = (DivirgancePreparedStatement)connection.prepareStatement(FIRST))
+            {
+                assertEquals(handle, statement.getHandle());
+                assertEquals(1, count(statement));
+            }
+            
+            assertEquals(1, connection.getStatementCacheHitCount());
+            assertEquals(1, connection.getStatementCacheMissCount());
+            assertEquals(0, connection.getStatementCacheEvictionCount());
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "socket"})
+    public void testEviction(String transport) throws Exception
+    {
+        DivirgancePreparedStatement open;
+        int handle;
+        
+        try(DivirganceConnection connection = server.connect(transport, "statementCacheSize=2"))
+        {
+            open = (DivirgancePreparedStatement)connection.prepareStatement(FIRST);
+            handle = open.getHandle();
+            
+            connection.prepareStatement(SECOND).close();
+            connection.prepareStatement(THIRD).close();
+            
+            assertEquals(1, connection.getStatementCacheEvictionCount());
+            
+            // Evicted handles stay open until their last statement is closed
+            assertEquals(1, count(open));
+            
+            open.close();
+            
+            assertEquals(RESPONSE_ERROR, getStatus(connection, handle));
+            
+            try(DivirgancePreparedStatement statement = (DivirgancePreparedStatement)connection.prepareStatement(FIRST))
+            {
+                assertNotEquals(handle, statement.getHandle());
+                assertEquals(1, count(statement));
+            }
+            
+            assertEquals(0, connection.getStatementCacheHitCount());
+            assertEquals(4, connection.getStatementCacheMissCount());
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "socket"})
+    public void testDisabled(String transport) throws Exception
+    {
+        int handle;
+        
+        try(DivirganceConnection connection = server.connect(transport, ""))
+        {
+            try(DivirgancePreparedStatement statement = (DivirgancePreparedStatement)connection.prepareStatement(FIRST))
+            {
+                handle = statement.getHandle();
+                
+                assertEquals(RESPONSE_BSON, getStatus(connection, handle));
+            }
+            
+            // Without a cache the handle is closed with the statement
+            assertEquals(RESPONSE_ERROR, getStatus(connection, handle));
+            assertEquals(0, connection.getStatementCacheMissCount());
+        }
+    }
+}
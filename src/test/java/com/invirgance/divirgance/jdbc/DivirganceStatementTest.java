@@ -0,0 +1,250 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class DivirganceStatementTest
+{
+    @ParameterizedTest
+    @CsvSource({"mem,false", "mem,true", "nio,false", "nio,true"})
+    public void testCancel(String transport, boolean multiplex) throws Exception
+    {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            
+            try(TestServer server = new TestServer();
+                DivirganceConnection connection = server.connect(transport, "multiplex=" + multiplex);
+                Statement statement = connection.createStatement())
+            {
+                ResultSet results = statement.executeQuery("SELECT * FROM TestDatabase.endless");
+                Thread thread;
+                
+                for(int i=0; i<10; i++) assertTrue(results.next());
+                
+                // Platform thread as the endless response can occupy every carrier
+                thread = new Thread(() -> {
+                    try { statement.cancel(); } catch(SQLException e) { throw new RuntimeException(e); }
+                });
+                
+                thread.start();
+                thread.join();
+                
+                // The server stops the response, so reading ends or fails
+                try
+                {
+                    while(results.next());
+                }
+                catch(SQLException e) {}
+                
+                results.close();
+                
+                assertEquals(100, count(statement.executeQuery("SELECT * FROM TestDatabase.small")));
+            }
+        });
+    }
+    
+    @ParameterizedTest
+    @CsvSource({"mem,false", "mem,true", "nio,false", "nio,true"})
+    public void testMaxRows(String transport, boolean multiplex) throws Exception
+    {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            
+            try(TestServer server = new TestServer();
+                DivirganceConnection connection = server.connect(transport, "multiplex=" + multiplex);
+                Statement statement = connection.createStatement())
+            {
+                statement.setMaxRows(25);
+                
+                assertEquals(25, statement.getMaxRows());
+                assertEquals(25, count(statement.executeQuery("SELECT * FROM TestDatabase.endless")));
+                
+                // The rest of the endless response was cancelled rather than buffered
+                statement.setMaxRows(0);
+                
+                assertEquals(100, count(statement.executeQuery("SELECT * FROM TestDatabase.small")));
+                assertThrows(SQLException.class, () -> statement.setMaxRows(-1));
+            }
+        });
+    }
+    
+    @Test
+    public void testBatch() throws Exception
+    {
+        ArrayList<String> rows = new ArrayList<>();
+        
+        try(TestServer server = new TestServer();
+            DivirganceConnection connection = server.connect("mem", "");
+            Statement statement = connection.createStatement())
+        {
+            statement.addBatch("INSERT INTO TestDatabase.items (id, name) VALUES (1, 'first')");
+            statement.addBatch("INSERT INTO TestDatabase.items (id, name) VALUES (2, 'second')");
+            
+            assertArrayEquals(new int[]{1, 1}, statement.executeBatch());
+            assertEquals(0, statement.executeBatch().length);
+            
+            statement.addBatch("INSERT INTO TestDatabase.items (id, name) VALUES (3, 'third')");
+            statement.addBatch("DELETE FROM TestDatabase.items");
+            
+            BatchUpdateException exception = assertThrows(BatchUpdateException.class, () -> statement.executeBatch());
+            
+            assertArrayEquals(new long[]{1}, exception.getLargeUpdateCounts());
+            
+            for(DivirganceRecord record : server.getItems()) rows.add(record.get("id") + ":" + record.get("name"));
+            
+            assertEquals(List.of("1:first", "2:second", "3:third"), rows);
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"mem", "nio"})
+    public void testServerFailure(String transport) throws Exception
+    {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            
+            try(TestServer server = new TestServer();
+                DivirganceConnection connection = server.connect(transport, "");
+                Statement statement = connection.createStatement())
+            {
+                ResultSet results = statement.executeQuery("SELECT * FROM TestDatabase.endless");
+                
+                assertTrue(results.next());
+                
+                server.close();
+                
+                // A lost connection is reported as an SQLException, not an unchecked exception
+                assertThrows(SQLException.class, () -> { while(results.next()); });
+            }
+        });
+    }
+    
+    @Test
+    public void testCloseOnCompletion() throws Exception
+    {
+        try(TestServer server = new TestServer();
+            DivirganceConnection connection = server.connect("mem", "");
+            Statement statement = connection.createStatement())
+        {
+            ResultSet results;
+            
+            statement.closeOnCompletion();
+            
+            assertTrue(statement.isCloseOnCompletion());
+            
+            results = statement.executeQuery("SELECT * FROM TestDatabase.small");
+            
+            while(results.next());
+            
+            assertFalse(statement.isClosed());
+            
+            results.close();
+            
+            assertTrue(results.isClosed());
+            assertTrue(statement.isClosed());
+            assertThrows(SQLException.class, () -> results.next());
+        }
+    }
+    
+    @Test
+    public void testParameterConversion() throws Exception
+    {
+        ArrayList<Object> values = new ArrayList<>();
+        
+        try(TestServer server = new TestServer();
+            DivirganceConnection connection = server.connect("mem", "");
+            PreparedStatement statement = connection.prepareStatement("INSERT INTO TestDatabase.items (id, name) VALUES (?, ?)"))
+        {
+            statement.setBigDecimal(1, new BigDecimal("12.00"));
+            statement.setCharacterStream(2, new StringReader("streamed"));
+            statement.executeUpdate();
+            
+            statement.setBigDecimal(1, new BigDecimal("2.5"));
+            statement.setClob(2, new StringReader("truncated"), 5);
+            statement.executeUpdate();
+            
+            statement.setObject(1, new BigDecimal("9223372036854775807"), java.sql.Types.DECIMAL, 0);
+            statement.setNull(2, java.sql.Types.VARCHAR);
+            statement.executeUpdate();
+            
+            for(DivirganceRecord record : server.getItems())
+            {
+                values.add(record.get("id"));
+                values.add(record.get("name"));
+            }
+            
+            assertEquals(List.of(12L, "streamed", 2.5, "trunc", Long.MAX_VALUE), values.subList(0, 5));
+            assertNull(values.get(5));
+            
+            // Not representable as a long or a double
+            assertThrows(SQLException.class, () -> statement.setBigDecimal(1, new BigDecimal("0.1000000000000000000001")));
+            assertThrows(SQLException.class, () -> statement.addBatch("SELECT * FROM TestDatabase.small"));
+        }
+    }
+    
+    @Test
+    public void testUnsupportedFeatures() throws Exception
+    {
+        try(TestServer server = new TestServer();
+            DivirganceConnection connection = server.connect("mem", "");
+            PreparedStatement statement = connection.prepareStatement("SELECT * FROM TestDatabase.small"))
+        {
+            assertThrows(SQLFeatureNotSupportedException.class, () -> statement.setBytes(1, new byte[1]));
+            assertThrows(SQLFeatureNotSupportedException.class, () -> statement.setBlob(1, (java.sql.Blob)null));
+            assertThrows(SQLFeatureNotSupportedException.class, () -> statement.getParameterMetaData());
+            assertThrows(SQLFeatureNotSupportedException.class, () -> statement.setCursorName("cursor"));
+            assertThrows(SQLFeatureNotSupportedException.class, () -> statement.getGeneratedKeys());
+            assertThrows(SQLFeatureNotSupportedException.class, () -> statement.execute("SELECT 1", new int[]{1}));
+            assertNull(statement.getMetaData());
+        }
+    }
+    
+    private static int count(ResultSet results) throws SQLException
+    {
+        int count = 0;
+        
+        try(results)
+        {
+            while(results.next()) count++;
+        }
+        
+        return count;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class DivirganceVirtualThreadTest
+{
+    private static final int THREADS = 10000;
+    private static final int BATCH = 50000;
+    
+    private static TestServer server;
+    
+    @BeforeAll
+    public static void start() throws Exception
+    {
+        server = new TestServer();
+    }
+    
+    @AfterAll
+    public static void stop()
+    {
+        server.close();
+    }
+    
+    private static void query(DivirganceConnection connection, int id) throws Exception
+    {
+        try(PreparedStatement statement = connection.prepareStatement("SELECT id, name FROM TestDatabase.small WHERE id = ?"))
+        {
+            statement.setInt(1, id);
+
+            try(ResultSet results = statement.executeQuery())
+            {
+                assertTrue(results.next());
+                assertEquals(id, results.getInt(1));
+                assertFalse(results.next());
+            }
+        }
+    }
+    
+    private static void insert(DivirganceConnection connection) throws Exception
+    {
+        String padding = "x".repeat(100);
+        
+        try(PreparedStatement statement = connection.prepareStatement("INSERT INTO TestDatabase.items (id, name) VALUES (?, ?)"))
+        {
+            for(int i=0; i<BATCH; i++)
+            {
+                statement.setInt(1, i);
+                statement.setString(2, padding + i);
+                statement.addBatch();
+            }
+
+            assertEquals(BATCH, statement.executeBatch().length);
+        }
+    }
+    
+    private static List<RecordedEvent> record(Path file, Runnable workload) throws Exception
+    {
+        try(Recording recording = new Recording())
+        {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+            
+            workload.run();
+            
+            recording.stop();
+            recording.dump(file);
+        }
+        
+        return RecordingFile.readAllEvents(file);
+    }
+    
+    @ParameterizedTest
+    @CsvSource({"mem,false", "mem,true", "nio,false", "nio,true", "socket,false", "socket,true"})
+    public void testNoPinning(String transport, boolean multiplex) throws Exception
+    {
+        Path file = Files.createTempFile("divirgance", ".jfr");
+        List<RecordedEvent> pinned;
+        
+        try(DivirganceConnection connection = server.connect(transport, "multiplex=" + multiplex))
+        {
+            pinned = record(file, () -> assertTimeoutPreemptively(Duration.ofSeconds(120), () -> {
+                
+                ArrayList<Future<?>> futures = new ArrayList<>();
+                
+                try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+                {
+                    futures.add(executor.submit(() -> { insert(connection); return null; }));
+                    
+                    for(int i=0; i<THREADS; i++)
+                    {
+                        final int id = i % 100;
+                        
+                        futures.add(executor.submit(() -> { query(connection, id); return null; }));
+                    }
+                    
+                    for(Future<?> future : futures) future.get();
+                }
+            }));
+        }
+        finally
+        {
+            Files.deleteIfExists(file);
+        }
+        
+        assertEquals(List.of(), pinned, "Virtual threads pinned their carrier");
+    }
+}
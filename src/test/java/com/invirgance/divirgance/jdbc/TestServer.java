@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import com.invirgance.divirgance.server.DivirganceServer;
+import com.invirgance.divirgance.server.SyntheticTable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in server shared by the driver tests. Serves the catalog TestDatabase
+ * with the synthetic tables small (100 rows), medium (10,000 rows) and endless
+ * (more rows than any test reads) and the writable table items, over TCP, a
+ * Unix domain socket and an in-memory endpoint.
+ * 
+ * @author jbanes
+ */
+class TestServer implements AutoCloseable
+{
+    static final String CATALOG = "TestDatabase";
+    
+    private static final AtomicInteger names = new AtomicInteger();
+    
+    private final DivirganceServer server = new DivirganceServer();
+    private final ConcurrentLinkedQueue<DivirganceRecord> items = new ConcurrentLinkedQueue<>();
+    private final String name = "test" + names.incrementAndGet();
+    private final Path directory = Files.createTempDirectory("divirgance");
+    private final Path socket = directory.resolve("test.sock");
+    private final int port;
+
+    TestServer() throws IOException
+    {
+        server.addTable(CATALOG, "small", new SyntheticTable(100));
+        server.addTable(CATALOG, "medium", new SyntheticTable(10000));
+        server.addTable(CATALOG, "endless", new SyntheticTable(Integer.MAX_VALUE));
+        server.addTable(CATALOG, "items", items);
+        server.bind(name);
+        server.listen(socket);
+        
+        this.port = server.listen(0);
+    }
+    
+    DivirganceServer getServer()
+    {
+        return server;
+    }
+    
+    /**
+     * @return name the server is bound to for in-memory transports
+     */
+    String getName()
+    {
+        return name;
+    }
+    
+    ConcurrentLinkedQueue<DivirganceRecord> getItems()
+    {
+        return items;
+    }
+    
+    int getPort()
+    {
+        return port;
+    }
+    
+    Path getSocket()
+    {
+        return socket;
+    }
+    
+    /**
+     * @param transport mem, unix, nio or socket
+     * @param options URL options such as multiplex=true
+     * @return URL connecting to this server over the transport
+     */
+    String getURL(String transport, String options)
+    {
+        if(transport.equals("mem")) return "jdbc:divirgance:mem:" + name + "?" + options;
+        if(transport.equals("unix")) return "jdbc:divirgance:unix:" + socket + "?" + options;
+        
+        return "jdbc:divirgance://localhost:" + port + "/?transport=" + transport + "&" + options;
+    }
+    
+    DivirganceConnection connect(String transport, String options) throws SQLException
+    {
+        return (DivirganceConnection)new DivirganceDriver().connect(getURL(transport, options), new Properties());
+    }
+
+    @Override
+    public void close()
+    {
+        server.close();
+        
+        try { Files.deleteIfExists(directory); } catch(IOException e) {}
+    }
+}
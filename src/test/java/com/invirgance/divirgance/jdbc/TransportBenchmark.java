@@ -0,0 +1,83 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.jdbc;
+
+import java.util.Arrays;
+
+import static com.invirgance.divirgance.jdbc.DivirganceConnection.COMMAND_PING;
+import static com.invirgance.divirgance.jdbc.DivirganceConnection.RESPONSE_OK;
+
+/**
+ * Compares the round trip latency of the transports by timing pings against
+ * the stand-in server. Unix domain sockets skip the TCP stack and should beat
+ * loopback TCP. Run from the test classpath with an optional number of pings:
+ * <pre>
+ * java -cp target/classes:target/test-classes com.invirgance.divirgance.jdbc.TransportBenchmark [pings]
+ * </pre>
+ * 
+ * @author jbanes
+ */
+public class TransportBenchmark
+{
+    private static long[] ping(DivirganceConnection connection, int count) throws Exception
+    {
+        long[] times = new long[count];
+        long start;
+        
+        for(int i=0; i<count; i++)
+        {
+            start = System.nanoTime();
+            
+            try(DivirganceResponse response = connection.execute(new DivirganceCommand(COMMAND_PING)))
+            {
+                if(response.getStatus() != RESPONSE_OK) throw new IllegalStateException("Ping failed");
+            }
+            
+            times[i] = System.nanoTime() - start;
+        }
+        
+        Arrays.sort(times);
+        
+        return times;
+    }
+    
+    public static void main(String[] args) throws Exception
+    {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+        long[] times;
+        
+        try(TestServer server = new TestServer())
+        {
+            for(String transport : new String[]{ "unix", "nio", "socket", "mem" })
+            {
+                try(DivirganceConnection connection = server.connect(transport, ""))
+                {
+                    ping(connection, count / 10);
+                    
+                    times = ping(connection, count);
+                    
+                    System.out.printf("%-6s  median %6.1f us  p99 %6.1f us%n", transport, times[count / 2] / 1000.0, times[count * 99 / 100] / 1000.0);
+                }
+            }
+        }
+    }
+}
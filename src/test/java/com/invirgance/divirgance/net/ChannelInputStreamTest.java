@@ -0,0 +1,85 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author jbanes
+ */
+public class ChannelInputStreamTest
+{
+    @SuppressWarnings("deprecation")
+    private static List<String> expected(byte[] data) throws Exception
+    {
+        ArrayList<String> lines = new ArrayList<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        String line;
+        
+        while((line = in.readLine()) != null) lines.add(line);
+        
+        return lines;
+    }
+    
+    @Test
+    public void testReadLine() throws Exception
+    {
+        String text = "first\nsecond\r\nthird\rfourth\n\n\r\ncafé\n" + "x".repeat(100000) + "\nlast";
+        byte[] data = text.getBytes(StandardCharsets.ISO_8859_1);
+        ArrayList<String> lines = new ArrayList<>();
+        String line;
+        
+        // Lines must be read exactly as DataInputStream reads them
+        try(ChannelInputStream in = new ChannelInputStream(Channels.newChannel(new ByteArrayInputStream(data))))
+        {
+            while((line = in.readLine()) != null) lines.add(line);
+            
+            assertEquals(-1, in.read());
+        }
+        
+        assertEquals(expected(data), lines);
+        assertEquals("last", lines.get(lines.size()-1));
+    }
+    
+    @Test
+    public void testMixedReads() throws Exception
+    {
+        byte[] data = "header\r\n\u0000\u0007tail".getBytes(StandardCharsets.ISO_8859_1);
+        
+        try(ChannelInputStream in = new ChannelInputStream(Channels.newChannel(new ByteArrayInputStream(data))))
+        {
+            assertEquals("header", in.readLine());
+            assertEquals(7, in.readUnsignedShort());
+            assertEquals("tail", in.readLine());
+            assertNull(in.readLine());
+        }
+    }
+}
@@ -0,0 +1,504 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.server;
+
+import com.invirgance.divirgance.jdbc.DivirganceRecord;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Parsed form of the small SQL dialect understood by the stand-in server:
+ * <pre>
+ * SELECT * | column[, column...] FROM [catalog.]table 
+ *     [WHERE column = value [AND column = value...]] [LIMIT count]
+ * INSERT INTO [catalog.]table (column[, column...]) VALUES (value[, value...])
+ * </pre>
+ * Values are string, number, boolean or NULL literals, or ? parameters. 
+ * Parameters are bound by index from records keyed "1", "2", etc.
+ * 
+ * @author jbanes
+ */
+class DivirganceQuery
+{
+    private static final Object END = new Object() {
+        @Override
+        public String toString()
+        {
+            return "end of statement";
+        }
+    };
+    
+    private final boolean select;
+    private String catalog;
+    private String table;
+    private final ArrayList<String> columns = new ArrayList<>();
+    private final ArrayList<Object> values = new ArrayList<>();
+    private int limit = -1;
+    private int parameters;
+    
+    private final ArrayList<Object> tokens;
+    private int position;
+
+    private DivirganceQuery(String sql) throws SQLException
+    {
+        this.tokens = tokenize(sql);
+        this.select = keyword("SELECT");
+        
+        if(select) parseSelect();
+        else if(keyword("INSERT")) parseInsert();
+        else throw new SQLException("Only SELECT and INSERT statements are supported: " + sql);
+        
+        symbol(';');
+        
+        if(peek() != END) throw new SQLException("Unexpected " + peek() + " in " + sql);
+    }
+    
+    public static DivirganceQuery parse(String sql) throws SQLException
+    {
+        return new DivirganceQuery(sql);
+    }
+    
+    public boolean isSelect()
+    {
+        return select;
+    }
+    
+    public int getParameterCount()
+    {
+        return parameters;
+    }
+    
+    private void parseSelect() throws SQLException
+    {
+        if(!symbol('*'))
+        {
+            do { columns.add(identifier()); } while(symbol(','));
+        }
+        
+        expect("FROM");
+        parseTable();
+        
+        if(keyword("WHERE"))
+        {
+            do
+            {
+                // Filter columns and values follow the projected columns
+                columns.add(identifier());
+                
+                if(!symbol('=')) throw new SQLException("Only = comparisons are supported");
+                
+                values.add(value());
+            }
+            while(keyword("AND"));
+        }
+        
+        if(keyword("LIMIT"))
+        {
+            if(!(peek() instanceof Number)) throw new SQLException("LIMIT must be followed by a number");
+            
+            limit = ((Number)next()).intValue();
+        }
+    }
+    
+    private void parseInsert() throws SQLException
+    {
+        expect("INTO");
+        parseTable();
+        
+        if(!symbol('(')) throw new SQLException("INSERT requires a column list");
+        
+        do { columns.add(identifier()); } while(symbol(','));
+        
+        if(!symbol(')')) throw new SQLException("Expected ) after column list");
+        
+        expect("VALUES");
+        
+        if(!symbol('(')) throw new SQLException("Expected ( after VALUES");
+        
+        do { values.add(value()); } while(symbol(','));
+        
+        if(!symbol(')')) throw new SQLException("Expected ) after values");
+        if(values.size() != columns.size()) throw new SQLException("INSERT has " + columns.size() + " columns but " + values.size() + " values");
+    }
+    
+    private void parseTable() throws SQLException
+    {
+        table = identifier();
+        
+        if(symbol('.'))
+        {
+            catalog = table;
+            table = identifier();
+        }
+    }
+    
+    private Object value() throws SQLException
+    {
+        Object token = next();
+        
+        if(token instanceof Parameter) return new Parameter(++parameters);
+        if(token instanceof Literal) return ((Literal)token).value;
+        if(token instanceof Number) return token;
+        
+        if(token instanceof String)
+        {
+            switch(((String)token).toUpperCase())
+            {
+                case "NULL": return null;
+                case "TRUE": return Boolean.TRUE;
+                case "FALSE": return Boolean.FALSE;
+            }
+        }
+        
+        throw new SQLException("Expected a value but found " + token);
+    }
+    
+    private Object peek()
+    {
+        return tokens.get(position);
+    }
+    
+    private Object next()
+    {
+        Object token = tokens.get(position);
+        
+        if(token != END) position++;
+        
+        return token;
+    }
+    
+    private boolean keyword(String keyword)
+    {
+        if(!(peek() instanceof String) || !((String)peek()).equalsIgnoreCase(keyword)) return false;
+        
+        position++;
+        
+        return true;
+    }
+    
+    private void expect(String keyword) throws SQLException
+    {
+        if(!keyword(keyword)) throw new SQLException("Expected " + keyword + " but found " + peek());
+    }
+    
+    private boolean symbol(char symbol)
+    {
+        if(!(peek() instanceof Character) || (Character)peek() != symbol) return false;
+        
+        position++;
+        
+        return true;
+    }
+    
+    private String identifier() throws SQLException
+    {
+        Object token = next();
+        
+        if(token instanceof Identifier) return ((Identifier)token).name;
+        if(token instanceof String) return (String)token;
+        
+        throw new SQLException("Expected a name but found " + token);
+    }
+    
+    private static ArrayList<Object> tokenize(String sql) throws SQLException
+    {
+        ArrayList<Object> tokens = new ArrayList<>();
+        StringBuilder buffer = new StringBuilder();
+        int length = sql.length();
+        int start;
+        char c;
+        
+        for(int i=0; i<length; i++)
+        {
+            c = sql.charAt(i);
+            
+            if(Character.isWhitespace(c)) continue;
+            
+            if(c == '\'' || c == '"')
+            {
+                buffer.setLength(0);
+                
+                // Quotes are escaped by doubling them
+                while(true)
+                {
+                    if(++i >= length) throw new SQLException("Unterminated quote in " + sql);
+                    if(sql.charAt(i) == c && (i+1 >= length || sql.charAt(i+1) != c)) break;
+                    if(sql.charAt(i) == c) i++;
+                    
+                    buffer.append(sql.charAt(i));
+                }
+                
+                tokens.add(c == '\'' ? new Literal(buffer.toString()) : new Identifier(buffer.toString()));
+            }
+            else if(Character.isDigit(c) || (c == '-' && i+1 < length && Character.isDigit(sql.charAt(i+1))))
+            {
+                start = i;
+                
+                while(i+1 < length && (Character.isDigit(sql.charAt(i+1)) || ".eE".indexOf(sql.charAt(i+1)) >= 0)) i++;
+                
+                tokens.add(number(sql.substring(start, i+1)));
+            }
+            else if(Character.isLetter(c) || c == '_')
+            {
+                start = i;
+                
+                while(i+1 < length && (Character.isLetterOrDigit(sql.charAt(i+1)) || sql.charAt(i+1) == '_')) i++;
+                
+                tokens.add(sql.substring(start, i+1));
+            }
+            else if(c == '?')
+            {
+                tokens.add(new Parameter(0));
+            }
+            else if("*,().=;".indexOf(c) >= 0)
+            {
+                tokens.add(c);
+            }
+            else
+            {
+                throw new SQLException("Unexpected character '" + c + "' in " + sql);
+            }
+        }
+        
+        tokens.add(END);
+        
+        return tokens;
+    }
+    
+    private static Number number(String text) throws SQLException
+    {
+        long value;
+        
+        try
+        {
+            if(text.indexOf('.') >= 0 || text.indexOf('e') >= 0 || text.indexOf('E') >= 0) return Double.valueOf(text);
+            
+            value = Long.parseLong(text);
+            
+            if(value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) return (int)value;
+            
+            return value;
+        }
+        catch(NumberFormatException e)
+        {
+            throw new SQLException("Invalid number " + text);
+        }
+    }
+    
+    private Object bind(Object value, Map<String,Object> parameters) throws SQLException
+    {
+        String key;
+        
+        if(!(value instanceof Parameter)) return value;
+        
+        key = String.valueOf(((Parameter)value).index);
+        
+        if(parameters == null || !parameters.containsKey(key)) throw new SQLException("No value specified for parameter " + key);
+        
+        return parameters.get(key);
+    }
+    
+    private static boolean matches(Object a, Object b)
+    {
+        if(a instanceof Number && b instanceof Number)
+        {
+            if(a instanceof Double || a instanceof Float || b instanceof Double || b instanceof Float)
+            {
+                return ((Number)a).doubleValue() == ((Number)b).doubleValue();
+            }
+            
+            return ((Number)a).longValue() == ((Number)b).longValue();
+        }
+        
+        return Objects.equals(a, b);
+    }
+    
+    private Iterable<DivirganceRecord> getTable(DivirganceServer server) throws SQLException
+    {
+        Iterable<DivirganceRecord> records = server.getTable(catalog, table);
+        
+        if(records == null) throw new SQLException("Table " + (catalog == null ? "" : catalog + ".") + table + " does not exist");
+        
+        return records;
+    }
+    
+    /**
+     * Runs a SELECT against the server's tables. Records are filtered and 
+     * projected as they are iterated.
+     * 
+     * @param server server holding the tables
+     * @param parameters values of the ? parameters
+     * @return the matching records
+     * @throws SQLException if the table does not exist or a parameter is missing
+     */
+    public Iterable<DivirganceRecord> select(DivirganceServer server, Map<String,Object> parameters) throws SQLException
+    {
+        final Iterable<DivirganceRecord> records = getTable(server);
+        final int projected = columns.size() - values.size();
+        final Object[] filters = new Object[values.size()];
+        
+        for(int i=0; i<filters.length; i++) filters[i] = bind(values.get(i), parameters);
+        
+        return () -> new Iterator<DivirganceRecord>() {
+            
+            private final Iterator<DivirganceRecord> iterator = records.iterator();
+            private DivirganceRecord next;
+            private int count;
+            
+            @Override
+            public boolean hasNext()
+            {
+                DivirganceRecord record;
+                
+                if(next != null) return true;
+                if(limit >= 0 && count >= limit) return false;
+                
+                search:
+                while(iterator.hasNext())
+                {
+                    record = iterator.next();
+                    
+                    for(int i=0; i<filters.length; i++)
+                    {
+                        if(!matches(record.get(columns.get(projected + i)), filters[i])) continue search;
+                    }
+                    
+                    next = project(record, projected);
+                    count++;
+                    
+                    return true;
+                }
+                
+                return false;
+            }
+
+            @Override
+            public DivirganceRecord next()
+            {
+                DivirganceRecord record;
+                
+                if(!hasNext()) throw new NoSuchElementException();
+                
+                record = next;
+                next = null;
+                
+                return record;
+            }
+        };
+    }
+    
+    private DivirganceRecord project(DivirganceRecord record, int projected)
+    {
+        DivirganceRecord result;
+        
+        if(projected < 1) return record;
+        
+        result = new DivirganceRecord(true);
+        
+        for(int i=0; i<projected; i++) result.put(columns.get(i), record.get(columns.get(i)));
+        
+        return result;
+    }
+    
+    /**
+     * Runs an INSERT once for each set of parameters.
+     * 
+     * @param server server holding the tables
+     * @param parameters values of the ? parameters for each row to insert
+     * @return the number of rows inserted
+     * @throws SQLException if the table is missing or read-only, or a parameter is missing
+     */
+    public long insert(DivirganceServer server, List<? extends Map<String,Object>> parameters) throws SQLException
+    {
+        Iterable<DivirganceRecord> records = getTable(server);
+        DivirganceRecord record;
+        long count = 0;
+        
+        if(!(records instanceof Collection)) throw new SQLException("Table " + table + " is read-only");
+        
+        for(Map<String,Object> row : parameters)
+        {
+            record = new DivirganceRecord(true);
+            
+            for(int i=0; i<columns.size(); i++) record.put(columns.get(i), bind(values.get(i), row));
+            
+            ((Collection<DivirganceRecord>)records).add(record);
+            count++;
+        }
+        
+        return count;
+    }
+    
+    private static class Parameter
+    {
+        private final int index;
+
+        public Parameter(int index)
+        {
+            this.index = index;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "?";
+        }
+    }
+    
+    private static class Literal
+    {
+        private final String value;
+
+        public Literal(String value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "'" + value + "'";
+        }
+    }
+    
+    private static class Identifier
+    {
+        private final String name;
+
+        public Identifier(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "\"" + name + "\"";
+        }
+    }
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.server;
+
+import com.invirgance.divirgance.jdbc.DivirganceRecord;
+import com.invirgance.divirgance.net.ChannelTransport;
+import com.invirgance.divirgance.net.MemoryEndpoint;
+import com.invirgance.divirgance.net.MemoryTransport;
+import com.invirgance.divirgance.net.Transport;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stand-in Divirgance server for tests and benchmarks. Serves the handshake,
+ * COMMAND_LIST, COMMAND_PING, statements and the multiplexed protocol from 
+ * in-memory catalogs of tables, optionally delaying every response to 
+ * simulate network or server latency. Statements are limited to the simple
+ * SELECT and INSERT forms described by DivirganceQuery.
+ * <p>
+ * The server can listen on TCP ports, on Unix domain sockets and on in-memory
+ * endpoints (jdbc:divirgance:mem:name), or serve any other Transport passed
+ * to accept().
+ * 
+ * @author jbanes
+ */
+public class DivirganceServer implements MemoryEndpoint, AutoCloseable
+{
+    public static final int DEFAULT_PORT = 2999;
+    
+    private final ConcurrentSkipListMap<String,ConcurrentSkipListMap<String,Iterable<DivirganceRecord>>> catalogs = new ConcurrentSkipListMap<>();
+    private final Set<DivirganceSession> sessions = ConcurrentHashMap.newKeySet();
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayList<ServerSocketChannel> listeners = new ArrayList<>();
+    private final ArrayList<Path> paths = new ArrayList<>();
+    private final ArrayList<String> names = new ArrayList<>();
+    
+    private volatile int latency;
+    private volatile boolean closed;
+
+    public void addCatalog(String catalog)
+    {
+        catalogs.computeIfAbsent(catalog, key -> new ConcurrentSkipListMap<>());
+    }
+    
+    /**
+     * Adds a table to the catalog, creating the catalog if needed. The records
+     * are iterated each time the table is served.
+     * 
+     * @param catalog name of the catalog
+     * @param table name of the table
+     * @param records contents of the table
+     */
+    public void addTable(String catalog, String table, Iterable<DivirganceRecord> records)
+    {
+        catalogs.computeIfAbsent(catalog, key -> new ConcurrentSkipListMap<>()).put(table, records);
+    }
+    
+    /**
+     * Adds an empty table that accepts INSERT statements.
+     * 
+     * @param catalog name of the catalog
+     * @param table name of the table
+     */
+    public void addTable(String catalog, String table)
+    {
+        addTable(catalog, table, new ConcurrentLinkedQueue<>());
+    }
+    
+    /**
+     * Looks up a table. Tables added as a Collection accept INSERT statements,
+     * so the collection must be safe for concurrent use.
+     * 
+     * @param catalog name of the catalog, or null to search all catalogs
+     * @param table name of the table
+     * @return the records of the table or null if the table does not exist
+     */
+    public Iterable<DivirganceRecord> getTable(String catalog, String table)
+    {
+        ConcurrentSkipListMap<String,Iterable<DivirganceRecord>> tables;
+        Iterable<DivirganceRecord> records;
+        
+        if(catalog == null)
+        {
+            for(ConcurrentSkipListMap<String,Iterable<DivirganceRecord>> search : catalogs.values())
+            {
+                records = search.get(table);
+                
+                if(records != null) return records;
+            }
+            
+            return null;
+        }
+        
+        tables = catalogs.get(catalog);
+        
+        return (tables == null) ? null : tables.get(table);
+    }
+    
+    Collection<String> getCatalogNames()
+    {
+        return catalogs.keySet();
+    }
+    
+    Collection<String> getTableNames(String catalog)
+    {
+        ConcurrentSkipListMap<String,Iterable<DivirganceRecord>> tables = catalogs.get(catalog);
+        
+        return (tables == null) ? null : tables.keySet();
+    }
+
+    public int getLatency()
+    {
+        return latency;
+    }
+
+    /**
+     * Delays every response by the given time.
+     * 
+     * @param latency delay in milliseconds or zero for none
+     */
+    public void setLatency(int latency)
+    {
+        this.latency = latency;
+    }
+    
+    private void listen(ServerSocketChannel channel) throws IOException
+    {
+        lock.lock();
+        
+        try
+        {
+            if(closed) throw new IOException("Server has been closed");
+            
+            listeners.add(channel);
+        }
+        catch(IOException e)
+        {
+            channel.close();
+            
+            throw e;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        Thread.ofVirtual().name("Divirgance Listener").start(() -> accept(channel));
+    }
+    
+    /**
+     * Listens for TCP connections on all interfaces.
+     * 
+     * @param port port to listen on or zero for any free port
+     * @return the port listened on
+     * @throws IOException if the port can't be bound
+     */
+    public int listen(int port) throws IOException
+    {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        
+        try
+        {
+            channel.bind(new InetSocketAddress(port));
+        }
+        catch(IOException e)
+        {
+            channel.close();
+            
+            throw e;
+        }
+        
+        listen(channel);
+        
+        return ((InetSocketAddress)channel.getLocalAddress()).getPort();
+    }
+    
+    /**
+     * Listens for connections on a Unix domain socket. The socket file is 
+     * removed when the server is closed.
+     * 
+     * @param path path of the socket file to create
+     * @throws IOException if the socket can't be bound
+     */
+    public void listen(Path path) throws IOException
+    {
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        
+        try
+        {
+            channel.bind(UnixDomainSocketAddress.of(path));
+        }
+        catch(IOException e)
+        {
+            channel.close();
+            
+            throw e;
+        }
+        
+        lock.lock();
+        
+        try
+        {
+            paths.add(path);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        listen(channel);
+    }
+    
+    /**
+     * Accepts in-memory connections made to jdbc:divirgance:mem:name URLs.
+     * 
+     * @param name name to bind the server to
+     */
+    public void bind(String name)
+    {
+        lock.lock();
+        
+        try
+        {
+            if(closed) throw new IllegalStateException("Server has been closed");
+            
+            MemoryTransport.bind(name, this);
+            names.add(name);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    private void accept(ServerSocketChannel channel)
+    {
+        SocketChannel client;
+        
+        while(channel.isOpen())
+        {
+            try
+            {
+                client = channel.accept();
+            }
+            catch(IOException e)
+            {
+                return;
+            }
+            
+            try
+            {
+                accept(new ChannelTransport(client));
+            }
+            catch(IOException e)
+            {
+                try { client.close(); } catch(IOException x) {}
+            }
+        }
+    }
+
+    /**
+     * Serves a connection over the transport. Commands are read on a platform
+     * thread and answered on virtual threads. Virtual threads are not time 
+     * sliced, so a reader sharing their carriers could miss a COMMAND_CANCEL
+     * for as long as a response streams to a client fast enough to never 
+     * block the writer.
+     * 
+     * @param transport connected transport to a client
+     * @throws IOException if the server has been closed
+     */
+    @Override
+    public void accept(Transport transport) throws IOException
+    {
+        DivirganceSession session = new DivirganceSession(this, transport);
+        
+        sessions.add(session);
+        
+        if(closed)
+        {
+            session.close();
+            
+            throw new IOException("Server has been closed");
+        }
+        
+        Thread.ofPlatform().daemon().name("Divirgance Session").start(session);
+    }
+    
+    void closed(DivirganceSession session)
+    {
+        sessions.remove(session);
+    }
+
+    /**
+     * Stops listening and closes all open connections.
+     */
+    @Override
+    public void close()
+    {
+        lock.lock();
+        
+        try
+        {
+            closed = true;
+            
+            for(String name : names) MemoryTransport.unbind(name, this);
+            
+            for(ServerSocketChannel channel : listeners)
+            {
+                try { channel.close(); } catch(IOException e) {}
+            }
+            
+            for(Path path : paths)
+            {
+                try { Files.deleteIfExists(path); } catch(IOException e) {}
+            }
+            
+            names.clear();
+            listeners.clear();
+            paths.clear();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        for(DivirganceSession session : sessions) session.close();
+    }
+    
+    /**
+     * Runs a server with synthetic data. Supported options are --port, --unix
+     * (socket path), --latency (milliseconds), --catalog (name), --tables 
+     * (count) and --rows (rows per table).
+     */
+    public static void main(String[] args) throws Exception
+    {
+        DivirganceServer server = new DivirganceServer();
+        String catalog = "TestDatabase";
+        String unix = null;
+        int port = DEFAULT_PORT;
+        int tables = 3;
+        int rows = 1000;
+        
+        for(int i=0; i+1<args.length; i+=2)
+        {
+            switch(args[i])
+            {
+                case "--port": port = Integer.parseInt(args[i+1]); break;
+                case "--unix": unix = args[i+1]; break;
+                case "--latency": server.setLatency(Integer.parseInt(args[i+1])); break;
+                case "--catalog": catalog = args[i+1]; break;
+                case "--tables": tables = Integer.parseInt(args[i+1]); break;
+                case "--rows": rows = Integer.parseInt(args[i+1]); break;
+                    
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        
+        for(int i=0; i<tables; i++)
+        {
+            server.addTable(catalog, "table" + i, new SyntheticTable(rows, 100, i));
+        }
+        
+        System.out.println("Listening on port " + server.listen(port));
+        
+        if(unix != null)
+        {
+            server.listen(Path.of(unix));
+            System.out.println("Listening on " + unix);
+        }
+        
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,667 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.server;
+
+import com.invirgance.divirgance.io.BinaryInput;
+import com.invirgance.divirgance.io.BinaryOutput;
+import com.invirgance.divirgance.jdbc.DivirganceRecord;
+import com.invirgance.divirgance.net.Transport;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves the Divirgance protocol over a single connection. Commands are read
+ * on the session thread. Serial connections answer them in order on a single
+ * worker so that a COMMAND_CANCEL can reach the response being streamed. 
+ * Multiplexed connections answer each request on its own virtual thread,
+ * honoring COMMAND_CANCEL and COMMAND_FETCH credits per request.
+ * 
+ * @author jbanes
+ */
+class DivirganceSession implements Runnable
+{
+    static final int COMMAND_LIST = 0x01;
+    static final int COMMAND_MULTIPLEX = 0x10;
+    static final int COMMAND_CANCEL = 0x11;
+    static final int COMMAND_FETCH = 0x12;
+    static final int COMMAND_PING = 0x13;
+    static final int COMMAND_QUERY = 0x20;
+    static final int COMMAND_PREPARE = 0x21;
+    static final int COMMAND_EXECUTE = 0x22;
+    static final int COMMAND_CLOSE_STATEMENT = 0x23;
+    
+    static final int SUB_COMMAND_DATABASES = 0x01;
+    static final int SUB_COMMAND_TABLES = 0x02;
+    
+    static final int RESPONSE_OK = 0x00;
+    static final int RESPONSE_BSON = 0x01;
+    static final int RESPONSE_COUNT = 0x02;
+    static final int RESPONSE_HANDLE = 0x03;
+    static final int RESPONSE_ERROR = 0xFF;
+    
+    private static final int MAJOR_VERSION = 1;
+    private static final int MINOR_VERSION = 0;
+    
+    private final DivirganceServer server;
+    private final Transport transport;
+    private final InputStream input;
+    private final DataInput in;
+    private final OutputStream out;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final HashMap<Integer,Request> requests = new HashMap<>();
+    private final ArrayList<Request> waiting = new ArrayList<>();
+    private final HashMap<Integer,DivirganceQuery> statements = new HashMap<>();
+    
+    private int nextHandle;
+    
+    private volatile Request current;
+    private volatile boolean closed;
+
+    public DivirganceSession(DivirganceServer server, Transport transport) throws IOException
+    {
+        this.server = server;
+        this.transport = transport;
+        this.input = transport.getInputStream();
+        this.in = (DataInput)input;
+        this.out = transport.getOutputStream();
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            out.write("DIVIRGANCE".getBytes(StandardCharsets.US_ASCII));
+            out.write(MAJOR_VERSION);
+            out.write(MINOR_VERSION);
+            out.flush();
+            
+            serial();
+        }
+        catch(IOException e)
+        {
+            // Client disconnected or the session was closed
+        }
+        finally
+        {
+            close();
+        }
+    }
+    
+    private void serial() throws IOException
+    {
+        Request request;
+        int command;
+        
+        try(ExecutorService executor = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("Divirgance Session").factory()))
+        {
+            while((command = input.read()) >= 0)
+            {
+                switch(command)
+                {
+                    case COMMAND_CANCEL:
+                        request = current;
+                        
+                        if(request != null) request.cancel();
+                        break;
+                        
+                    case COMMAND_FETCH:
+                        // Flow control only applies to multiplexed connections
+                        in.readInt();
+                        break;
+                        
+                    case COMMAND_MULTIPLEX:
+                        executor.submit(() -> { out.write(RESPONSE_OK); out.flush(); return null; }).get();
+                        multiplexed();
+                        return;
+                        
+                    default:
+                        final Request next = new Request(-1, command, input);
+                        
+                        executor.execute(() -> serve(next, new ResponseOutputStream(out)));
+                        
+                        // Arguments of unknown commands can't be skipped
+                        if(!next.isKnown()) return;
+                }
+            }
+        }
+        catch(InterruptedException e)
+        {
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException e)
+        {
+            throw new IOException(e.getCause());
+        }
+    }
+    
+    private void multiplexed() throws IOException
+    {
+        DataInputStream data;
+        Request request;
+        byte[] payload;
+        int command;
+        int id;
+        
+        while(true)
+        {
+            // A COMMAND_FETCH sent with a request arrives right behind it. Holding
+            // requests until the input is drained lets the credits apply from
+            // the first record.
+            if(input.available() < 1) start();
+            
+            id = in.readUnsignedShort();
+            payload = new byte[in.readInt()];
+            
+            in.readFully(payload);
+            
+            data = new DataInputStream(new ByteArrayInputStream(payload));
+            command = data.readUnsignedByte();
+            
+            lock.lock();
+            
+            try
+            {
+                request = requests.get(id);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            
+            if(request != null)
+            {
+                if(command == COMMAND_CANCEL) request.cancel();
+                if(command == COMMAND_FETCH) request.grant(data.readInt());
+                
+                continue;
+            }
+            
+            // Control commands for requests that have already completed
+            if(command == COMMAND_CANCEL || command == COMMAND_FETCH) continue;
+            
+            request = new Request(id, command, data);
+            
+            lock.lock();
+            
+            try
+            {
+                requests.put(id, request);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            
+            waiting.add(request);
+        }
+    }
+    
+    private void start()
+    {
+        for(Request request : waiting)
+        {
+            Thread.ofVirtual().name("Divirgance Request").start(() -> serve(request));
+        }
+        
+        waiting.clear();
+    }
+    
+    private void serve(Request request, ResponseOutputStream response)
+    {
+        current = request;
+        
+        try
+        {
+            respond(request, response);
+            response.close();
+        }
+        catch(IOException e)
+        {
+            close();
+        }
+        finally
+        {
+            current = null;
+        }
+    }
+    
+    private void serve(Request request)
+    {
+        ResponseOutputStream response = new ResponseOutputStream(request.id, out, writeLock);
+        
+        try
+        {
+            respond(request, response);
+            response.flush();
+            
+            // The id must be free before the client sees the end of the response
+            lock.lock();
+            
+            try
+            {
+                requests.remove(request.id);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            
+            response.close();
+        }
+        catch(IOException e)
+        {
+            close();
+        }
+    }
+    
+    private void respond(Request request, ResponseOutputStream response) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(response);
+        Collection<String> tables;
+        int latency = server.getLatency();
+        
+        if(latency > 0)
+        {
+            try
+            {
+                Thread.sleep(latency);
+            }
+            catch(InterruptedException e)
+            {
+                throw new InterruptedIOException();
+            }
+        }
+        
+        switch(request.command)
+        {
+            case COMMAND_PING:
+                out.write(RESPONSE_OK);
+                return;
+                
+            case COMMAND_LIST:
+                if(request.subcommand == SUB_COMMAND_DATABASES)
+                {
+                    write(request, names(server.getCatalogNames()), response);
+                    return;
+                }
+                
+                if(request.subcommand == SUB_COMMAND_TABLES)
+                {
+                    tables = server.getTableNames(request.catalog);
+                    
+                    if(tables == null)
+                    {
+                        error("Catalog " + request.catalog + " does not exist", out);
+                        return;
+                    }
+                    
+                    write(request, names(tables), response);
+                    return;
+                }
+                
+                break;
+                
+            case COMMAND_QUERY:
+            case COMMAND_PREPARE:
+            case COMMAND_EXECUTE:
+            case COMMAND_CLOSE_STATEMENT:
+                try
+                {
+                    statement(request, response);
+                }
+                catch(SQLException e)
+                {
+                    error(e.getMessage(), out);
+                }
+                
+                return;
+        }
+        
+        error("Unknown command 0x" + Integer.toHexString(request.command).toUpperCase(), out);
+    }
+    
+    private void error(String message, DataOutputStream out) throws IOException
+    {
+        out.write(RESPONSE_ERROR);
+        out.writeUTF(message == null ? "Unknown error" : message);
+    }
+    
+    private void statement(Request request, ResponseOutputStream response) throws IOException, SQLException
+    {
+        DataOutputStream out = new DataOutputStream(response);
+        DivirganceQuery query;
+        int handle;
+        
+        switch(request.command)
+        {
+            case COMMAND_QUERY:
+                execute(request, DivirganceQuery.parse(request.sql), response);
+                return;
+                
+            case COMMAND_PREPARE:
+                query = DivirganceQuery.parse(request.sql);
+                
+                lock.lock();
+                
+                try
+                {
+                    handle = nextHandle++;
+                    
+                    statements.put(handle, query);
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+                
+                out.write(RESPONSE_HANDLE);
+                out.writeInt(handle);
+                return;
+                
+            case COMMAND_EXECUTE:
+                lock.lock();
+                
+                try
+                {
+                    query = statements.get(request.handle);
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+                
+                if(query == null) throw new SQLException("Statement handle " + request.handle + " does not exist");
+                
+                execute(request, query, response);
+                return;
+                
+            case COMMAND_CLOSE_STATEMENT:
+                lock.lock();
+                
+                try
+                {
+                    statements.remove(request.handle);
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+                
+                out.write(RESPONSE_OK);
+        }
+    }
+    
+    private void execute(Request request, DivirganceQuery query, ResponseOutputStream response) throws IOException, SQLException
+    {
+        DataOutputStream out = new DataOutputStream(response);
+        List<DivirganceRecord> parameters = (request.parameters == null) ? List.of(new DivirganceRecord()) : request.parameters;
+        long count;
+        
+        if(query.isSelect())
+        {
+            if(parameters.size() != 1) throw new SQLException("SELECT statements take exactly one set of parameters");
+            
+            write(request, query.select(server, parameters.get(0)), response);
+            return;
+        }
+        
+        // Insert first, so that a failure is reported as an error alone
+        count = query.insert(server, parameters);
+        
+        out.write(RESPONSE_COUNT);
+        out.writeLong(count);
+    }
+    
+    private Iterable<DivirganceRecord> names(Collection<String> names)
+    {
+        return () -> new Iterator<DivirganceRecord>() {
+            private final Iterator<String> iterator = names.iterator();
+            
+            @Override
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public DivirganceRecord next()
+            {
+                DivirganceRecord record = new DivirganceRecord(true);
+                
+                record.put("name", iterator.next());
+                
+                return record;
+            }
+        };
+    }
+    
+    private void write(Request request, Iterable<DivirganceRecord> records, ResponseOutputStream response) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(response);
+        BinaryOutput output = new BinaryOutput(out);
+        
+        out.write(RESPONSE_BSON);
+        
+        for(DivirganceRecord record : records)
+        {
+            // Buffered records must reach the client before it can grant more credits
+            if(response.size() >= ResponseOutputStream.FRAME_SIZE || request.isBlocked()) response.flush();
+            if(!request.acquire()) break;
+            
+            output.write(record);
+        }
+        
+        output.finish();
+    }
+    
+    public void close()
+    {
+        if(closed) return;
+        
+        closed = true;
+        
+        lock.lock();
+        
+        try
+        {
+            for(Request request : requests.values()) request.cancel();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        
+        try
+        {
+            transport.close();
+        }
+        catch(IOException e)
+        {
+            // Nothing further to release
+        }
+        
+        server.closed(this);
+    }
+    
+    private static class Request
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition granted = lock.newCondition();
+        
+        private final int id;
+        private final int command;
+        private int subcommand;
+        private String catalog;
+        private String sql;
+        private int handle;
+        private List<DivirganceRecord> parameters;
+        
+        private int credits = -1;
+        private boolean cancelled;
+        
+        public Request(int id, int command, InputStream input) throws IOException
+        {
+            DataInput in = (DataInput)input;
+            
+            this.id = id;
+            this.command = command;
+            
+            switch(command)
+            {
+                case COMMAND_LIST:
+                    this.subcommand = in.readUnsignedByte();
+
+                    if(subcommand == SUB_COMMAND_TABLES) this.catalog = in.readUTF();
+                    break;
+                    
+                case COMMAND_QUERY:
+                case COMMAND_PREPARE:
+                    this.sql = in.readUTF();
+                    break;
+                    
+                case COMMAND_EXECUTE:
+                    this.handle = in.readInt();
+                    this.parameters = new ArrayList<>();
+                    
+                    for(DivirganceRecord record : new BinaryInput(input)) parameters.add(record);
+                    break;
+                    
+                case COMMAND_CLOSE_STATEMENT:
+                    this.handle = in.readInt();
+                    break;
+            }
+        }
+        
+        public boolean isKnown()
+        {
+            switch(command)
+            {
+                case COMMAND_PING:
+                case COMMAND_LIST:
+                case COMMAND_QUERY:
+                case COMMAND_PREPARE:
+                case COMMAND_EXECUTE:
+                case COMMAND_CLOSE_STATEMENT:
+                    return true;
+            }
+            
+            return false;
+        }
+        
+        public boolean isBlocked()
+        {
+            lock.lock();
+            
+            try
+            {
+                return (credits == 0 && !cancelled);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Takes a credit for the next record, waiting for the client to grant
+         * more if necessary. Requests without a COMMAND_FETCH have unlimited
+         * credits.
+         * 
+         * @return false if the request has been cancelled
+         */
+        public boolean acquire() throws IOException
+        {
+            lock.lock();
+            
+            try
+            {
+                while(credits == 0 && !cancelled) granted.await();
+                
+                if(cancelled) return false;
+                if(credits > 0) credits--;
+                
+                return true;
+            }
+            catch(InterruptedException e)
+            {
+                throw new InterruptedIOException();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        
+        public void grant(int count)
+        {
+            lock.lock();
+            
+            try
+            {
+                credits = (credits < 0) ? count : credits + count;
+                
+                granted.signalAll();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        
+        public void cancel()
+        {
+            lock.lock();
+            
+            try
+            {
+                cancelled = true;
+                
+                granted.signalAll();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+}
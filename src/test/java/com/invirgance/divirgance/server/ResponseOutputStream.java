@@ -0,0 +1,167 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects a response and sends it to the client on flush. Multiplexed 
+ * responses are sent as frames tagged with the request id, each frame being
+ * written whole under the session's write lock. Serial responses are written
+ * as is.
+ * <p>
+ * Writes never touch the transport. DataOutputStream synchronizes its writes,
+ * and a virtual thread blocked on the network while holding a monitor pins its
+ * carrier thread. Sending only from flush() keeps blocking I/O outside of any
+ * monitor.
+ * 
+ * @author jbanes
+ */
+class ResponseOutputStream extends OutputStream
+{
+    static final int FRAME_SIZE = 16 * 1024;
+    
+    private final int id;
+    private final OutputStream out;
+    private final ReentrantLock lock;
+    
+    private byte[] buffer = new byte[FRAME_SIZE];
+    private int count;
+    private boolean closed;
+
+    /**
+     * Creates a stream for a serial response.
+     * 
+     * @param out transport output
+     */
+    public ResponseOutputStream(OutputStream out)
+    {
+        this(-1, out, null);
+    }
+
+    /**
+     * Creates a stream for a multiplexed response.
+     * 
+     * @param id request id to tag the frames with
+     * @param out transport output
+     * @param lock lock held while writing a frame
+     */
+    public ResponseOutputStream(int id, OutputStream out, ReentrantLock lock)
+    {
+        this.id = id;
+        this.out = out;
+        this.lock = lock;
+    }
+    
+    private void send(byte[] data, int length) throws IOException
+    {
+        byte[] header;
+        
+        if(id < 0)
+        {
+            out.write(data, 0, length);
+            out.flush();
+            
+            return;
+        }
+        
+        header = new byte[] {
+            (byte)(id >>> 8), (byte)id,
+            (byte)(length >>> 24), (byte)(length >>> 16), (byte)(length >>> 8), (byte)length
+        };
+        
+        lock.lock();
+        
+        try
+        {
+            out.write(header);
+            out.write(data, 0, length);
+            out.flush();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    
+    private void ensure(int length)
+    {
+        if(count + length > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + length));
+    }
+    
+    /**
+     * @return number of bytes waiting to be sent
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        ensure(1);
+        
+        buffer[count++] = (byte)b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        ensure(len);
+        
+        System.arraycopy(b, off, buffer, count, len);
+        
+        count += len;
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        if(count < 1) return;
+        
+        send(buffer, count);
+        
+        count = 0;
+    }
+
+    /**
+     * Sends any buffered data. Multiplexed responses are followed by the empty
+     * frame that ends the response.
+     * 
+     * @throws IOException if the connection fails
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if(closed) return;
+        
+        flush();
+        
+        if(id >= 0) send(buffer, 0);
+        
+        closed = true;
+    }
+}
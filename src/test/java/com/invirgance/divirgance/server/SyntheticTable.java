@@ -0,0 +1,109 @@
+/*
+ * Copyright 2024 INVIRGANCE LLC
+
+Permission is hereby granted, free of charge, to any person obtaining a copy 
+of this software and associated documentation files (the “Software”), to deal 
+in the Software without restriction, including without limitation the rights to 
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies 
+of the Software, and to permit persons to whom the Software is furnished to do 
+so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all 
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE 
+SOFTWARE.
+ */
+package com.invirgance.divirgance.server;
+
+import com.invirgance.divirgance.jdbc.DivirganceRecord;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+
+/**
+ * Generates a reproducible table of records. Every iteration produces the same
+ * rows, with the columns id (int), name (string), value (double), created 
+ * (date) and active (boolean).
+ * 
+ * @author jbanes
+ */
+public class SyntheticTable implements Iterable<DivirganceRecord>
+{
+    private static final long EPOCH = 1700000000000L;
+    
+    private final int rows;
+    private final int cardinality;
+    private final long seed;
+
+    public SyntheticTable(int rows)
+    {
+        this(rows, 100);
+    }
+
+    /**
+     * @param rows number of rows in the table
+     * @param cardinality number of distinct values in the name column
+     */
+    public SyntheticTable(int rows, int cardinality)
+    {
+        this(rows, cardinality, 0);
+    }
+
+    public SyntheticTable(int rows, int cardinality, long seed)
+    {
+        this.rows = rows;
+        this.cardinality = Math.max(1, cardinality);
+        this.seed = seed;
+    }
+
+    public int getRows()
+    {
+        return rows;
+    }
+
+    public int getCardinality()
+    {
+        return cardinality;
+    }
+
+    @Override
+    public Iterator<DivirganceRecord> iterator()
+    {
+        return new Iterator<DivirganceRecord>() {
+            
+            private final SplittableRandom random = new SplittableRandom(seed);
+            private int index;
+            
+            @Override
+            public boolean hasNext()
+            {
+                return index < rows;
+            }
+
+            @Override
+            public DivirganceRecord next()
+            {
+                DivirganceRecord record = new DivirganceRecord(true);
+                
+                if(index >= rows) throw new NoSuchElementException();
+                
+                record.put("id", index);
+                record.put("name", "name" + (index % cardinality));
+                record.put("value", random.nextDouble() * 1000);
+                record.put("created", new Date(EPOCH + index * 1000L));
+                record.put("active", (index % 2) == 0);
+                
+                index++;
+                
+                return record;
+            }
+        };
+    }
+}